@@ -19,9 +19,6 @@
 
 package de.cellular.lib.lightlib.backend;
 
-import java.io.IOException;
-import java.net.Socket;
-import java.net.UnknownHostException;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
@@ -32,41 +29,71 @@ import javax.net.ssl.X509TrustManager;
 
 import org.apache.http.conn.ssl.SSLSocketFactory;
 
-public class EasySSLSocketFactory extends SSLSocketFactory
+import de.cellular.lib.lightlib.log.LL;
+
+/**
+ * Trusts all certificates. All instances share one {@link SSLContext}, so that TLS sessions are resumed, see {@link LLSSLSocketFactory}.
+ */
+public class EasySSLSocketFactory extends LLSSLSocketFactory
 {
-    private SSLContext sslContext = SSLContext.getInstance( "TLS" );
+    private static SSLContext            sContext;
+    private static EasySSLSocketFactory sInstance;
 
     public EasySSLSocketFactory( KeyStore truststore )
             throws NoSuchAlgorithmException, KeyManagementException,
             KeyStoreException, UnrecoverableKeyException {
-        super( truststore );
-
-        TrustManager tm = new X509TrustManager() {
-            public void checkClientTrusted( X509Certificate[] chain,
-                    String authType ) throws CertificateException {
-            }
+        super( truststore, getContext() );
+    }
 
-            public void checkServerTrusted( X509Certificate[] chain,
-                    String authType ) throws CertificateException {
+    /**
+     * Gets the shared factory, it allows all host names.
+     *
+     * @return the factory, or the default of HttpClient when the platform can't create a context.
+     */
+    public static synchronized SSLSocketFactory getInstance() {
+        if( sInstance == null ) {
+            try {
+                sInstance = new EasySSLSocketFactory( createTrustStore() );
+                sInstance.setHostnameVerifier( SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER );
             }
-
-            public X509Certificate[] getAcceptedIssuers() {
-                return null;
+            catch( Exception _e ) {
+                LL.e( _e.toString() );
+                SSLSocketFactory factory = SSLSocketFactory.getSocketFactory();
+                factory.setHostnameVerifier( SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER );
+                return factory;
             }
-        };
-
-        sslContext.init( null, new TrustManager[] { tm }, null );
+        }
+        return sInstance;
     }
 
-    @Override
-    public Socket createSocket( Socket socket, String host, int port,
-            boolean autoClose ) throws IOException, UnknownHostException {
-        return sslContext.getSocketFactory().createSocket( socket, host, port,
-                autoClose );
-    }
+    private static synchronized SSLContext getContext() throws NoSuchAlgorithmException, KeyManagementException {
+        if( sContext == null ) {
+            TrustManager tm = new X509TrustManager() {
+                public void checkClientTrusted( X509Certificate[] chain,
+                        String authType ) throws CertificateException {
+                }
 
-    @Override
-    public Socket createSocket() throws IOException {
-        return sslContext.getSocketFactory().createSocket();
+                public void checkServerTrusted( X509Certificate[] chain,
+                        String authType ) throws CertificateException {
+                }
+
+                public X509Certificate[] getAcceptedIssuers() {
+                    return null;
+                }
+            };
+            try {
+                sContext = createContext( new TrustManager[] { tm } );
+            }
+            catch( NoSuchAlgorithmException _e ) {
+                throw _e;
+            }
+            catch( KeyManagementException _e ) {
+                throw _e;
+            }
+            catch( GeneralSecurityException _e ) {
+                throw new KeyManagementException( _e.toString() );
+            }
+        }
+        return sContext;
     }
 }
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.backend;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.DefaultHttpClient;
+
+import de.cellular.lib.lightlib.cache.LLDiskCache;
+
+/**
+ * A response whose body is read from a {@link LLDiskCache.Snapshot} instead of the network. The snapshot is closed with the response.
+ *
+ * @version 1.0.1 <li>Read the body from the opened {@link LLDiskCache.Snapshot} instead of the path of its file.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLCacheResponse extends LLHttpClientBaseResponse {
+    private final LLDiskCache.Snapshot mSnapshot;
+    private final int                  mIndex;
+
+    /**
+     * Instantiates a new {@link LLCacheResponse}.
+     *
+     * @since 1.0
+     * @param _urlStr
+     *            the target url in {@link String}
+     * @param _client
+     *            the {@link DefaultHttpClient} of the request, it will be released with the response. Can be null.
+     * @param _snapshot
+     *            the cached entry, it's closed with the response.
+     * @param _index
+     *            the index of the body in the entry.
+     * @param _cookies
+     *            the cookies of the original response, can be null.
+     */
+    public LLCacheResponse( String _urlStr, DefaultHttpClient _client, LLDiskCache.Snapshot _snapshot, int _index,
+            List<Cookie> _cookies ) {
+        super( _urlStr, _client, null );
+        mSnapshot = _snapshot;
+        mIndex = _index;
+        mStream = _snapshot.getInputStream( _index );
+        mCookies = _cookies;
+    }
+
+    /**
+     * Gets the cached entry, i.e to remove it with {@link LLDiskCache#remove(LLDiskCache.Snapshot)}.
+     *
+     * @since 1.0.1
+     * @return the snapshot
+     */
+    public LLDiskCache.Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Gets the cached body as a file stream, it can be rewound through its channel.
+     *
+     * @since 1.0.1
+     * @return the stream, it's closed with the response.
+     */
+    public FileInputStream getFileInputStream() {
+        return mSnapshot.getInputStream( mIndex );
+    }
+
+    /**
+     * @since 1.0.1
+     * @return the length of the cached body in bytes.
+     */
+    public long getLength() {
+        return mSnapshot.getLength( mIndex );
+    }
+
+    @Override
+    public void release() throws IOException {
+        super.release();
+        mSnapshot.close();
+    }
+
+    @Override
+    public String toString() {
+        return "Cache-Response@" + getUrlStr();
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.backend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Date;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+
+import android.text.TextUtils;
+
+/**
+ * The HTTP caching information of a cached body: its validators and how long it's fresh.
+ * <p>
+ * <li>A fresh entry is used without a request.</li>
+ * <li>A stale entry with validators is revalidated with "If-None-Match" and "If-Modified-Since", a "304 Not Modified" keeps the cached body.</li>
+ * <li>A stale entry without validators is requested again.</li>
+ * <p>
+ * The lifetime comes from "Cache-Control: max-age", else from "Expires", else it's 10% of the age of "Last-Modified", no longer than {@link #MAX_HEURISTIC_LIFETIME}. "no-cache" and
+ * "must-revalidate" make an entry stale at once, "no-store" must not be cached. A response without any of these headers is fresh forever, it's how the cache has always worked.
+ *
+ * @version <strong>1.0.1</strong> <li>The validators of a "304 Not Modified" are merged before the lifetime is computed, see {@link #fromResponse(HttpResponse, long, LLHttpCacheEntry)}.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLHttpCacheEntry
+{
+    /**
+     * The longest lifetime that is guessed from "Last-Modified".
+     */
+    public static final long    MAX_HEURISTIC_LIFETIME = 24 * 60 * 60 * 1000L;
+    /**
+     * The lifetime of an entry that is fresh forever.
+     */
+    public static final long    FOREVER                = Long.MAX_VALUE;
+
+    private static final String ETAG                   = "ETag";
+    private static final String LAST_MODIFIED          = "Last-Modified";
+    private static final String EXPIRES_AT             = "Expires-At";
+
+    private String              mETag;
+    private String              mLastModified;
+    private long                mExpiresAt;
+    private boolean             mNoStore;
+
+    private LLHttpCacheEntry() {
+    }
+
+    /**
+     * Creates the entry of a response from the network.
+     *
+     * @since 1.0
+     * @param _response
+     *            the response, 200 or 304.
+     * @param _now
+     *            the wall time in ms when the response has come.
+     * @return the entry.
+     */
+    public static LLHttpCacheEntry fromResponse( HttpResponse _response, long _now ) {
+        return fromResponse( _response, _now, null );
+    }
+
+    /**
+     * Creates the entry of a "304 Not Modified", a 304 needn't repeat the validators. They're taken from the stored entry before the lifetime is computed, so that a bare 304 doesn't make an entry
+     * with validators fresh forever.
+     *
+     * @since 1.0.1
+     * @param _response
+     *            the response, 200 or 304.
+     * @param _now
+     *            the wall time in ms when the response has come.
+     * @param _stored
+     *            the stored entry, could be null.
+     * @return the entry.
+     */
+    public static LLHttpCacheEntry fromResponse( HttpResponse _response, long _now, LLHttpCacheEntry _stored ) {
+        LLHttpCacheEntry entry = new LLHttpCacheEntry();
+        entry.mETag = getValue( _response, ETAG );
+        entry.mLastModified = getValue( _response, LAST_MODIFIED );
+        if( _stored != null ) {
+            if( entry.mETag == null ) {
+                entry.mETag = _stored.mETag;
+            }
+            if( entry.mLastModified == null ) {
+                entry.mLastModified = _stored.mLastModified;
+            }
+        }
+
+        long maxAge = -1;
+        boolean revalidate = false;
+        boolean hasCacheControl = false;
+        for( Header header : _response.getHeaders( "Cache-Control" ) ) {
+            for( HeaderElement e : header.getElements() ) {
+                hasCacheControl = true;
+                String name = e.getName();
+                if( "no-store".equalsIgnoreCase( name ) ) {
+                    entry.mNoStore = true;
+                }
+                else if( "no-cache".equalsIgnoreCase( name ) || "must-revalidate".equalsIgnoreCase( name ) ) {
+                    revalidate = true;
+                }
+                else if( "max-age".equalsIgnoreCase( name ) ) {
+                    maxAge = parseSeconds( e.getValue() );
+                }
+            }
+        }
+        if( !hasCacheControl && "no-cache".equalsIgnoreCase( getValue( _response, "Pragma" ) ) ) {
+            hasCacheControl = revalidate = true;
+        }
+
+        // The age that the response has gained in proxies.
+        long age = Math.max( 0, parseSeconds( getValue( _response, "Age" ) ) ) * 1000;
+        long date = parseDate( getValue( _response, "Date" ), _now );
+        if( date <= 0 ) {
+            date = _now;
+        }
+        String expires = getValue( _response, "Expires" );
+        long lifetime;
+        if( revalidate ) {
+            lifetime = 0;
+        }
+        else if( maxAge >= 0 ) {
+            lifetime = Math.min( maxAge, Integer.MAX_VALUE ) * 1000 - age;
+        }
+        else if( expires != null ) {
+            // An invalid date means "already expired".
+            lifetime = parseDate( expires, date ) - date - age;
+        }
+        else if( entry.mLastModified != null ) {
+            long lastModified = parseDate( entry.mLastModified, date );
+            lifetime = lastModified > 0 ? Math.min( MAX_HEURISTIC_LIFETIME, (date - lastModified) / 10 ) - age : 0;
+        }
+        else {
+            lifetime = hasCacheControl || entry.mETag != null ? 0 : FOREVER;
+        }
+        entry.mExpiresAt = lifetime == FOREVER ? FOREVER : _now + Math.max( 0, lifetime );
+        return entry;
+    }
+
+    /**
+     * Reads an entry that has been written by {@link #writeTo(OutputStream)}.
+     *
+     * @since 1.0
+     * @param _in
+     *            the stream, it will be closed.
+     * @return the entry.
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public static LLHttpCacheEntry readFrom( InputStream _in ) throws IOException {
+        LLHttpCacheEntry entry = new LLHttpCacheEntry();
+        entry.mExpiresAt = FOREVER;
+        BufferedReader reader = new BufferedReader( new InputStreamReader( _in, "UTF-8" ) );
+        try {
+            String line;
+            while( (line = reader.readLine()) != null ) {
+                int colon = line.indexOf( ':' );
+                if( colon <= 0 ) {
+                    continue;
+                }
+                String name = line.substring( 0, colon );
+                String value = line.substring( colon + 1 ).trim();
+                if( ETAG.equals( name ) ) {
+                    entry.mETag = value;
+                }
+                else if( LAST_MODIFIED.equals( name ) ) {
+                    entry.mLastModified = value;
+                }
+                else if( EXPIRES_AT.equals( name ) ) {
+                    try {
+                        entry.mExpiresAt = Long.parseLong( value );
+                    }
+                    catch( NumberFormatException _e ) {
+                        entry.mExpiresAt = 0;
+                    }
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return entry;
+    }
+
+    /**
+     * Writes the entry so that it can be read by {@link #readFrom(InputStream)}.
+     *
+     * @since 1.0
+     * @param _out
+     *            the stream, it will be closed.
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public void writeTo( OutputStream _out ) throws IOException {
+        Writer writer = new OutputStreamWriter( _out, "UTF-8" );
+        try {
+            if( mETag != null ) {
+                writer.write( ETAG + ": " + mETag + "\n" );
+            }
+            if( mLastModified != null ) {
+                writer.write( LAST_MODIFIED + ": " + mLastModified + "\n" );
+            }
+            writer.write( EXPIRES_AT + ": " + mExpiresAt + "\n" );
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Adds the validators to a request, so that the server can answer "304 Not Modified".
+     *
+     * @since 1.0
+     * @param _req
+     *            the request.
+     */
+    public void addValidators( HttpRequestBase _req ) {
+        if( mETag != null ) {
+            _req.setHeader( "If-None-Match", mETag );
+        }
+        if( mLastModified != null ) {
+            _req.setHeader( "If-Modified-Since", mLastModified );
+        }
+    }
+
+    /**
+     * @since 1.0
+     * @return true if the entry can be revalidated.
+     */
+    public boolean hasValidators() {
+        return mETag != null || mLastModified != null;
+    }
+
+    /**
+     * @since 1.0
+     * @param _now
+     *            the wall time in ms.
+     * @return true if the entry can be used without a request.
+     */
+    public boolean isFresh( long _now ) {
+        return _now < mExpiresAt;
+    }
+
+    /**
+     * @since 1.0
+     * @return true if the response must not be cached.
+     */
+    public boolean isNoStore() {
+        return mNoStore;
+    }
+
+    private static String getValue( HttpResponse _response, String _name ) {
+        Header header = _response.getFirstHeader( _name );
+        return header == null || TextUtils.isEmpty( header.getValue() ) ? null : header.getValue().trim();
+    }
+
+    private static long parseSeconds( String _value ) {
+        if( _value != null ) {
+            try {
+                return Long.parseLong( _value.trim() );
+            }
+            catch( NumberFormatException _e ) {
+                // Ignore an invalid value.
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the date in ms, 0 if it's invalid or _default if it's null.
+     */
+    private static long parseDate( String _value, long _default ) {
+        if( _value == null ) {
+            return _default;
+        }
+        try {
+            Date date = DateUtils.parseDate( _value );
+            return date.getTime();
+        }
+        catch( DateParseException _e ) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LLHttpCacheEntry[etag=" + mETag + ",lastModified=" + mLastModified + ",expiresAt=" + mExpiresAt + "]";
+    }
+}
@@ -39,6 +39,7 @@ import de.cellular.lib.lightlib.log.LL;
 public class LLHttpClientBaseResponse extends LLAbstractResponse {
     protected DefaultHttpClient mClient;
     protected HttpResponse      mResponse;
+    private boolean             mClientShared;
 
     /**
      * Instantiates a new {@link LLHttpClientBaseResponse}.
@@ -64,6 +65,40 @@ public class LLHttpClientBaseResponse extends LLAbstractResponse {
     protected LLHttpClientBaseResponse() {
     }
 
+    /**
+     * Tells the response whether the client is shared with other requests. A shared client won't be shut down by {@link #release()}.
+     * 
+     * @since 1.0
+     * @param _shared
+     *            true if the client is shared.
+     */
+    public void setClientShared( boolean _shared ) {
+        mClientShared = _shared;
+    }
+
+    /**
+     * Gets the response of HttpClient, i.e for its headers.
+     * 
+     * @since 1.0
+     * @return the {@link HttpResponse}, null for a response that doesn't come from the network.
+     */
+    public HttpResponse getHttpResponse() {
+        return mResponse;
+    }
+
+    /**
+     * Gets the length of the body.
+     * 
+     * @since 1.0
+     * @return the length in bytes or -1 if it's unknown.
+     */
+    public long getContentLength() {
+        if( mResponse != null && mResponse.getEntity() != null ) {
+            return mResponse.getEntity().getContentLength();
+        }
+        return -1;
+    }
+
     /**
      * Release resource.
      * 
@@ -75,7 +110,10 @@ public class LLHttpClientBaseResponse extends LLAbstractResponse {
     public void release() throws IOException {
         super.release();
         if( mClient != null ) {
-            mClient.getConnectionManager().shutdown();
+            // Closing the stream has given the connection back to a shared client.
+            if( !mClientShared ) {
+                mClient.getConnectionManager().shutdown();
+            }
             mClient = null;
         }
 
@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.backend;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.CookieStore;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.protocol.HttpContext;
+
+import de.cellular.lib.lightlib.log.LL;
+import de.cellular.lib.lightlib.utils.LLMemoryManager;
+
+/**
+ * Owns one {@link DefaultHttpClient} that is shared by requests, so that their TCP and TLS connections are kept alive and reused instead of being opened for each request.
+ * <p>
+ * <li>The connections are limited in total and per route, a request that finds all connections of its route busy waits for one.</li>
+ * <li>A connection is kept alive as long as the server tells with "Keep-Alive: timeout", but not longer than {@link #KEEP_ALIVE}.</li>
+ * <li>Expired connections and those idle longer than {@link #IDLE_TIMEOUT} are closed every {@link #EVICT_INTERVAL} ms on a daemon thread.</li>
+ * <li>The idle connections are closed when the UI is hidden or memory runs low, see {@link LLMemoryManager}.</li>
+ * <p>
+ * {@link #shutdown()} closes all connections, the next {@link #getClient()} creates a new client. The requests of {@link LLRequest#start(android.content.Context,
+ * de.cellular.lib.lightlib.backend.base.LLRequestResponsibleObject, LLRequest.Method, String, String)}, {@link LLRequestImage}, {@link LLImageLoader} and {@link LLImagePrefetcher} use
+ * {@link #getDefault()}.
+ * <p>
+ * The client keeps no cookies, a request has its own cookie store, so that the cookies of hosts and requests aren't mixed. A request waits at most {@link #CONNECTION_WAIT} ms for a free
+ * connection.
+ *
+ * @version <strong>1.0.1</strong> <li>No cookies are kept by the shared client, a request fails after {@link #CONNECTION_WAIT} ms without a free connection.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLHttpClientPool implements LLMemoryManager.Trimmable
+{
+    public static final int         DEFAULT_MAX_TOTAL     = 20;
+    public static final int         DEFAULT_MAX_PER_ROUTE = 6;
+    /**
+     * The longest ms that an idle connection is kept alive.
+     */
+    public static final long        KEEP_ALIVE            = 30 * 1000;
+    /**
+     * The ms after which an idle connection is closed by the eviction.
+     */
+    public static final long        IDLE_TIMEOUT          = 30 * 1000;
+    /**
+     * The ms between two evictions.
+     */
+    public static final long        EVICT_INTERVAL        = 15 * 1000;
+    /**
+     * The longest ms that a request waits for a free connection.
+     */
+    public static final long        CONNECTION_WAIT       = 30 * 1000;
+
+    private static LLHttpClientPool sDefault;
+
+    private final int               mMaxTotal;
+    private final int               mMaxPerRoute;
+    private DefaultHttpClient       mClient;
+    private Timer                   mEvictor;
+
+    /**
+     * Instantiates a new {@link LLHttpClientPool}, the client is created by the first {@link #getClient()}.
+     *
+     * @since 1.0
+     * @param _maxTotal
+     *            the max count of connections.
+     * @param _maxPerRoute
+     *            the max count of connections to one host.
+     */
+    public LLHttpClientPool( int _maxTotal, int _maxPerRoute ) {
+        if( _maxTotal <= 0 || _maxPerRoute <= 0 ) {
+            throw new IllegalArgumentException( "maxTotal <= 0 or maxPerRoute <= 0" );
+        }
+        mMaxTotal = _maxTotal;
+        mMaxPerRoute = Math.min( _maxPerRoute, _maxTotal );
+        LLMemoryManager.getInstance().register( this );
+    }
+
+    /**
+     * Gets the process-wide {@link LLHttpClientPool} with {@link #DEFAULT_MAX_TOTAL} and {@link #DEFAULT_MAX_PER_ROUTE} connections.
+     *
+     * @since 1.0
+     * @return the pool
+     */
+    public static synchronized LLHttpClientPool getDefault() {
+        if( sDefault == null ) {
+            sDefault = new LLHttpClientPool( DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE );
+        }
+        return sDefault;
+    }
+
+    /**
+     * Gets the shared client. A request that uses it must be told with {@link LLRequest#setClientShared(boolean)}, so that the client isn't shut down after responding.
+     *
+     * @since 1.0
+     * @return the client
+     */
+    public synchronized DefaultHttpClient getClient() {
+        if( mClient == null ) {
+            mClient = LLRequest.createHttpClient( null, false, mMaxTotal, mMaxPerRoute );
+            ConnManagerParams.setTimeout( mClient.getParams(), CONNECTION_WAIT );
+            mClient.setCookieStore( new CookieStore() {
+                @Override
+                public void addCookie( Cookie _cookie ) {
+                    // The cookies of a request are kept in its own context.
+                }
+
+                @Override
+                public List<Cookie> getCookies() {
+                    return Collections.emptyList();
+                }
+
+                @Override
+                public boolean clearExpired( Date _date ) {
+                    return false;
+                }
+
+                @Override
+                public void clear() {
+                }
+            } );
+            mClient.setKeepAliveStrategy( new DefaultConnectionKeepAliveStrategy() {
+                @Override
+                public long getKeepAliveDuration( HttpResponse _response, HttpContext _context ) {
+                    long duration = super.getKeepAliveDuration( _response, _context );
+                    // -1 means "forever" for HttpClient.
+                    return duration > 0 ? Math.min( duration, KEEP_ALIVE ) : KEEP_ALIVE;
+                }
+            } );
+            mEvictor = new Timer( "LLHttpClientPool", true );
+            mEvictor.schedule( new TimerTask() {
+                @Override
+                public void run() {
+                    closeIdleConnections( IDLE_TIMEOUT );
+                }
+            }, EVICT_INTERVAL, EVICT_INTERVAL );
+            LL.i( ":| Shared http-client, " + mMaxTotal + " connections, " + mMaxPerRoute + " per route." );
+        }
+        return mClient;
+    }
+
+    /**
+     * Closes the expired connections and those that have been idle longer than _idleTime.
+     *
+     * @since 1.0
+     * @param _idleTime
+     *            the ms, 0 closes all idle connections.
+     */
+    public void closeIdleConnections( long _idleTime ) {
+        DefaultHttpClient client;
+        synchronized( this ) {
+            client = mClient;
+        }
+        if( client != null ) {
+            client.getConnectionManager().closeExpiredConnections();
+            client.getConnectionManager().closeIdleConnections( _idleTime, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     * Closes all connections, the running requests fail. The next {@link #getClient()} creates a new client.
+     *
+     * @since 1.0
+     */
+    public void shutdown() {
+        DefaultHttpClient client;
+        synchronized( this ) {
+            client = mClient;
+            mClient = null;
+            if( mEvictor != null ) {
+                mEvictor.cancel();
+                mEvictor = null;
+            }
+        }
+        if( client != null ) {
+            client.getConnectionManager().shutdown();
+            LL.i( ":| Shared http-client has been shut down." );
+        }
+    }
+
+    /**
+     * @since 1.0
+     * @return the max count of connections.
+     */
+    public int getMaxTotal() {
+        return mMaxTotal;
+    }
+
+    /**
+     * @since 1.0
+     * @return the max count of connections to one host.
+     */
+    public int getMaxPerRoute() {
+        return mMaxPerRoute;
+    }
+
+    @Override
+    public void onTrimMemory( int _level ) {
+        if( _level >= LLMemoryManager.TRIM_MEMORY_RUNNING_LOW ) {
+            synchronized( this ) {
+                if( mEvictor != null ) {
+                    // Closing a TLS connection writes to the socket, it mustn't run on the UI thread.
+                    mEvictor.schedule( new TimerTask() {
+                        @Override
+                        public void run() {
+                            closeIdleConnections( 0 );
+                        }
+                    }, 0 );
+                }
+            }
+        }
+    }
+}
@@ -18,12 +18,14 @@ package de.cellular.lib.lightlib.backend;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.cookie.Cookie;
 import org.apache.http.impl.client.DefaultHttpClient;
 
 import de.cellular.lib.lightlib.log.LL;
@@ -40,6 +42,7 @@ import de.cellular.lib.lightlib.log.LL;
  * {@link LLFileResponse}
  * <p>
  * 
+ * @version 1.0.1 <li>The cookies of a response can be given, a shared client holds no cookies.</li>
  * @version 1.0
  * @author Chris Xinyue Zhao <hasszhao@gmail.com>
  * 
@@ -64,6 +67,30 @@ public class LLHttpClientResponse extends LLHttpClientBaseResponse {
      */
     public static LLHttpClientResponse createInstance( String _urlStr, DefaultHttpClient _client, HttpResponse _response )
             throws IllegalStateException, IOException {
+        return createInstance( _urlStr, _client, _response,
+                _client.getCookieStore() != null ? _client.getCookieStore().getCookies() : null );
+    }
+
+    /**
+     * Creates the instance of {@link LLHttpClientResponse} with the cookies of the request, i.e from the cookie store of its {@link org.apache.http.protocol.HttpContext} when the client is shared.
+     * 
+     * @since 1.0.1
+     * @param _urlStr
+     *            the target url in {@link String}
+     * @param _client
+     *            the {@link DefaultHttpClient} with which we fired {@link LLRequest}.
+     * @param _response
+     *            the {@link HttpResponse} implementing object.
+     * @param _cookies
+     *            the cookies of the request, can be null.
+     * @return the created {@link LLHttpClientResponse}, null if the status isn't 200.
+     * @throws IllegalStateException
+     *             the illegal state exception
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public static LLHttpClientResponse createInstance( String _urlStr, DefaultHttpClient _client,
+            HttpResponse _response, List<Cookie> _cookies ) throws IllegalStateException, IOException {
         if( _response != null ) {
             LLHttpClientResponse r = new LLHttpClientResponse( _urlStr, _client, _response );
             int statusCode = r.mResponse.getStatusLine().getStatusCode();
@@ -80,9 +107,7 @@ public class LLHttpClientResponse extends LLHttpClientBaseResponse {
                 else {
                     r.mStream = instream;
                 }
-                if( r.mClient.getCookieStore() != null ) {
-                    r.mCookies = r.mClient.getCookieStore().getCookies();
-                }
+                r.mCookies = _cookies;
                 return r;
             }
             return null;
@@ -0,0 +1,612 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.Message;
+import de.cellular.lib.lightlib.backend.LLRequest.Method;
+import de.cellular.lib.lightlib.backend.LLRequestImage.RequestedSize;
+import de.cellular.lib.lightlib.backend.base.LLRequestResponsibleObject;
+import de.cellular.lib.lightlib.cache.LLImageCache;
+import de.cellular.lib.lightlib.log.LL;
+
+/**
+ * Loads images with a bounded count of concurrent downloads and decodes.
+ * <p>
+ * Unlike {@link LLRequestImage#start(Context, LLRequestResponsibleObject, Method, String, RequestedSize, String)} that fires a request on {@link LLRequestEngine} for each call, all requests of
+ * the loader are queued in the loader by priority and use the shared client of {@link LLHttpClientPool#getDefault()}, so that the connections can be kept alive and reused. A loader with more downloads than {@link LLHttpClientPool#getMaxPerRoute()} lets the downloads from one host wait for connections.
+ * <p>
+ * The count of downloads is limited by the loader, a started download runs as a {@link LLRequestDispatcher.Call} on the dispatcher of {@link LLRequestEngine#getDefault(Context)}, so that it
+ * counts for the limits per host and in total of all requests. The count of decodes is limited by {@link LLRequestImage#setMaxConcurrentDecodes(int)}, a thread that waits for decoding has
+ * finished its download already.
+ * <p>
+ * Requests for the same url and {@link RequestedSize} that are in flight at the same time share one download and one decode, the result is sent to every waiting
+ * {@link LLRequestResponsibleObject}. A waiter leaves with {@link Ticket#cancel()}, the shared request is only aborted when the last waiter has left.
+ * <p>
+ * Waiting requests are started by their priority, the highest first, requests with the same priority in order of loading. The priority can be changed while a request waits, see
+ * {@link Ticket#setPriority(int)}.
+ *
+ * @version 1.0.3 <li>Run the downloads on the {@link LLRequestDispatcher} of {@link LLRequestEngine} instead of an own pool.</li>
+ * @version 1.0.2 <li>Load an image only from the disk cache, see {@link #loadFromDiskCache(Context, LLRequestResponsibleObject, String, RequestedSize, int)}.</li>
+ * @version 1.0.1 <li>Use the client of {@link LLHttpClientPool}.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLImageLoader {
+    public static final int      DEFAULT_MAX_DOWNLOADS = 3;
+    public static final int      DEFAULT_MAX_DECODES   = 2;
+    public static final int      DEFAULT_PRIORITY      = 0;
+
+    private static final String  CACHE_ONLY_SUFFIX     = "#cache-only";
+
+    private static final AtomicLong sSequence = new AtomicLong();
+
+    private static LLImageLoader sInstance;
+
+    private final int                     mMaxDownloads;
+    private final int                     mMaxDecodes;
+    private final HashMap<String, Flight> mFlights = new HashMap<String, Flight>();
+    /**
+     * The tasks that haven't been dispatched, the highest priority first.
+     */
+    private final PriorityQueue<LoadTask> mWaiting = new PriorityQueue<LoadTask>();
+    private int                           mDispatched;
+    private boolean                       mPaused;
+    private boolean                       mShutdown;
+
+    /**
+     * Instantiates a new {@link LLImageLoader}.
+     *
+     * @since 1.0
+     * @param _maxDownloads
+     *            the max count of concurrent downloads.
+     * @param _maxDecodes
+     *            the max count of concurrent decodes.
+     */
+    private LLImageLoader( int _maxDownloads, int _maxDecodes ) {
+        if( _maxDownloads <= 0 || _maxDecodes <= 0 ) {
+            throw new IllegalArgumentException( "maxDownloads <= 0 or maxDecodes <= 0" );
+        }
+        mMaxDownloads = _maxDownloads;
+        mMaxDecodes = _maxDecodes;
+        LLRequestImage.setMaxConcurrentDecodes( _maxDecodes );
+    }
+
+    /**
+     * Gets the process-wide {@link LLImageLoader}, it's created with {@link #DEFAULT_MAX_DOWNLOADS} and {@link #DEFAULT_MAX_DECODES} if {@link #init(int, int)} has not been called.
+     *
+     * @since 1.0
+     * @return the loader
+     */
+    public static synchronized LLImageLoader getInstance() {
+        if( sInstance == null ) {
+            sInstance = new LLImageLoader( DEFAULT_MAX_DOWNLOADS, DEFAULT_MAX_DECODES );
+        }
+        return sInstance;
+    }
+
+    /**
+     * Creates the process-wide {@link LLImageLoader} with own limits. A loader that has been created before will be shut down.
+     *
+     * @since 1.0
+     * @param _maxDownloads
+     *            the max count of concurrent downloads.
+     * @param _maxDecodes
+     *            the max count of concurrent decodes.
+     * @return the loader
+     */
+    public static synchronized LLImageLoader init( int _maxDownloads, int _maxDecodes ) {
+        if( sInstance != null ) {
+            sInstance.shutdown();
+        }
+        sInstance = new LLImageLoader( _maxDownloads, _maxDecodes );
+        return sInstance;
+    }
+
+    /**
+     * Loads an image. The _handler receives {@link LLRequestImage#REQUEST_IMAGE_SUCCESSED} or {@link LLRequestImage#REQUEST_IMAGE_FAILED} like by
+     * {@link LLRequestImage#start(Context, LLRequestResponsibleObject, Method, String, RequestedSize, String)}.
+     * <p>
+     * When the same image is being loaded already, the _handler waits for that request instead of starting a new one. It must be called on the UI thread.
+     *
+     * @since 1.0
+     * @param _context
+     *            the Context
+     * @param _handler
+     *            the {@link LLRequestResponsibleObject} object
+     * @param _url
+     *            the target url in {@link String}
+     * @param _reqSize
+     *            the size of that will be requested.
+     * @param _someCookies
+     *            the cookies in {@link String}, can be null. The cookies of the first waiter are used for a shared request.
+     * @param _priority
+     *            the priority, a higher one is started earlier.
+     * @return the {@link Ticket} to cancel the waiting.
+     */
+    public Ticket load( Context _context, LLRequestResponsibleObject _handler, String _url, RequestedSize _reqSize,
+            String _someCookies, int _priority ) {
+        return load( _context, _handler, _url, _reqSize, _someCookies, _priority, false );
+    }
+
+    /**
+     * Loads an image only from the {@link de.cellular.lib.lightlib.cache.LLDiskCache}, i.e a small version of a downloaded image. The look-up runs on the thread of the request, the _handler gets
+     * {@link LLRequestImage#REQUEST_IMAGE_FAILED} if the image hasn't been cached. It must be called on the UI thread.
+     *
+     * @since 1.0.2
+     * @see #load(Context, LLRequestResponsibleObject, String, RequestedSize, String, int)
+     */
+    public Ticket loadFromDiskCache( Context _context, LLRequestResponsibleObject _handler, String _url,
+            RequestedSize _reqSize, int _priority ) {
+        return load( _context, _handler, _url, _reqSize, null, _priority, true );
+    }
+
+    private Ticket load( Context _context, LLRequestResponsibleObject _handler, String _url, RequestedSize _reqSize,
+            String _someCookies, int _priority, boolean _cacheOnly ) {
+        if( LLRequestImage.deliverFromCache( _handler, _url, _reqSize ) ) {
+            return new Ticket( null, _handler, _url, _priority );
+        }
+        // A load from the network mustn't join one that fails when nothing is cached.
+        String key = LLImageCache.makeKey( _url, _reqSize ) + (_cacheOnly ? CACHE_ONLY_SUFFIX : "");
+        Flight flight;
+        boolean start = false;
+        synchronized( mFlights ) {
+            flight = mFlights.get( key );
+            if( flight == null ) {
+                LLRequestImage request = new LLRequestImage( _context, null, Method.GET, _reqSize );
+                request.setCacheOnly( _cacheOnly );
+                flight = new Flight( key, request );
+                mFlights.put( key, flight );
+                start = true;
+            }
+            else {
+                LL.i( ":) Join the request in flight: " + key );
+            }
+        }
+        Ticket ticket = new Ticket( flight, _handler, _url, _priority );
+        if( start ) {
+            flight.mTask = new LoadTask( LLRequestEngine.getDefault( _context ).getDispatcher(), flight.mRequest,
+                    flight, _url, _someCookies, _priority );
+            flight.addWaiter( ticket );
+            execute( flight.mTask );
+        }
+        else {
+            flight.addWaiter( ticket );
+        }
+        return ticket;
+    }
+
+    /**
+     * Loads an image with {@link #DEFAULT_PRIORITY}.
+     *
+     * @since 1.0
+     * @see #load(Context, LLRequestResponsibleObject, String, RequestedSize, String, int)
+     */
+    public Ticket load( Context _context, LLRequestResponsibleObject _handler, String _url, RequestedSize _reqSize,
+            String _someCookies ) {
+        return load( _context, _handler, _url, _reqSize, _someCookies, DEFAULT_PRIORITY );
+    }
+
+    /**
+     * Loads an image without cookies with {@link #DEFAULT_PRIORITY}.
+     *
+     * @since 1.0
+     * @see #load(Context, LLRequestResponsibleObject, String, RequestedSize, String, int)
+     */
+    public Ticket load( Context _context, LLRequestResponsibleObject _handler, String _url, RequestedSize _reqSize ) {
+        return load( _context, _handler, _url, _reqSize, null, DEFAULT_PRIORITY );
+    }
+
+    private void execute( LoadTask _task ) {
+        boolean rejected;
+        synchronized( mWaiting ) {
+            rejected = mShutdown;
+            if( !rejected ) {
+                mWaiting.add( _task );
+            }
+        }
+        if( rejected ) {
+            _task.reject();
+        }
+        else {
+            dispatch();
+        }
+    }
+
+    /**
+     * Dispatches the waiting tasks with the highest priority as long as the count of downloads allows.
+     */
+    private void dispatch() {
+        List<LoadTask> ready = null;
+        synchronized( mWaiting ) {
+            while( !mPaused && !mShutdown && mDispatched < mMaxDownloads && !mWaiting.isEmpty() ) {
+                if( ready == null ) {
+                    ready = new ArrayList<LoadTask>( 2 );
+                }
+                ready.add( mWaiting.poll() );
+                mDispatched++;
+            }
+        }
+        if( ready != null ) {
+            for( LoadTask t : ready ) {
+                t.dispatch();
+            }
+        }
+    }
+
+    /**
+     * A dispatched task has finished or has been rejected, the next ones are dispatched.
+     */
+    private void downloadFinished() {
+        synchronized( mWaiting ) {
+            mDispatched--;
+        }
+        dispatch();
+    }
+
+    /**
+     * Changes the priority of a task that waits in the queue. A dispatched task isn't touched.
+     */
+    private void reschedule( LoadTask _task, int _priority ) {
+        synchronized( mWaiting ) {
+            if( _task.mPriority != _priority && mWaiting.remove( _task ) ) {
+                // The order of the queue is only kept when the task isn't in it while changing.
+                _task.mPriority = _priority;
+                mWaiting.add( _task );
+            }
+        }
+    }
+
+    /**
+     * Removes a task that hasn't been dispatched.
+     */
+    private void unqueue( LoadTask _task ) {
+        synchronized( mWaiting ) {
+            mWaiting.remove( _task );
+        }
+    }
+
+    /**
+     * Forgets a flight after its result has been sent or its last waiter has left.
+     */
+    private void removeFlight( Flight _flight ) {
+        synchronized( mFlights ) {
+            if( mFlights.get( _flight.mKey ) == _flight ) {
+                mFlights.remove( _flight.mKey );
+            }
+        }
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of requests in flight.
+     */
+    public int getFlightCount() {
+        synchronized( mFlights ) {
+            return mFlights.size();
+        }
+    }
+
+    /**
+     * Pauses the loader, the running downloads will be finished but no more will be started.
+     *
+     * @since 1.0
+     */
+    public void pause() {
+        synchronized( mWaiting ) {
+            mPaused = true;
+        }
+    }
+
+    /**
+     * Resumes a paused loader.
+     *
+     * @since 1.0
+     */
+    public void resume() {
+        synchronized( mWaiting ) {
+            mPaused = false;
+        }
+        dispatch();
+    }
+
+    /**
+     * Shuts down the loader. The waiting requests fail with {@link LLRequestImage#REQUEST_IMAGE_FAILED}, the running ones are aborted. The connections stay in {@link LLHttpClientPool}.
+     *
+     * @since 1.0
+     */
+    public void shutdown() {
+        LoadTask[] waiting;
+        synchronized( mWaiting ) {
+            mShutdown = true;
+            waiting = mWaiting.toArray( new LoadTask[mWaiting.size()] );
+            mWaiting.clear();
+        }
+        for( LoadTask t : waiting ) {
+            t.reject();
+        }
+        Flight[] flights;
+        synchronized( mFlights ) {
+            flights = mFlights.values().toArray( new Flight[mFlights.size()] );
+        }
+        for( Flight f : flights ) {
+            f.mRequest.abort();
+        }
+        synchronized( LLImageLoader.class ) {
+            if( sInstance == this ) {
+                sInstance = null;
+            }
+        }
+    }
+
+    /**
+     * @since 1.0
+     * @return the max count of concurrent downloads.
+     */
+    public int getMaxDownloads() {
+        return mMaxDownloads;
+    }
+
+    /**
+     * @since 1.0
+     * @return the max count of concurrent decodes.
+     */
+    public int getMaxDecodes() {
+        return mMaxDecodes;
+    }
+
+    /**
+     * A waiter for an image that is loaded by {@link LLImageLoader#load(Context, LLRequestResponsibleObject, String, RequestedSize, String)}.
+     *
+     * @version 1.0
+     * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+     */
+    public static class Ticket {
+        private final Flight                     mFlight;
+        private final LLRequestResponsibleObject mHandler;
+        private final String                     mUrl;
+        private volatile int                     mPriority;
+        private volatile boolean                 mCancelled;
+
+        Ticket( Flight _flight, LLRequestResponsibleObject _handler, String _url, int _priority ) {
+            mFlight = _flight;
+            mHandler = _handler;
+            mUrl = _url;
+            mPriority = _priority;
+        }
+
+        /**
+         * Changes the priority. A shared request runs with the highest priority of its waiters. It has no effect when the request has been started.
+         *
+         * @since 1.0
+         * @param _priority
+         *            the priority, a higher one is started earlier.
+         */
+        public void setPriority( int _priority ) {
+            if( mPriority != _priority ) {
+                mPriority = _priority;
+                if( mFlight != null && !mCancelled ) {
+                    mFlight.updatePriority();
+                }
+            }
+        }
+
+        /**
+         * @since 1.0
+         * @return the priority.
+         */
+        public int getPriority() {
+            return mPriority;
+        }
+
+        /**
+         * Stops waiting, the handler of the ticket won't receive the result. The download is aborted if no other waiter needs it.
+         *
+         * @since 1.0
+         */
+        public void cancel() {
+            if( !mCancelled ) {
+                mCancelled = true;
+                if( mFlight != null ) {
+                    mFlight.removeWaiter( this );
+                }
+            }
+        }
+
+        /**
+         * @since 1.0
+         * @return true if {@link #cancel()} has been called.
+         */
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * @since 1.0
+         * @return the url of the image.
+         */
+        public String getUrlStr() {
+            return mUrl;
+        }
+    }
+
+    /**
+     * One {@link LLRequestImage} in flight and all {@link Ticket}s that wait for it. It receives the messages of the request and sends them to every waiter.
+     */
+    private class Flight extends LLRequestResponsibleObject {
+        private final String            mKey;
+        private final LLRequestImage    mRequest;
+        private final ArrayList<Ticket> mWaiters = new ArrayList<Ticket>( 1 );
+        private LoadTask                mTask;
+
+        Flight( String _key, LLRequestImage _request ) {
+            super( Looper.getMainLooper() );
+            mKey = _key;
+            mRequest = _request;
+            mRequest.mHandler = this;
+            mRequest.setClientShared( true );
+        }
+
+        synchronized void addWaiter( Ticket _ticket ) {
+            mWaiters.add( _ticket );
+            updatePriority();
+        }
+
+        void removeWaiter( Ticket _ticket ) {
+            boolean last;
+            synchronized( this ) {
+                last = mWaiters.remove( _ticket ) && mWaiters.isEmpty();
+            }
+            if( last ) {
+                LL.i( ":| Last waiter has left, abort: " + mKey );
+                removeFlight( this );
+                mRequest.abort();
+                unqueue( mTask );
+            }
+            else {
+                updatePriority();
+            }
+        }
+
+        /**
+         * Runs the task with the highest priority of all waiters.
+         */
+        synchronized void updatePriority() {
+            if( mTask != null && !mWaiters.isEmpty() ) {
+                int priority = Integer.MIN_VALUE;
+                for( Ticket t : mWaiters ) {
+                    priority = Math.max( priority, t.mPriority );
+                }
+                reschedule( mTask, priority );
+            }
+        }
+
+        @Override
+        public void handleMessage( Message _msg ) {
+            removeFlight( this );
+            Ticket[] waiters;
+            synchronized( this ) {
+                waiters = mWaiters.toArray( new Ticket[mWaiters.size()] );
+                mWaiters.clear();
+            }
+            for( Ticket t : waiters ) {
+                if( !t.mCancelled && t.mHandler != null ) {
+                    Message.obtain( t.mHandler, _msg.what, _msg.obj ).sendToTarget();
+                }
+            }
+        }
+
+        @Override
+        public void onRequestFinished( Message _msg ) {
+        }
+
+        @Override
+        public void onRequestImageFailed( Message _msg ) {
+        }
+
+        @Override
+        public void onRequestImageSuccessed( Message _msg ) {
+        }
+
+        @Override
+        public void onRequestAborted( Message _msg ) {
+        }
+
+        @Override
+        public void onRequestSuccessed( Message _msg ) {
+        }
+
+        @Override
+        public void onRequestFailed( Message _msg ) {
+        }
+    }
+
+    /**
+     * Runs a {@link LLRequestImage} as a {@link LLRequestDispatcher.Call} when the loader dispatches it.
+     */
+    private class LoadTask implements Comparable<LoadTask> {
+        private final LLRequestDispatcher        mDispatcher;
+        private final LLRequestImage             mRequest;
+        private final LLRequestResponsibleObject mHandler;
+        private final String                     mUrl;
+        private final String                     mCookies;
+        private final long                       mSequence;
+        private volatile int                     mPriority;
+
+        LoadTask( LLRequestDispatcher _dispatcher, LLRequestImage _request, LLRequestResponsibleObject _handler,
+                String _url, String _cookies, int _priority ) {
+            mDispatcher = _dispatcher;
+            mRequest = _request;
+            mHandler = _handler;
+            mUrl = _url;
+            mCookies = _cookies;
+            mPriority = _priority;
+            mSequence = sSequence.getAndIncrement();
+        }
+
+        @Override
+        public int compareTo( LoadTask _another ) {
+            if( mPriority != _another.mPriority ) {
+                return mPriority > _another.mPriority ? -1 : 1;
+            }
+            return mSequence < _another.mSequence ? -1 : (mSequence == _another.mSequence ? 0 : 1);
+        }
+
+        /**
+         * Queues the request on the dispatcher, it waits there when its host or all requests are at the limit.
+         */
+        void dispatch() {
+            mDispatcher.dispatch( new LLRequestDispatcher.Call( mUrl, mPriority ) {
+                @Override
+                protected void execute() {
+                    try {
+                        mRequest.executeOnCurrentThread( LLHttpClientPool.getDefault().getClient(), mUrl, mCookies );
+                    }
+                    finally {
+                        downloadFinished();
+                    }
+                }
+
+                @Override
+                protected void reject( RejectedExecutionException _e ) {
+                    downloadFinished();
+                    LoadTask.this.reject();
+                }
+            } );
+        }
+
+        /**
+         * The task will never run, tell the handler.
+         */
+        void reject() {
+            LL.w( ":| Image request is rejected: " + mUrl );
+            if( mHandler != null ) {
+                Message.obtain( mHandler, LLRequestImage.REQUEST_IMAGE_FAILED,
+                        new LLRequestException( new RejectedExecutionException(), mUrl ) ).sendToTarget();
+            }
+        }
+    }
+}
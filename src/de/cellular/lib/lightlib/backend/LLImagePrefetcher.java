@@ -0,0 +1,493 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.client.DefaultHttpClient;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import de.cellular.lib.lightlib.backend.LLRequestImage.RequestedSize;
+import de.cellular.lib.lightlib.backend.base.LLAbstractResponse;
+import de.cellular.lib.lightlib.cache.LLDiskCache;
+import de.cellular.lib.lightlib.cache.LLImageCache;
+import de.cellular.lib.lightlib.log.LL;
+
+/**
+ * Downloads the images of a gallery into the {@link LLDiskCache} in the background, so that they can be shown later without network.
+ * <p>
+ * <li>At most _maxConcurrent downloads are dispatched at once, they run as {@link LLRequestDispatcher.Call}s on the dispatcher of {@link LLRequestEngine#getDefault(Context)} with
+ * {@link #DISPATCH_PRIORITY} and use the shared client of {@link LLHttpClientPool#getDefault()}.</li>
+ * <li>No more downloads are started when the bytes from the network have reached the budget, the running ones are finished. The budget is never larger than the {@link LLDiskCache}, otherwise the
+ * first images would be evicted by the last ones.</li>
+ * <li>An image that is fresh in the {@link LLDiskCache} isn't downloaded again, one that is in the {@link LLImageCache} at the {@link RequestedSize} is skipped.</li>
+ * <li>{@link #pause()} stops dispatching, the dispatched downloads are finished.</li>
+ * <p>
+ * The {@link Listener} receives the progress of all images at most every {@link #PROGRESS_INTERVAL} ms and one message when all have been done, never one per image.
+ *
+ * @version <strong>1.0.1</strong> <li>Run the downloads on the {@link LLRequestDispatcher} of {@link LLRequestEngine} instead of an own pool.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLImagePrefetcher
+{
+    public static final int    DEFAULT_MAX_CONCURRENT = 2;
+    /**
+     * The least ms between two {@link Listener#onProgress(int, int, long)}.
+     */
+    public static final long   PROGRESS_INTERVAL      = 500;
+    /**
+     * The priority of the downloads in the dispatcher, an image that is shown is started earlier with {@link LLRequestDispatcher#ORDER_PRIORITY}.
+     */
+    public static final int    DISPATCH_PRIORITY      = Integer.MIN_VALUE;
+
+    /**
+     * Receives the progress of a {@link LLImagePrefetcher} on the UI thread.
+     */
+    public interface Listener {
+        /**
+         * Some images have been done.
+         *
+         * @param _done
+         *            the count of images that have been done, successfully or not.
+         * @param _total
+         *            the count of all images.
+         * @param _bytes
+         *            the bytes that have been downloaded.
+         */
+        void onProgress( int _done, int _total, long _bytes );
+
+        /**
+         * All images have been done or the prefetcher has been cancelled.
+         *
+         * @param _cached
+         *            the count of images that are in the cache now.
+         * @param _failed
+         *            the count of images that have failed or have been skipped, because of the budget or cancelling.
+         * @param _bytes
+         *            the bytes that have been downloaded.
+         */
+        void onFinished( int _cached, int _failed, long _bytes );
+    }
+
+    private final Context             mContext;
+    private final List<String>        mUrls;
+    private final RequestedSize       mReqSize;
+    private final long                mByteBudget;
+    private final int                 mMaxConcurrent;
+    private final String              mUserAgent;
+    private final Handler             mUiHandler  = new Handler( Looper.getMainLooper() );
+    private final List<PrefetchTask>  mTasks      = new ArrayList<PrefetchTask>();
+    private final AtomicInteger       mCached     = new AtomicInteger();
+    private final AtomicInteger       mFailed     = new AtomicInteger();
+    private final AtomicLong          mBytes      = new AtomicLong();
+    /**
+     * The tasks that haven't been dispatched in the order of the urls.
+     */
+    private final List<PrefetchTask>  mWaiting    = new ArrayList<PrefetchTask>();
+    private LLRequestDispatcher       mDispatcher;
+    private int                       mDispatched;
+    private boolean                   mPaused;
+    private Listener                  mListener;
+    private volatile boolean          mCancelled;
+    private boolean                   mStarted;
+    private boolean                   mFinished;
+    private boolean                   mProgressPosted;
+    private long                      mLastProgress;
+
+    /**
+     * Posts the progress, it's posted only once for all images that have been done in between.
+     */
+    private final Runnable            mProgress   = new Runnable() {
+                                                      @Override
+                                                      public void run() {
+                                                          mProgressPosted = false;
+                                                          mLastProgress = SystemClock.uptimeMillis();
+                                                          if( mListener != null && !mFinished ) {
+                                                              mListener.onProgress( getDoneCount(), mUrls.size(),
+                                                                      mBytes.get() );
+                                                          }
+                                                      }
+                                                  };
+
+    /**
+     * Instantiates a new {@link LLImagePrefetcher}, it must be created on the UI thread.
+     *
+     * @since 1.0
+     * @param _context
+     *            the Context
+     * @param _urls
+     *            the urls of the images.
+     * @param _reqSize
+     *            the size that the gallery will request, can be null.
+     * @param _byteBudget
+     *            the max bytes that are downloaded, <= 0 for the size of the {@link LLDiskCache}.
+     * @param _maxConcurrent
+     *            the max count of concurrent downloads.
+     */
+    public LLImagePrefetcher( Context _context, List<String> _urls, RequestedSize _reqSize, long _byteBudget,
+            int _maxConcurrent ) {
+        if( _maxConcurrent <= 0 ) {
+            throw new IllegalArgumentException( "maxConcurrent <= 0" );
+        }
+        mContext = _context.getApplicationContext();
+        mUrls = new ArrayList<String>( _urls );
+        mReqSize = _reqSize;
+        mByteBudget = _byteBudget;
+        mMaxConcurrent = _maxConcurrent;
+        mUserAgent = LLRequest.getUserAgent( _context );
+    }
+
+    /**
+     * Instantiates a new {@link LLImagePrefetcher} with {@link #DEFAULT_MAX_CONCURRENT} downloads and the size of the {@link LLDiskCache} as budget.
+     *
+     * @since 1.0
+     * @see #LLImagePrefetcher(Context, List, RequestedSize, long, int)
+     */
+    public LLImagePrefetcher( Context _context, List<String> _urls, RequestedSize _reqSize ) {
+        this( _context, _urls, _reqSize, 0, DEFAULT_MAX_CONCURRENT );
+    }
+
+    /**
+     * Set the listener of the progress, it must be set before {@link #start()}.
+     *
+     * @since 1.0
+     * @param _listener
+     */
+    public void setListener( Listener _listener ) {
+        mListener = _listener;
+    }
+
+    /**
+     * Starts downloading, it must be called on the UI thread and only once.
+     *
+     * @since 1.0
+     */
+    public void start() {
+        if( mStarted ) {
+            throw new IllegalStateException( "The prefetcher has been started." );
+        }
+        mStarted = true;
+        LLDiskCache cache = LLDiskCache.getDefault( mContext );
+        if( cache == null ) {
+            LL.w( ":| No disk cache, nothing is prefetched." );
+            mFailed.set( mUrls.size() );
+            onTaskDone();
+            return;
+        }
+        long budget = mByteBudget > 0 ? Math.min( mByteBudget, cache.getMaxSize() ) : cache.getMaxSize();
+        mDispatcher = LLRequestEngine.getDefault( mContext ).getDispatcher();
+        LL.i( ":| Prefetch " + mUrls.size() + " images, budget " + budget + " bytes." );
+        List<PrefetchTask> tasks = new ArrayList<PrefetchTask>( mUrls.size() );
+        for( String url : mUrls ) {
+            tasks.add( new PrefetchTask( url, budget ) );
+        }
+        synchronized( mTasks ) {
+            mTasks.addAll( tasks );
+        }
+        if( tasks.isEmpty() ) {
+            onTaskDone();
+            return;
+        }
+        synchronized( mWaiting ) {
+            mWaiting.addAll( tasks );
+        }
+        dispatch();
+    }
+
+    /**
+     * Dispatches the waiting tasks as long as the count of downloads allows.
+     */
+    private void dispatch() {
+        List<PrefetchTask> ready = null;
+        synchronized( mWaiting ) {
+            while( !mPaused && mDispatched < mMaxConcurrent && !mWaiting.isEmpty() ) {
+                if( ready == null ) {
+                    ready = new ArrayList<PrefetchTask>( 2 );
+                }
+                ready.add( mWaiting.remove( 0 ) );
+                mDispatched++;
+            }
+        }
+        if( ready != null ) {
+            for( PrefetchTask task : ready ) {
+                mDispatcher.dispatch( task );
+            }
+        }
+    }
+
+    /**
+     * A dispatched task has finished or has been rejected, the next ones are dispatched.
+     */
+    private void downloadFinished() {
+        synchronized( mWaiting ) {
+            mDispatched--;
+        }
+        dispatch();
+    }
+
+    /**
+     * Pauses the prefetcher, the running downloads will be finished but no more will be started.
+     *
+     * @since 1.0
+     */
+    public void pause() {
+        synchronized( mWaiting ) {
+            mPaused = true;
+        }
+    }
+
+    /**
+     * Resumes a paused prefetcher.
+     *
+     * @since 1.0
+     */
+    public void resume() {
+        synchronized( mWaiting ) {
+            mPaused = false;
+        }
+        if( mDispatcher != null ) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Cancels the prefetcher, the running downloads are aborted. {@link Listener#onFinished(int, int, long)} is still called.
+     *
+     * @since 1.0
+     */
+    public void cancel() {
+        if( mCancelled || mDispatcher == null ) {
+            return;
+        }
+        mCancelled = true;
+        synchronized( mTasks ) {
+            for( PrefetchTask task : mTasks ) {
+                task.abort();
+            }
+        }
+        // The waiting tasks are skipped at once, a paused prefetcher must not hold them.
+        PrefetchTask[] waiting;
+        synchronized( mWaiting ) {
+            waiting = mWaiting.toArray( new PrefetchTask[mWaiting.size()] );
+            mWaiting.clear();
+        }
+        for( PrefetchTask task : waiting ) {
+            task.skip();
+        }
+    }
+
+    /**
+     * @since 1.0
+     * @return true if all images have been done.
+     */
+    public boolean isFinished() {
+        return getDoneCount() >= mUrls.size();
+    }
+
+    /**
+     * @since 1.0
+     * @return the bytes that have been downloaded.
+     */
+    public long getDownloadedBytes() {
+        return mBytes.get();
+    }
+
+    private int getDoneCount() {
+        return mCached.get() + mFailed.get();
+    }
+
+    /**
+     * An image has been done, posts the progress or the end to the UI thread.
+     */
+    private void onTaskDone() {
+        mUiHandler.post( new Runnable() {
+            @Override
+            public void run() {
+                if( mFinished ) {
+                    return;
+                }
+                if( isFinished() ) {
+                    mFinished = true;
+                    mUiHandler.removeCallbacks( mProgress );
+                    release();
+                    LL.i( ":) Prefetched " + mCached.get() + " images, failed " + mFailed.get() + ", "
+                            + mBytes.get() + " bytes." );
+                    if( mListener != null ) {
+                        mListener.onFinished( mCached.get(), mFailed.get(), mBytes.get() );
+                    }
+                }
+                else if( !mProgressPosted ) {
+                    mProgressPosted = true;
+                    long delay = Math.max( 0, mLastProgress + PROGRESS_INTERVAL - SystemClock.uptimeMillis() );
+                    mUiHandler.postDelayed( mProgress, delay );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Releases the tasks after the last image.
+     */
+    private void release() {
+        synchronized( mTasks ) {
+            mTasks.clear();
+        }
+    }
+
+    /**
+     * Downloads one image on a thread of the dispatcher.
+     */
+    private class PrefetchTask extends LLRequestDispatcher.Call {
+        private final String            mUrl;
+        private final long              mBudget;
+        private volatile PrefetchRequest mRequest;
+        private boolean                 mDone;
+
+        PrefetchTask( String _url, long _budget ) {
+            super( _url, DISPATCH_PRIORITY );
+            mUrl = _url;
+            mBudget = _budget;
+        }
+
+        @Override
+        protected void execute() {
+            try {
+                download();
+            }
+            finally {
+                downloadFinished();
+            }
+        }
+
+        @Override
+        protected void reject( RejectedExecutionException _e ) {
+            downloadFinished();
+            skip();
+        }
+
+        private void download() {
+            if( mCancelled ) {
+                skip();
+                return;
+            }
+            if( mBytes.get() >= mBudget ) {
+                LL.i( ":| Prefetch budget has been reached, skip: " + mUrl );
+                skip();
+                return;
+            }
+            if( mReqSize != null && LLImageCache.getInstance().get( LLImageCache.makeKey( mUrl, mReqSize ) ) != null ) {
+                done( true, 0 );
+                return;
+            }
+            PrefetchRequest request = new PrefetchRequest( mContext, mUserAgent );
+            mRequest = request;
+            request.setClientShared( true );
+            request.executeOnCurrentThread( LLHttpClientPool.getDefault().getClient(), mUrl, null );
+            done( request.mSuccessed, request.mDownloaded );
+        }
+
+        void abort() {
+            PrefetchRequest request = mRequest;
+            if( request != null ) {
+                request.abort();
+            }
+        }
+
+        void skip() {
+            done( false, 0 );
+        }
+
+        private void done( boolean _cached, long _bytes ) {
+            synchronized( this ) {
+                if( mDone ) {
+                    return;
+                }
+                mDone = true;
+            }
+            mRequest = null;
+            mBytes.addAndGet( _bytes );
+            if( _cached ) {
+                mCached.incrementAndGet();
+            }
+            else {
+                mFailed.incrementAndGet();
+            }
+            onTaskDone();
+        }
+    }
+
+    /**
+     * Stores a body in the {@link LLDiskCache} without reading it.
+     */
+    private static class PrefetchRequest extends LLRequestFile {
+        private boolean mFromDiskCache;
+        private boolean mSuccessed;
+        private long    mDownloaded;
+
+        PrefetchRequest( Context _context, String _userAgent ) {
+            super( _context, null, Method.GET, _userAgent );
+        }
+
+        @Override
+        protected LLAbstractResponse onReadCache( String _urlStr, DefaultHttpClient _client ) throws IOException {
+            LLAbstractResponse cached = super.onReadCache( _urlStr, _client );
+            mFromDiskCache = cached != null;
+            return cached;
+        }
+
+        @Override
+        protected LLAbstractResponse onNotModified( String _urlStr, DefaultHttpClient _client, HttpResponse _response )
+                throws IOException {
+            LLAbstractResponse cached = super.onNotModified( _urlStr, _client, _response );
+            mFromDiskCache = cached != null;
+            return cached;
+        }
+
+        @Override
+        protected void onResponse( LLAbstractResponse _r ) throws IOException {
+            if( _r == null ) {
+                // Thrown like by the other requests, so that the request is aborted and the connection goes back to the pool.
+                throw new IOException( ":( Can't prefetch, the server hasn't answered 200." );
+            }
+            // A "no-store" response isn't a cached one.
+            mSuccessed = _r instanceof LLCacheResponse;
+            if( mSuccessed && !mFromDiskCache ) {
+                mDownloaded = ((LLCacheResponse) _r).getLength();
+            }
+            _r.release();
+        }
+
+        @Override
+        protected void onPostExecute( Exception _result ) {
+            if( _result != null ) {
+                LL.w( ":| Can't prefetch: " + _result.toString() );
+                mSuccessed = false;
+            }
+        }
+    }
+}
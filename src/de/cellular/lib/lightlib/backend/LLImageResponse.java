@@ -28,6 +28,7 @@ import de.cellular.lib.lightlib.backend.base.LLAbstractResponse;
 /**
  * The Class LLImageResponse that decorates a {@link LLAbstractResponse}. Additional to {@link LLAbstractResponse} that it contains a ref to the decoded {@link Bitmap}.
  * 
+ * @version 1.0.1 <li>Carries where the image came from, the time of downloading and decoding and its bytes.</li>
  * @version 1.0
  * @see {@link http://en.wikipedia.org/wiki/Decorator_pattern}
  *      <p>
@@ -37,8 +38,25 @@ import de.cellular.lib.lightlib.backend.base.LLAbstractResponse;
  */
 public class LLImageResponse extends LLHttpClientResponse
 {
+    /**
+     * The image is from {@link de.cellular.lib.lightlib.cache.LLImageCache}, nothing has been decoded.
+     */
+    public static final int    SOURCE_MEMORY  = 0;
+    /**
+     * The image has been decoded from {@link de.cellular.lib.lightlib.cache.LLDiskCache}.
+     */
+    public static final int    SOURCE_DISK    = 1;
+    /**
+     * The image has been downloaded.
+     */
+    public static final int    SOURCE_NETWORK = 2;
+
     private Bitmap         mBitmap;
     private LLAbstractResponse mBaseResponse;
+    private int                mSource        = SOURCE_NETWORK;
+    private long               mDownloadTime;
+    private long               mDecodeTime;
+    private long               mByteCount;
 
     /**
      * Instantiates a new {@link LLImageResponse}.
@@ -76,6 +94,64 @@ public class LLImageResponse extends LLHttpClientResponse
     public void setBitmap( Bitmap _bitmap ) {
         mBitmap = _bitmap;
     }
+
+    /**
+     * @since 1.0.1
+     * @return {@link #SOURCE_MEMORY}, {@link #SOURCE_DISK} or {@link #SOURCE_NETWORK}.
+     */
+    public int getSource() {
+        return mSource;
+    }
+
+    /**
+     * @since 1.0.1
+     * @param _source
+     *            {@link #SOURCE_MEMORY}, {@link #SOURCE_DISK} or {@link #SOURCE_NETWORK}.
+     */
+    public void setSource( int _source ) {
+        mSource = _source;
+    }
+
+    /**
+     * @since 1.0.1
+     * @return the ms from starting the request until the body has been read, 0 if it's not from the network.
+     */
+    public long getDownloadTime() {
+        return mDownloadTime;
+    }
+
+    /**
+     * @since 1.0.1
+     * @return the ms of decoding, 0 if it's from the memory.
+     */
+    public long getDecodeTime() {
+        return mDecodeTime;
+    }
+
+    /**
+     * @since 1.0.1
+     * @return the bytes of the encoded image, 0 if it's from the memory.
+     */
+    public long getByteCount() {
+        return mByteCount;
+    }
+
+    /**
+     * Sets the time of loading.
+     * 
+     * @since 1.0.1
+     * @param _downloadTime
+     *            the ms of downloading.
+     * @param _decodeTime
+     *            the ms of decoding.
+     * @param _byteCount
+     *            the bytes of the encoded image.
+     */
+    public void setTimings( long _downloadTime, long _decodeTime, long _byteCount ) {
+        mDownloadTime = _downloadTime;
+        mDecodeTime = _decodeTime;
+        mByteCount = _byteCount;
+    }
  
 
     @Override
@@ -18,31 +18,41 @@ package de.cellular.lib.lightlib.backend;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.security.KeyStore;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
 
 import android.content.Context;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 import android.text.TextUtils;
 import android.webkit.WebView;
@@ -58,14 +68,25 @@ import de.cellular.lib.lightlib.log.LL;
  * <strong>Known subclasses are</strong>
  * <p>
  * {@link LLRequestFile}
+ * <p>
+ * A subclass can cache responses with {@link #onReadCache(String, DefaultHttpClient)} and {@link #onWriteCache(LLAbstractResponse)}, and revalidate a stale one with
+ * {@link #onAppendValidators(HttpRequestBase)} and {@link #onNotModified(String, DefaultHttpClient, HttpResponse)}.
  * 
+ * @version 1.0.1 <li>{@link #start(Context, LLRequestResponsibleObject, Method, String, String)} runs on {@link LLRequestEngine} with the shared client of {@link LLHttpClientPool}.</li> <li>The
+ *          user-agent is computed once for the process.</li> <li>"304 Not Modified" is passed to {@link #onNotModified(String, DefaultHttpClient, HttpResponse)}.</li>
+ *          <li>Every request has its own cookie store.</li>
  * @version 1.0
  * @author Chris Xinyue Zhao <hasszhao@gmail.com>
  * 
  */
 public class LLRequest extends AsyncTask<Object, Object, Exception>
 {
+    private static String                sUserAgent;
+
     private HttpRequestBase              mHttpRequestBase;
+    private volatile boolean             mAborted;
+    private boolean                      mClientShared;
+    private LLRequestSpec                mSpec;
 
     protected static final int           TIME_OUT = 60 * 60 * 1000;
     protected String                     mUserAgent;
@@ -113,12 +134,76 @@ public class LLRequest extends AsyncTask<Object, Object, Exception>
      */
     protected LLRequest( Context _context, LLRequestResponsibleObject _handler, Method _method )
     {
-        mUserAgent = new WebView( _context ).getSettings().getUserAgentString();
+        this( _context, _handler, _method, getUserAgent( _context ) );
+    }
+
+    /**
+     * Instantiates a new {@link LLRequest} with a known user-agent, it can be created on any thread, see {@link LLRequestEngine}.
+     * 
+     * @since 1.0.1
+     * @param _context
+     *            the Context, can be null.
+     * @param _handler
+     *            the {@link LLRequestResponsibleObject} object that can response to the request.
+     * @param _method
+     *            the request {@link Method}.
+     * @param _userAgent
+     *            the user-agent, see {@link #getUserAgent(Context)}.
+     */
+    LLRequest( Context _context, LLRequestResponsibleObject _handler, Method _method, String _userAgent )
+    {
+        mUserAgent = _userAgent;
         mHandler = _handler;
         mMethod = _method;
         mContext = _context;
     }
 
+    /**
+     * Gets the user-agent of the process. It's the one of the {@link WebView} that is created once on the UI thread. On another thread before that, the user-agent of the VM is used and the one of
+     * the {@link WebView} is fetched on the UI thread for later requests.
+     * 
+     * @since 1.0.1
+     * @param _context
+     *            the Context, can be null.
+     * @return the user-agent.
+     */
+    public static String getUserAgent( final Context _context ) {
+        synchronized( LLRequest.class ) {
+            if( sUserAgent != null ) {
+                return sUserAgent;
+            }
+        }
+        if( _context != null && Looper.myLooper() == Looper.getMainLooper() ) {
+            String userAgent = new WebView( _context ).getSettings().getUserAgentString();
+            synchronized( LLRequest.class ) {
+                if( sUserAgent == null ) {
+                    sUserAgent = userAgent;
+                }
+                return sUserAgent;
+            }
+        }
+        if( _context != null ) {
+            new Handler( Looper.getMainLooper() ).post( new Runnable() {
+                @Override
+                public void run() {
+                    getUserAgent( _context );
+                }
+            } );
+        }
+        return System.getProperty( "http.agent" );
+    }
+
+    /**
+     * Set the user-agent of the process instead of the one of the {@link WebView}.
+     * 
+     * @since 1.0.1
+     * @param _userAgent
+     *            the user-agent, null to use the one of the {@link WebView} again.
+     */
+    public static synchronized void setUserAgent( String _userAgent ) {
+        sUserAgent = _userAgent;
+    }
+
     /**
      * Creates a {@link DefaultHttpClient} object.
      * 
@@ -143,6 +228,44 @@ public class LLRequest extends AsyncTask<Object, Object, Exception>
      */
     public static DefaultHttpClient createHttpClient( CredentialsProvider _credsProvider,
             boolean _ALLOW_ALL_HOSTNAME_VERIFIER_FOR_SSL )
+    {
+        return createHttpClient( _credsProvider, _ALLOW_ALL_HOSTNAME_VERIFIER_FOR_SSL, 0 );
+    }
+
+    /**
+     * Creates a {@link DefaultHttpClient} object that can be shared by concurrent requests.
+     * 
+     * @since 1.0
+     * @param _credsProvider
+     *            the object contains connect credential info like: User, Pwd, Host etc.
+     * @param _ALLOW_ALL_HOSTNAME_VERIFIER_FOR_SSL
+     *            true allow all hostname verifier for ssl.
+     * @param _maxConnections
+     *            the max number of connections in total and per host, the defaults of HttpClient are used if it's <= 0.
+     * @return the {@link DefaultHttpClient} object
+     */
+    public static DefaultHttpClient createHttpClient( CredentialsProvider _credsProvider,
+            boolean _ALLOW_ALL_HOSTNAME_VERIFIER_FOR_SSL, int _maxConnections )
+    {
+        return createHttpClient( _credsProvider, _ALLOW_ALL_HOSTNAME_VERIFIER_FOR_SSL, _maxConnections, _maxConnections );
+    }
+
+    /**
+     * Creates a {@link DefaultHttpClient} object that can be shared by concurrent requests, see {@link LLHttpClientPool}.
+     * 
+     * @since 1.0.1
+     * @param _credsProvider
+     *            the object contains connect credential info like: User, Pwd, Host etc.
+     * @param _ALLOW_ALL_HOSTNAME_VERIFIER_FOR_SSL
+     *            true allow all hostname verifier for ssl.
+     * @param _maxTotal
+     *            the max number of connections in total, the defaults of HttpClient are used if it's <= 0.
+     * @param _maxPerRoute
+     *            the max number of connections per host, the defaults of HttpClient are used if it's <= 0.
+     * @return the {@link DefaultHttpClient} object
+     */
+    public static DefaultHttpClient createHttpClient( CredentialsProvider _credsProvider,
+            boolean _ALLOW_ALL_HOSTNAME_VERIFIER_FOR_SSL, int _maxTotal, int _maxPerRoute )
     {
         // -------------------------------------------------------------------
         // Example for _credsProvider
@@ -160,27 +283,18 @@ public class LLRequest extends AsyncTask<Object, Object, Exception>
         HttpProtocolParams.setVersion( params, HttpVersion.HTTP_1_1 );
         HttpProtocolParams.setContentCharset( params, HTTP.DEFAULT_CONTENT_CHARSET );
         HttpProtocolParams.setUseExpectContinue( params, true );
+        if( _maxTotal > 0 ) {
+            ConnManagerParams.setMaxTotalConnections( params, _maxTotal );
+        }
+        if( _maxPerRoute > 0 ) {
+            ConnManagerParams.setMaxConnectionsPerRoute( params, new ConnPerRouteBean( _maxPerRoute ) );
+        }
 
         SchemeRegistry schReg = new SchemeRegistry();
         PlainSocketFactory plainSocketFactory = PlainSocketFactory.getSocketFactory();
-        SSLSocketFactory sslSocketFactory = null;
-
-        if( _ALLOW_ALL_HOSTNAME_VERIFIER_FOR_SSL ) {
-            try {
-                KeyStore trustStore = KeyStore.getInstance( KeyStore.getDefaultType() );
-                trustStore.load( null, null );
-                sslSocketFactory = new EasySSLSocketFactory( trustStore );
-            }
-            catch( Exception _e ) {
-                LL.e( _e.toString() );
-                sslSocketFactory = SSLSocketFactory.getSocketFactory();
-            }
-            sslSocketFactory
-                    .setHostnameVerifier( org.apache.http.conn.ssl.SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER );
-        }
-        else {
-            sslSocketFactory = SSLSocketFactory.getSocketFactory();
-        }
+        // Shared factories, so that the TLS sessions are resumed by all clients.
+        SSLSocketFactory sslSocketFactory = _ALLOW_ALL_HOSTNAME_VERIFIER_FOR_SSL ? EasySSLSocketFactory.getInstance()
+                : LLSSLSocketFactory.getDefault();
         schReg.register( new Scheme( "http", plainSocketFactory, 80 ) );
         schReg.register( new Scheme( "https", sslSocketFactory, 443 ) );
         ClientConnectionManager conMgr = new ThreadSafeClientConnManager( params, schReg );
@@ -235,6 +349,10 @@ public class LLRequest extends AsyncTask<Object, Object, Exception>
                 if( !TextUtils.isEmpty( urlstr ) ) {
                     LL.i( ":| Request: " + urlstr );
                     mHttpRequestBase = createHttpRequest( urlstr );
+                    if( mAborted ) {
+                        // Aborted before the request has been created.
+                        mHttpRequestBase.abort();
+                    }
 
                     // ----------------------------------------
                     // Set header
@@ -286,12 +404,38 @@ public class LLRequest extends AsyncTask<Object, Object, Exception>
                     // ----------------------------------------
 
                     try {
-                        HttpResponse response = client.execute( mHttpRequestBase );
-                        if( (mHttpRequestBase != null && mHttpRequestBase.isAborted()) || mHttpRequestBase == null ) {
-                            onEmptyResponse( new LLHttpClientBaseResponse( urlstr, client, response ) );
+                        LLAbstractResponse cached = onReadCache( urlstr, client );
+                        if( cached != null ) {
+                            LL.i( ":) Response from cache: " + urlstr );
+                            onResponse( markClient( cached ) );
                         }
                         else {
-                            onResponse( LLHttpClientResponse.createInstance( urlstr, client, response ) );
+                            onAppendValidators( mHttpRequestBase );
+                            // Only the cookies of this request, a shared client mustn't mix the cookies of hosts and requests.
+                            BasicCookieStore cookieStore = new BasicCookieStore();
+                            HttpContext context = new BasicHttpContext();
+                            context.setAttribute( ClientContext.COOKIE_STORE, cookieStore );
+                            HttpResponse response = client.execute( mHttpRequestBase, context );
+                            if( (mHttpRequestBase != null && mHttpRequestBase.isAborted()) || mHttpRequestBase == null ) {
+                                onEmptyResponse( markClient( new LLHttpClientBaseResponse( urlstr, client, response ) ) );
+                            }
+                            else if( response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED ) {
+                                HttpEntity entity = response.getEntity();
+                                if( entity != null ) {
+                                    // Gives the connection back.
+                                    entity.consumeContent();
+                                }
+                                LLAbstractResponse notModified = onNotModified( urlstr, client, response );
+                                if( notModified == null ) {
+                                    throw new IOException( ":( Not modified, but nothing has been cached: " + urlstr );
+                                }
+                                LL.i( ":) Response has not been modified: " + urlstr );
+                                onResponse( markClient( notModified ) );
+                            }
+                            else {
+                                onResponse( onWriteCache( markClient( LLHttpClientResponse.createInstance( urlstr,
+                                        client, response, cookieStore.getCookies() ) ) ) );
+                            }
                         }
                     }
                     catch( Exception _e ) {
@@ -312,6 +456,81 @@ public class LLRequest extends AsyncTask<Object, Object, Exception>
         return ret;
     }
 
+    /**
+     * Tells a response whether the client of the request is shared, a shared client won't be shut down when the response is released.
+     * 
+     * @param _r
+     *            the response, could be null.
+     * @return the _r
+     */
+    private LLAbstractResponse markClient( LLAbstractResponse _r ) {
+        if( _r instanceof LLHttpClientBaseResponse ) {
+            ((LLHttpClientBaseResponse) _r).setClientShared( mClientShared );
+        }
+        return _r;
+    }
+
+    /**
+     * Handler before the request goes to the network. A subclass can return a cached response that will be passed to {@link #onResponse(LLAbstractResponse)} instead of requesting.
+     * 
+     * @since 1.0
+     * @param _urlStr
+     *            the target url in {@link String}
+     * @param _client
+     *            the {@link DefaultHttpClient} of the request, a cached response should release it.
+     * @return the cached response, null at default.
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    protected LLAbstractResponse onReadCache( String _urlStr, DefaultHttpClient _client ) throws IOException {
+        return null;
+    }
+
+    /**
+     * Handler right before the request goes to the network, when {@link #onReadCache(String, DefaultHttpClient)} has returned null. A subclass that has a stale cached response can add
+     * "If-None-Match" or "If-Modified-Since" here.
+     * 
+     * @since 1.0.1
+     * @param _req
+     *            the {@link HttpRequestBase} object
+     */
+    protected void onAppendValidators( HttpRequestBase _req ) {
+    }
+
+    /**
+     * Handler when the server has answered "304 Not Modified" to the validators of {@link #onAppendValidators(HttpRequestBase)}. A subclass returns the cached response, it's passed to
+     * {@link #onResponse(LLAbstractResponse)} like a response from the network.
+     * 
+     * @since 1.0.1
+     * @param _urlStr
+     *            the target url in {@link String}
+     * @param _client
+     *            the {@link DefaultHttpClient} of the request, the cached response should release it.
+     * @param _response
+     *            the 304 response, its headers can update the cached ones.
+     * @return the cached response, null at default, which fails the request.
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    protected LLAbstractResponse onNotModified( String _urlStr, DefaultHttpClient _client, HttpResponse _response )
+            throws IOException {
+        return null;
+    }
+
+    /**
+     * Handler after a response has come from the network and before it is passed to {@link #onResponse(LLAbstractResponse)}. A subclass can store the response and return a replacement of it.
+     * 
+     * @since 1.0
+     * @param _r
+     *            the response from the network, could be null.
+     * @return the response that will be passed to {@link #onResponse(LLAbstractResponse)}, _r at default.
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    protected LLAbstractResponse onWriteCache( LLAbstractResponse _r ) throws IOException {
+        return _r;
+    }
+
     /**
      * Handler when an empty response comes. The fellow codes show when the handler will be triggered(see {@link #doInBackground(Object... )}).
      * <p>
@@ -398,6 +617,11 @@ public class LLRequest extends AsyncTask<Object, Object, Exception>
         if( mMethod == Method.POST ){
             _req.setHeader( "Content-type", "application/x-www-form-urlencoded" );
         }
+        if( mSpec != null ) {
+            for( Map.Entry<String, String> header : mSpec.getHeaders().entrySet() ) {
+                _req.setHeader( header.getKey(), header.getValue() );
+            }
+        }
     }
 
 //    /**
@@ -421,11 +645,22 @@ public class LLRequest extends AsyncTask<Object, Object, Exception>
         // List<NameValuePair> nameValuePairs = new ArrayList<NameValuePair>(2);
         // _nameValuePairs.add(new BasicNameValuePair("id", "12345"));
         // _nameValuePairs.add(new BasicNameValuePair("stringdata", "Hi"));
-        return null;
+        return mSpec != null ? mSpec.getBody() : null;
     }
 
     /**
-     * Wrap "new" a {@link LLRequest} object
+     * Set the description of the request, its headers and body are used by {@link #onAppendHeaders(HttpRequestBase)} and {@link #onWritePostBody()}.
+     * 
+     * @since 1.0.1
+     * @param _spec
+     *            the {@link LLRequestSpec}
+     */
+    void setSpec( LLRequestSpec _spec ) {
+        mSpec = _spec;
+    }
+
+    /**
+     * Wrap "new" a {@link LLRequest} object, it's queued in the {@link LLRequestDispatcher} of {@link LLRequestEngine#getDefault(Context)}.
      *
      * @param _context the Context
      * @param _handler the {@link LLRequestResponsibleObject} object
@@ -440,15 +675,64 @@ public class LLRequest extends AsyncTask<Object, Object, Exception>
             Method _method,
             String _url,
             String _someCookies ) {
-        LLRequest r = new LLRequest( _context, _handler, _method );
-        r.execute( createHttpClient( false ), _url, _someCookies );
-        return r;
+        LLRequestSpec spec = new LLRequestSpec( _method, _url );
+        spec.setCookies( _someCookies );
+        return LLRequestEngine.getDefault( _context ).execute( spec, _handler );
+    }
+
+    /**
+     * Gets the request {@link Method}.
+     * 
+     * @since 1.0
+     * @return the method
+     */
+    protected Method getMethod() {
+        return mMethod;
+    }
+
+    /**
+     * Tells the request that its client is shared with other requests and must not be shut down after responding.
+     * 
+     * @since 1.0
+     * @param _shared
+     *            true if the client is shared.
+     */
+    public void setClientShared( boolean _shared ) {
+        mClientShared = _shared;
+    }
+
+    /**
+     * Runs the request on the calling thread instead of the executor of {@link AsyncTask}. It's used by the executors of the library, i.e {@link LLImageLoader}.
+     * 
+     * @since 1.0
+     * @param _params
+     *            the same params as for {@link #execute(Object...)}: the client, the url and the cookies.
+     */
+    void executeOnCurrentThread( Object... _params ) {
+        if( mAborted ) {
+            LL.i( ":| Request has been aborted before running." );
+            if( mHandler != null ) {
+                mHandler.sendEmptyMessage( REQUEST_ABORTED );
+            }
+        }
+        else {
+            onPostExecute( doInBackground( _params ) );
+        }
+    }
+
+    /**
+     * @since 1.0
+     * @return true if {@link #abort()} has been called.
+     */
+    public boolean isAborted() {
+        return mAborted;
     }
 
     /**
      * Abort the request.
      */
     public void abort() {
+        mAborted = true;
         if( mHttpRequestBase != null && !mHttpRequestBase.isAborted() ) {
             mHttpRequestBase.abort();
         }
@@ -0,0 +1,370 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.net.Uri;
+import de.cellular.lib.lightlib.log.LL;
+
+/**
+ * Queues {@link Call}s and runs them on an {@link Executor} with a limit of concurrent calls in total and per host, so that a slow host can't take all threads from the others and the parallelism
+ * doesn't depend on the {@link android.os.AsyncTask} of the platform.
+ * <p>
+ * The waiting calls are started in the order of dispatching with {@link #ORDER_FIFO}, or the highest priority first with {@link #ORDER_PRIORITY}, calls with the same priority in the order of
+ * dispatching. A call whose host is at its limit is passed by calls to other hosts.
+ * <p>
+ * The dispatcher can be used on any thread.
+ *
+ * @version <strong>1.0.1</strong> <li>The slots of rejected calls are given to the waiting ones.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLRequestDispatcher
+{
+    public static final int         ORDER_FIFO                    = 0;
+    public static final int         ORDER_PRIORITY                = 1;
+
+    public static final int         DEFAULT_MAX_REQUESTS          = 8;
+    public static final int         DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+
+    private static final AtomicLong sSequence                     = new AtomicLong();
+
+    /**
+     * A request that waits in a {@link LLRequestDispatcher}.
+     */
+    public static abstract class Call implements Runnable {
+        private final String        mHost;
+        private final int           mPriority;
+        private final long          mSequence;
+        private LLRequestDispatcher mDispatcher;
+
+        /**
+         * Instantiates a new {@link Call}.
+         *
+         * @since 1.0
+         * @param _url
+         *            the target url in {@link String}, its host is limited.
+         * @param _priority
+         *            the priority for {@link LLRequestDispatcher#ORDER_PRIORITY}, a higher one is started earlier.
+         */
+        public Call( String _url, int _priority ) {
+            String host = _url != null ? Uri.parse( _url ).getHost() : null;
+            mHost = host != null ? host.toLowerCase() : "";
+            mPriority = _priority;
+            mSequence = sSequence.getAndIncrement();
+        }
+
+        /**
+         * Runs the request on a thread of the executor.
+         *
+         * @since 1.0
+         */
+        protected abstract void execute();
+
+        /**
+         * The executor has rejected the call, it will never run.
+         *
+         * @since 1.0
+         * @param _e
+         *            the exception of the executor.
+         */
+        protected abstract void reject( RejectedExecutionException _e );
+
+        @Override
+        public final void run() {
+            try {
+                execute();
+            }
+            finally {
+                mDispatcher.finished( this );
+            }
+        }
+
+        /**
+         * @since 1.0
+         * @return the host of the url, "" if it has none.
+         */
+        public String getHost() {
+            return mHost;
+        }
+
+        /**
+         * @since 1.0
+         * @return the priority.
+         */
+        public int getPriority() {
+            return mPriority;
+        }
+    }
+
+    private static final Comparator<Call> FIFO_ORDER     = new Comparator<Call>() {
+                                                             @Override
+                                                             public int compare( Call _lhs, Call _rhs ) {
+                                                                 return _lhs.mSequence < _rhs.mSequence ? -1
+                                                                         : (_lhs.mSequence == _rhs.mSequence ? 0
+                                                                                 : 1);
+                                                             }
+                                                         };
+
+    private static final Comparator<Call> PRIORITY_ORDER = new Comparator<Call>() {
+                                                             @Override
+                                                             public int compare( Call _lhs, Call _rhs ) {
+                                                                 if( _lhs.mPriority != _rhs.mPriority ) {
+                                                                     return _lhs.mPriority > _rhs.mPriority ? -1 : 1;
+                                                                 }
+                                                                 return FIFO_ORDER.compare( _lhs, _rhs );
+                                                             }
+                                                         };
+
+    private volatile Executor             mExecutor;
+    private int                           mMaxRequests;
+    private int                           mMaxRequestsPerHost;
+    private int                           mOrder;
+    /**
+     * The waiting calls in the order of starting.
+     */
+    private final ArrayList<Call>         mQueue         = new ArrayList<Call>();
+    private final HashMap<String, Integer> mRunningPerHost = new HashMap<String, Integer>();
+    private int                           mRunning;
+
+    /**
+     * Instantiates a new {@link LLRequestDispatcher}.
+     *
+     * @since 1.0
+     * @param _executor
+     *            the executor that runs the calls, it should have at least _maxRequests threads.
+     * @param _maxRequests
+     *            the max count of concurrent calls.
+     * @param _maxRequestsPerHost
+     *            the max count of concurrent calls to one host.
+     * @param _order
+     *            {@link #ORDER_FIFO} or {@link #ORDER_PRIORITY}.
+     */
+    public LLRequestDispatcher( Executor _executor, int _maxRequests, int _maxRequestsPerHost, int _order ) {
+        if( _executor == null ) {
+            throw new IllegalArgumentException( "executor is null" );
+        }
+        if( _maxRequests <= 0 || _maxRequestsPerHost <= 0 ) {
+            throw new IllegalArgumentException( "maxRequests <= 0 or maxRequestsPerHost <= 0" );
+        }
+        mExecutor = _executor;
+        mMaxRequests = _maxRequests;
+        mMaxRequestsPerHost = _maxRequestsPerHost;
+        mOrder = _order;
+    }
+
+    /**
+     * Queues a call, it's started at once when the limits allow.
+     *
+     * @since 1.0
+     * @param _call
+     *            the call, it can be dispatched only once.
+     */
+    public void dispatch( Call _call ) {
+        synchronized( this ) {
+            if( _call.mDispatcher != null ) {
+                throw new IllegalStateException( "The call has been dispatched." );
+            }
+            _call.mDispatcher = this;
+            int index = Collections.binarySearch( mQueue, _call, getComparator() );
+            mQueue.add( index < 0 ? -index - 1 : index, _call );
+        }
+        promote();
+    }
+
+    /**
+     * Replaces the executor, the running calls stay on the old one.
+     *
+     * @since 1.0
+     * @param _executor
+     *            the executor that runs the calls.
+     */
+    public void setExecutor( Executor _executor ) {
+        if( _executor == null ) {
+            throw new IllegalArgumentException( "executor is null" );
+        }
+        mExecutor = _executor;
+    }
+
+    /**
+     * Set the max count of concurrent calls.
+     *
+     * @since 1.0
+     * @param _maxRequests
+     */
+    public void setMaxRequests( int _maxRequests ) {
+        if( _maxRequests <= 0 ) {
+            throw new IllegalArgumentException( "maxRequests <= 0" );
+        }
+        synchronized( this ) {
+            mMaxRequests = _maxRequests;
+        }
+        promote();
+    }
+
+    /**
+     * Set the max count of concurrent calls to one host.
+     *
+     * @since 1.0
+     * @param _maxRequestsPerHost
+     */
+    public void setMaxRequestsPerHost( int _maxRequestsPerHost ) {
+        if( _maxRequestsPerHost <= 0 ) {
+            throw new IllegalArgumentException( "maxRequestsPerHost <= 0" );
+        }
+        synchronized( this ) {
+            mMaxRequestsPerHost = _maxRequestsPerHost;
+        }
+        promote();
+    }
+
+    /**
+     * Set the order of starting the waiting calls.
+     *
+     * @since 1.0
+     * @param _order
+     *            {@link #ORDER_FIFO} or {@link #ORDER_PRIORITY}.
+     */
+    public synchronized void setOrder( int _order ) {
+        if( _order != mOrder ) {
+            mOrder = _order;
+            Collections.sort( mQueue, getComparator() );
+        }
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of waiting calls.
+     */
+    public synchronized int getQueuedCount() {
+        return mQueue.size();
+    }
+
+    /**
+     * @since 1.0
+     * @param _host
+     *            the host
+     * @return the count of waiting calls to the host.
+     */
+    public synchronized int getQueuedCount( String _host ) {
+        String host = _host != null ? _host.toLowerCase() : "";
+        int count = 0;
+        for( Call c : mQueue ) {
+            if( c.mHost.equals( host ) ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of running calls.
+     */
+    public synchronized int getRunningCount() {
+        return mRunning;
+    }
+
+    private Comparator<Call> getComparator() {
+        return mOrder == ORDER_PRIORITY ? PRIORITY_ORDER : FIFO_ORDER;
+    }
+
+    /**
+     * Starts the waiting calls that the limits allow. The executor is called without holding the lock, it may run a call on the calling thread.
+     * <p>
+     * The slots of rejected calls are given to the next waiting ones at once, no running call would start them later. An executor that rejects everything, i.e after it has been shut down, rejects
+     * the whole queue this way.
+     */
+    private void promote() {
+        boolean rejected;
+        do {
+            rejected = startReady();
+        }
+        while( rejected );
+    }
+
+    /**
+     * Starts the waiting calls that the limits allow.
+     *
+     * @return true if a call has been rejected.
+     */
+    private boolean startReady() {
+        boolean rejected = false;
+        List<Call> ready = null;
+        synchronized( this ) {
+            Iterator<Call> it = mQueue.iterator();
+            while( mRunning < mMaxRequests && it.hasNext() ) {
+                Call c = it.next();
+                Integer running = mRunningPerHost.get( c.mHost );
+                int count = running != null ? running : 0;
+                if( count < mMaxRequestsPerHost ) {
+                    it.remove();
+                    mRunningPerHost.put( c.mHost, count + 1 );
+                    mRunning++;
+                    if( ready == null ) {
+                        ready = new ArrayList<Call>( 2 );
+                    }
+                    ready.add( c );
+                }
+            }
+        }
+        if( ready != null ) {
+            Executor executor = mExecutor;
+            for( Call c : ready ) {
+                try {
+                    executor.execute( c );
+                }
+                catch( RejectedExecutionException _e ) {
+                    LL.w( ":| Call is rejected: " + c.mHost );
+                    release( c );
+                    c.reject( _e );
+                    rejected = true;
+                }
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * A call has finished, the next ones are started.
+     */
+    private void finished( Call _call ) {
+        release( _call );
+        promote();
+    }
+
+    private synchronized void release( Call _call ) {
+        mRunning--;
+        Integer running = mRunningPerHost.get( _call.mHost );
+        if( running == null || running <= 1 ) {
+            mRunningPerHost.remove( _call.mHost );
+        }
+        else {
+            mRunningPerHost.put( _call.mHost, running - 1 );
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.backend;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import de.cellular.lib.lightlib.backend.base.LLRequestResponsibleObject;
+import de.cellular.lib.lightlib.concurrent.LLThreadPoolWrapper;
+import de.cellular.lib.lightlib.log.LL;
+
+/**
+ * Runs requests that are described by {@link LLRequestSpec}s with the shared client of {@link LLHttpClientPool}. The requests are queued in a {@link LLRequestDispatcher} that limits the concurrent
+ * requests in total and per host, see {@link #getDispatcher()}.
+ * <p>
+ * The engine holds only the application context for the {@link de.cellular.lib.lightlib.cache.LLDiskCache}, a request can be executed from any thread, i.e from a background service. The
+ * user-agent is computed once for the process, see {@link LLRequest#getUserAgent(Context)}. The results are sent to the {@link LLRequestResponsibleObject} like by {@link android.os.AsyncTask}
+ * based requests.
+ * <p>
+ * The executor of the dispatcher is {@link #DEFAULT_THREADS} threads of a {@link LLThreadPoolWrapper} with background priority at default, it can be replaced with {@link #setExecutor(Executor)}. The engine should be
+ * created on the UI thread once, i.e by {@link #getDefault(Context)} in {@link android.app.Application#onCreate()}, so that the user-agent is known before the first request.
+ *
+ * @version <strong>1.0.1</strong> <li>Queue the requests in a {@link LLRequestDispatcher} instead of running them on the executor directly.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLRequestEngine
+{
+    public static final int           DEFAULT_THREADS = LLRequestDispatcher.DEFAULT_MAX_REQUESTS;
+
+    private static LLRequestEngine    sDefault;
+
+    private final Context             mContext;
+    private final LLRequestDispatcher mDispatcher;
+
+    /**
+     * Instantiates a new {@link LLRequestEngine}.
+     *
+     * @since 1.0
+     * @param _context
+     *            a Context, only the application context is kept. Can be null, then nothing is cached on disk.
+     * @param _executor
+     *            the executor of requests, null for the default one. It should have {@link LLRequestDispatcher#DEFAULT_MAX_REQUESTS} threads at least.
+     */
+    public LLRequestEngine( Context _context, Executor _executor ) {
+        mContext = _context != null ? _context.getApplicationContext() : null;
+        mDispatcher = new LLRequestDispatcher( _executor != null ? _executor : createDefaultExecutor(),
+                LLRequestDispatcher.DEFAULT_MAX_REQUESTS, LLRequestDispatcher.DEFAULT_MAX_REQUESTS_PER_HOST,
+                LLRequestDispatcher.ORDER_FIFO );
+        if( Looper.myLooper() == Looper.getMainLooper() ) {
+            // Before Jelly Bean the handler of AsyncTask is bound to the thread that initializes the class, a request must not be the first on a background thread.
+            try {
+                Class.forName( "android.os.AsyncTask" );
+            }
+            catch( ClassNotFoundException _e ) {
+                LL.e( ":( " + _e.toString() );
+            }
+            LLRequest.getUserAgent( mContext );
+        }
+    }
+
+    /**
+     * Gets the process-wide {@link LLRequestEngine} with the default executor.
+     *
+     * @since 1.0
+     * @param _context
+     *            a Context, only the application context is kept.
+     * @return the engine
+     */
+    public static synchronized LLRequestEngine getDefault( Context _context ) {
+        if( sDefault == null ) {
+            sDefault = new LLRequestEngine( _context, null );
+        }
+        return sDefault;
+    }
+
+    private static Executor createDefaultExecutor() {
+        final LLThreadPoolWrapper pool = LLThreadPoolWrapper.newPausableThreadPool( DEFAULT_THREADS, DEFAULT_THREADS,
+                new ThreadPoolExecutor.AbortPolicy() );
+        return new Executor() {
+            @Override
+            public void execute( final Runnable _command ) {
+                pool.execute( new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority( Process.THREAD_PRIORITY_BACKGROUND );
+                        _command.run();
+                    }
+                } );
+            }
+        };
+    }
+
+    /**
+     * Replaces the executor, the requests that are running already stay on the old one.
+     *
+     * @since 1.0
+     * @param _executor
+     *            the executor of requests.
+     */
+    public void setExecutor( Executor _executor ) {
+        mDispatcher.setExecutor( _executor );
+    }
+
+    /**
+     * Gets the dispatcher to change the limits and the order of requests or to read the depth of the queue.
+     *
+     * @since 1.0.1
+     * @return the {@link LLRequestDispatcher}
+     */
+    public LLRequestDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    /**
+     * Executes a request, the _handler receives {@link LLRequest#REQUEST_SUCCESSED} or {@link LLRequest#REQUEST_FAILED}.
+     *
+     * @since 1.0
+     * @param _spec
+     *            the description of the request.
+     * @param _handler
+     *            the {@link LLRequestResponsibleObject} object, can be null.
+     * @return the running request, it can be aborted.
+     */
+    public LLRequest execute( LLRequestSpec _spec, LLRequestResponsibleObject _handler ) {
+        LLRequest r = new LLRequest( mContext, _handler, _spec.getMethod(), LLRequest.getUserAgent( mContext ) );
+        return submit( r, _spec );
+    }
+
+    /**
+     * Executes a request whose body is cached on disk like by {@link LLRequestFile}.
+     *
+     * @since 1.0
+     * @see #execute(LLRequestSpec, LLRequestResponsibleObject)
+     */
+    public LLRequestFile executeFile( LLRequestSpec _spec, LLRequestResponsibleObject _handler ) {
+        LLRequestFile r = new LLRequestFile( mContext, _handler, _spec.getMethod(), LLRequest.getUserAgent( mContext ) );
+        return submit( r, _spec );
+    }
+
+    /**
+     * Executes a request of an image at the size of {@link LLRequestSpec#getRequestedSize()}, the _handler receives {@link LLRequestImage#REQUEST_IMAGE_SUCCESSED} or
+     * {@link LLRequestImage#REQUEST_IMAGE_FAILED}. An image in the {@link de.cellular.lib.lightlib.cache.LLImageCache} is sent at once without a request.
+     *
+     * @since 1.0
+     * @see #execute(LLRequestSpec, LLRequestResponsibleObject)
+     */
+    public LLRequestImage executeImage( LLRequestSpec _spec, LLRequestResponsibleObject _handler ) {
+        LLRequestImage r = new LLRequestImage( mContext, _handler, _spec.getMethod(), _spec.getRequestedSize(),
+                LLRequest.getUserAgent( mContext ) );
+        if( LLRequestImage.deliverFromCache( _handler, _spec.getUrl(), _spec.getRequestedSize() ) ) {
+            return r;
+        }
+        return submit( r, _spec );
+    }
+
+    private <T extends LLRequest> T submit( final T _request, final LLRequestSpec _spec ) {
+        _request.setSpec( _spec );
+        _request.setClientShared( true );
+        mDispatcher.dispatch( new LLRequestDispatcher.Call( _spec.getUrl(), _spec.getPriority() ) {
+            @Override
+            protected void execute() {
+                _request.executeOnCurrentThread( LLHttpClientPool.getDefault().getClient(), _spec.getUrl(),
+                        _spec.getCookies() );
+            }
+
+            @Override
+            protected void reject( RejectedExecutionException _e ) {
+                LL.w( ":| Request is rejected: " + _spec );
+                if( _request.mHandler != null ) {
+                    int what = _request instanceof LLRequestImage ? LLRequestImage.REQUEST_IMAGE_FAILED
+                            : LLRequest.REQUEST_FAILED;
+                    Message.obtain( _request.mHandler, what, new LLRequestException( _e, _spec.getUrl() ) )
+                            .sendToTarget();
+                }
+            }
+        } );
+        return _request;
+    }
+}
@@ -18,21 +18,52 @@ package de.cellular.lib.lightlib.backend;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.DefaultHttpClient;
 
 import android.content.Context;
+import de.cellular.lib.lightlib.backend.base.LLAbstractResponse;
 import de.cellular.lib.lightlib.backend.base.LLRequestResponsibleObject;
+import de.cellular.lib.lightlib.cache.LLDiskCache;
 import de.cellular.lib.lightlib.io.FileHelper;
+import de.cellular.lib.lightlib.log.LL;
 
 /**
  * A subclass of {@link LLRequest}. It reads stream of response and pull with stream as a file. <strong>Known subclasses are</strong>
  * <p>
  * {@link LLRequestImage}
+ * <p>
+ * A GET-request reads the {@link LLDiskCache} before it goes to the network, and a body from the network is stored in the cache. The client gets a {@link LLCacheResponse} in both cases.
+ * <p>
+ * An entry of the cache stores the body in {@link #CACHE_BODY} and its {@link LLHttpCacheEntry} in {@link #CACHE_HTTP_ENTRY}. A fresh entry is used without a request, a stale one is revalidated and
+ * used again after "304 Not Modified". A "no-store" response isn't cached.
  * 
+ * @version 1.0.3 <li>A {@link LLCacheResponse} reads an opened {@link LLDiskCache.Snapshot} instead of a file path. A request can read only the cache, see {@link #setCacheOnly(boolean)}.</li>
+ * @version 1.0.2 <li>Follow the HTTP caching headers of responses, see {@link LLHttpCacheEntry}.</li>
+ * @version 1.0.1 <li>Read and write responses through {@link LLDiskCache}.</li>
  * @version 1.0
  * @author Chris Xinyue Zhao <hasszhao@gmail.com>
  * 
  */
 public class LLRequestFile extends LLRequest {
+    /**
+     * The index of the body in an entry of the {@link LLDiskCache}.
+     */
+    public static final int  CACHE_BODY       = 0;
+    /**
+     * The index of the {@link LLHttpCacheEntry} in an entry of the {@link LLDiskCache}.
+     */
+    public static final int  CACHE_HTTP_ENTRY = 1;
+
+    /**
+     * The cached entry that is revalidated, null if there is none.
+     */
+    private LLHttpCacheEntry mStaleEntry;
+    private boolean          mCacheOnly;
 
     /**
      * Instantiates a new {@link LLRequestFile}.
@@ -49,6 +80,23 @@ public class LLRequestFile extends LLRequest {
         super( _context, _handler, _method );
     }
 
+    /**
+     * Instantiates a new {@link LLRequestFile} with a known user-agent, it can be created on any thread.
+     * 
+     * @since 1.0.2
+     * @param _context
+     *            the Context
+     * @param _handler
+     *            the handler the accept message while requesting.
+     * @param _method
+     *            the {@link Method} of requesting.
+     * @param _userAgent
+     *            the user-agent.
+     */
+    LLRequestFile( Context _context, LLRequestResponsibleObject _handler, Method _method, String _userAgent ) {
+        super( _context, _handler, _method, _userAgent );
+    }
+
     /**
      * Creates the output file.
      * 
@@ -62,9 +110,200 @@ public class LLRequestFile extends LLRequest {
      *             Signals that an I/O exception has occurred.
      */
     protected File createOutputFile( LLHttpClientBaseResponse _r, String _toFileName ) throws IOException {
+        if( mContext == null ) {
+            throw new IOException( ":( A file can't be written without Context." );
+        }
         FileHelper fileHelper = new FileHelper( mContext );
         File file = new File( fileHelper.getTargetPath(), _toFileName );
         fileHelper.writeFile( _r.getInputStream(), file );
         return file;
     }
+
+    /**
+     * Reads only the {@link LLDiskCache}: a cached body is used even if it's stale, the request fails without going to the network when nothing is cached.
+     * 
+     * @since 1.0.3
+     * @param _cacheOnly
+     *            true to read only the cache, default is false.
+     */
+    public void setCacheOnly( boolean _cacheOnly ) {
+        mCacheOnly = _cacheOnly;
+    }
+
+    /**
+     * Gets the {@link LLDiskCache} for the request.
+     * 
+     * @since 1.0.1
+     * @return the default {@link LLDiskCache} for GET-requests, or null if the request shouldn't be cached or has no Context.
+     */
+    protected LLDiskCache getDiskCache() {
+        return getMethod() == Method.GET && mContext != null ? LLDiskCache.getDefault( mContext ) : null;
+    }
+
+    /**
+     * Removes the cached body of a url from the {@link LLDiskCache}.
+     * 
+     * @since 1.0.1
+     * @param _urlStr
+     *            the target url in {@link String}
+     */
+    protected void removeFromDiskCache( String _urlStr ) {
+        LLDiskCache cache = getDiskCache();
+        if( cache != null ) {
+            try {
+                cache.remove( LLDiskCache.hashKey( _urlStr ) );
+            }
+            catch( IOException _e ) {
+                LL.e( ":( Can't remove " + _urlStr + " from disk cache: " + _e.toString() );
+            }
+        }
+    }
+
+    /**
+     * Removes a cached body from the {@link LLDiskCache}, only if the entry hasn't been written again since the response was read, see {@link LLDiskCache#remove(LLDiskCache.Snapshot)}.
+     * 
+     * @since 1.0.2
+     * @param _r
+     *            the response from the cache.
+     */
+    protected void removeFromDiskCache( LLCacheResponse _r ) {
+        LLDiskCache cache = getDiskCache();
+        if( cache != null ) {
+            try {
+                cache.remove( _r.getSnapshot() );
+            }
+            catch( IOException _e ) {
+                LL.e( ":( Can't remove " + _r.getUrlStr() + " from disk cache: " + _e.toString() );
+            }
+        }
+    }
+
+    @Override
+    protected LLAbstractResponse onReadCache( String _urlStr, DefaultHttpClient _client ) throws IOException {
+        LLDiskCache cache = getDiskCache();
+        if( cache != null ) {
+            LLDiskCache.Snapshot snapshot = cache.get( LLDiskCache.hashKey( _urlStr ) );
+            if( snapshot != null ) {
+                LLHttpCacheEntry entry = readEntry( snapshot );
+                if( mCacheOnly || (entry != null && entry.isFresh( System.currentTimeMillis() )) ) {
+                    return new LLCacheResponse( _urlStr, _client, snapshot, CACHE_BODY, null );
+                }
+                snapshot.close();
+                if( entry != null && entry.hasValidators() ) {
+                    mStaleEntry = entry;
+                }
+            }
+        }
+        if( mCacheOnly ) {
+            throw new IOException( ":| Not in the disk cache: " + _urlStr );
+        }
+        return null;
+    }
+
+    private LLHttpCacheEntry readEntry( LLDiskCache.Snapshot _snapshot ) {
+        try {
+            return LLHttpCacheEntry.readFrom( _snapshot.getInputStream( CACHE_HTTP_ENTRY ) );
+        }
+        catch( IOException _e ) {
+            LL.w( ":| Can't read cache entry " + _snapshot.getKey() + ": " + _e.toString() );
+            return null;
+        }
+    }
+
+    @Override
+    protected void onAppendValidators( HttpRequestBase _req ) {
+        if( mStaleEntry != null ) {
+            mStaleEntry.addValidators( _req );
+        }
+    }
+
+    @Override
+    protected LLAbstractResponse onNotModified( String _urlStr, DefaultHttpClient _client, HttpResponse _response )
+            throws IOException {
+        LLDiskCache cache = getDiskCache();
+        if( cache == null || mStaleEntry == null ) {
+            return null;
+        }
+        String key = LLDiskCache.hashKey( _urlStr );
+        LLDiskCache.Editor editor = cache.edit( key );
+        if( editor != null ) {
+            // Only the new freshness is written, the body is kept.
+            LLHttpCacheEntry entry = LLHttpCacheEntry.fromResponse( _response, System.currentTimeMillis(),
+                    mStaleEntry );
+            try {
+                entry.writeTo( editor.newOutputStream( CACHE_HTTP_ENTRY ) );
+                editor.commit();
+            }
+            catch( IOException _e ) {
+                editor.abort();
+                LL.w( ":| Can't update cache entry of " + _urlStr + ": " + _e.toString() );
+            }
+        }
+        LLDiskCache.Snapshot snapshot = cache.get( key );
+        if( snapshot == null ) {
+            return null;
+        }
+        return new LLCacheResponse( _urlStr, _client, snapshot, CACHE_BODY, null );
+    }
+
+    @Override
+    protected LLAbstractResponse onWriteCache( LLAbstractResponse _r ) throws IOException {
+        LLDiskCache cache = getDiskCache();
+        if( cache == null || _r == null || _r.getInputStream() == null ) {
+            return _r;
+        }
+        if( _r instanceof LLHttpClientBaseResponse
+                && ((LLHttpClientBaseResponse) _r).getContentLength() > cache.getMaxSize() ) {
+            LL.w( ":| Response is larger than the disk cache: " + _r.getUrlStr() );
+            return _r;
+        }
+
+        LLHttpCacheEntry entry = null;
+        if( _r instanceof LLHttpClientBaseResponse && ((LLHttpClientBaseResponse) _r).getHttpResponse() != null ) {
+            entry = LLHttpCacheEntry.fromResponse( ((LLHttpClientBaseResponse) _r).getHttpResponse(),
+                    System.currentTimeMillis() );
+            if( entry.isNoStore() ) {
+                removeFromDiskCache( _r.getUrlStr() );
+                return _r;
+            }
+        }
+
+        String key = LLDiskCache.hashKey( _r.getUrlStr() );
+        LLDiskCache.Editor editor = cache.edit( key );
+        if( editor == null ) {
+            // Another request is writing the same entry.
+            return _r;
+        }
+        OutputStream out = editor.newOutputStream( CACHE_BODY );
+        try {
+            byte[] buffer = new byte[8 * 1024];
+            InputStream in = _r.getInputStream();
+            int count;
+            while( (count = in.read( buffer )) != -1 ) {
+                out.write( buffer, 0, count );
+            }
+            out.close();
+            OutputStream entryOut = editor.newOutputStream( CACHE_HTTP_ENTRY );
+            if( entry != null ) {
+                entry.writeTo( entryOut );
+            }
+            else {
+                // An empty entry is fresh forever.
+                entryOut.close();
+            }
+            editor.commit();
+        }
+        catch( IOException _e ) {
+            out.close();
+            editor.abort();
+            throw _e;
+        }
+        _r.release();
+
+        LLDiskCache.Snapshot snapshot = cache.get( key );
+        if( snapshot == null ) {
+            throw new IOException( ":( Response has been evicted from the disk cache: " + _r.getUrlStr() );
+        }
+        return new LLCacheResponse( _r.getUrlStr(), null, snapshot, CACHE_BODY, _r.getCookies() );
+    }
 }
@@ -16,20 +16,41 @@
 
 package de.cellular.lib.lightlib.backend;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.client.DefaultHttpClient;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.net.Uri;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.os.Message;
+import android.os.SystemClock;
 import de.cellular.lib.lightlib.backend.base.LLAbstractResponse;
 import de.cellular.lib.lightlib.backend.base.LLRequestResponsibleObject;
+import de.cellular.lib.lightlib.cache.LLBitmapPool;
+import de.cellular.lib.lightlib.cache.LLDiskCache;
+import de.cellular.lib.lightlib.cache.LLImageCache;
+import de.cellular.lib.lightlib.io.LLByteArrayPool;
+import de.cellular.lib.lightlib.io.LLPoolingByteArrayOutputStream;
 import de.cellular.lib.lightlib.log.LL;
-import de.cellular.lib.lightlib.utils.UIUtils;
 
 /**
+ * A subclass of {@link LLRequestFile} that decodes the response into a {@link Bitmap}.
+ * <p>
+ * A body from the {@link LLDiskCache} is decoded from its file. Without disk cache the stream is read once into a pooled buffer in memory and decoded from there, nothing is written to the
+ * file-system.
+ * <p>
+ * An image is decoded once at the width of the {@link RequestedSize}: a power-of-two subsampling picks the smallest decode that isn't narrower than the target, the remaining factor is applied by
+ * density scaling of {@link BitmapFactory} while decoding. The decoder reuses a bitmap of the {@link LLBitmapPool} when it's possible.
+ * 
  * @author Chris Xinyue Zhao <hasszhao@gmail.com>
  * 
  */
@@ -40,15 +61,45 @@ public class LLRequestImage extends LLRequestFile
 
     public static class RequestedSize
     {
+        /**
+         * Always decodes to {@link Bitmap.Config#ARGB_8888}, the default.
+         */
+        public static final int PIXEL_FORMAT_ARGB_8888    = 0;
+        /**
+         * Decodes an image without alpha, i.e a JPEG, to {@link Bitmap.Config#RGB_565}, it needs half of the memory.
+         */
+        public static final int PIXEL_FORMAT_AUTO         = 1;
+        /**
+         * Decodes to {@link Bitmap.Config#ARGB_8888} while {@link LLImageCache} has room, near its limit an image without alpha is decoded to {@link Bitmap.Config#RGB_565} and one with alpha to
+         * {@link Bitmap.Config#ARGB_4444}.
+         */
+        public static final int PIXEL_FORMAT_MEMORY_BUDGET = 2;
+
         public int reqWidth  = -1;
         public int reqHeight = -1;
+        /**
+         * {@link #PIXEL_FORMAT_ARGB_8888}, {@link #PIXEL_FORMAT_AUTO} or {@link #PIXEL_FORMAT_MEMORY_BUDGET}.
+         */
+        public int pixelFormat = PIXEL_FORMAT_ARGB_8888;
 
         public boolean isValid() {
             return reqHeight > 0 && reqWidth > 0;
         }
     }
 
-    private RequestedSize mReqSize;
+    /**
+     * Part of {@link LLImageCache} in percent, above it {@link RequestedSize#PIXEL_FORMAT_MEMORY_BUDGET} decodes to smaller formats.
+     */
+    private static final int         MEMORY_BUDGET_PERCENT = 75;
+
+    /**
+     * Limits the decodes that run at the same time, null if unlimited.
+     */
+    private static volatile Semaphore sDecodeGate;
+
+    private RequestedSize             mReqSize;
+    private long                      mStartTime;
+    private boolean                   mFromDiskCache;
 
     protected LLRequestImage( Context _context, LLRequestResponsibleObject _handler, Method _method,
             RequestedSize _reqSize ) {
@@ -56,11 +107,39 @@ public class LLRequestImage extends LLRequestFile
         mReqSize = _reqSize;
     }
 
+    LLRequestImage( Context _context, LLRequestResponsibleObject _handler, Method _method, RequestedSize _reqSize,
+            String _userAgent ) {
+        super( _context, _handler, _method, _userAgent );
+        mReqSize = _reqSize;
+    }
+
+    @Override
+    protected Exception doInBackground( Object... _params ) {
+        mStartTime = SystemClock.uptimeMillis();
+        return super.doInBackground( _params );
+    }
+
+    @Override
+    protected LLAbstractResponse onReadCache( String _urlStr, DefaultHttpClient _client ) throws IOException {
+        LLAbstractResponse cached = super.onReadCache( _urlStr, _client );
+        mFromDiskCache = cached != null;
+        return cached;
+    }
+
+    @Override
+    protected LLAbstractResponse onNotModified( String _urlStr, DefaultHttpClient _client, HttpResponse _response )
+            throws IOException {
+        LLAbstractResponse cached = super.onNotModified( _urlStr, _client, _response );
+        // The body is decoded from the disk cache, only the validation went to the network.
+        mFromDiskCache = cached != null;
+        return cached;
+    }
+
     @Override
     protected void onResponse( LLAbstractResponse _r ) {
         try {
             LLImageResponse ret = new LLImageResponse( _r );
-            readStreamToBitmap( ret );
+            readStreamToBitmap( _r, ret );
             LL.i( ":) Reading Bitmap successfully." );
 
             finishResponse( REQUEST_IMAGE_SUCCESSED, ret );
@@ -83,46 +162,239 @@ public class LLRequestImage extends LLRequestFile
         }
     }
 
-    private void readStreamToBitmap( LLImageResponse _r ) throws IOException {
+    private void readStreamToBitmap( LLAbstractResponse _source, LLImageResponse _r ) throws IOException {
         if( _r.getInputStream() != null ) {
             Bitmap retBp = null;
-            String fname = System.currentTimeMillis() + "_" + Uri.parse( _r.getUrlStr() ).getLastPathSegment();
-            File tmpFile = createOutputFile( _r, fname );
-            try {
-                final BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inJustDecodeBounds = true;
-                BitmapFactory.decodeFile( tmpFile.getAbsolutePath(), options );
-                options.inSampleSize = calculateInSampleSize( options, mReqSize );
-                options.inJustDecodeBounds = false;
-                retBp = BitmapFactory.decodeFile( tmpFile.getAbsolutePath(), options );
-                if( retBp != null ) {
-                    LL.i( ":) Decoded file with some options successfully." );
+            if( _source instanceof LLCacheResponse ) {
+                // The body is already on disk, decode the file that the cache has opened.
+                LLCacheResponse cached = (LLCacheResponse) _source;
+                long downloaded = SystemClock.uptimeMillis();
+                Semaphore gate = acquireDecode();
+                try {
+                    long decodeStart = SystemClock.uptimeMillis();
+                    retBp = decodeFile( cached.getFileInputStream() );
+                    setTimings( _r, downloaded, decodeStart, cached.getLength() );
                 }
-                else {
-                    throw new Exception();
+                catch( Exception _ee ) {
+                    LL.e( ":( Give up! The Bitmap can't be decoded definitly." );
+                    // Don't keep a broken body in the cache, but keep a newer one.
+                    removeFromDiskCache( cached );
+                }
+                finally {
+                    releaseDecode( gate );
+                }
+            }
+            else {
+                // Read the stream once into memory, the bounds and the pixels are decoded from the same buffer.
+                long length = (_source instanceof LLHttpClientBaseResponse) ? ((LLHttpClientBaseResponse) _source)
+                        .getContentLength() : -1;
+                LLPoolingByteArrayOutputStream bytes = new LLPoolingByteArrayOutputStream(
+                        LLByteArrayPool.getDefault(), (int) Math.min( length, Integer.MAX_VALUE ) );
+                try {
+                    // Only the decoding holds a permit, not the download.
+                    bytes.readFrom( _r.getInputStream() );
+                    long downloaded = SystemClock.uptimeMillis();
+                    Semaphore gate = acquireDecode();
+                    try {
+                        long decodeStart = SystemClock.uptimeMillis();
+                        retBp = decodeByteArray( bytes.getBuffer(), bytes.size() );
+                        setTimings( _r, downloaded, decodeStart, bytes.size() );
+                    }
+                    finally {
+                        releaseDecode( gate );
+                    }
+                }
+                catch( Exception _ee ) {
+                    LL.e( ":( Give up! The Bitmap can't be decoded definitly." );
+                }
+                finally {
+                    bytes.close();
                 }
             }
-            catch( Exception _ee ) {
-                LL.e( ":( Give up! The Bitmap can't be decoded definitly." );
+            if( retBp == null ) {
+                throw new IOException( ":( No Bitmap from " + _r.getUrlStr() );
             }
-            // Scale the image and cache it.
+            // The decoder has scaled it already, unless a subclass has changed the decoding.
             retBp = doScalingImage( retBp );
-            // LLImageCache.setSendungImage( _r.getUrlStr(), retBp );
+            LLImageCache.getInstance().put( LLImageCache.makeKey( _r.getUrlStr(), mReqSize ), retBp );
             _r.setBitmap( retBp );
-            if( tmpFile.delete() ) {
-                LL.i( "Del:" + fname );
-            }
-            else {
-                LL.e( "Can't Del:" + fname );
+        }
+    }
+
+    /**
+     * Records on the response where the image came from and how long it took, the time waiting for a decoding permit is not counted.
+     */
+    private void setTimings( LLImageResponse _r, long _downloaded, long _decodeStart, long _bytes ) {
+        _r.setSource( mFromDiskCache ? LLImageResponse.SOURCE_DISK : LLImageResponse.SOURCE_NETWORK );
+        _r.setTimings( mFromDiskCache ? 0 : _downloaded - mStartTime, SystemClock.uptimeMillis() - _decodeStart,
+                _bytes );
+    }
+
+    /**
+     * Limits the count of images that are decoded at the same time by all {@link LLRequestImage}s. Every decode allocates the pixels of a whole image, parallel decodes of large images can exhaust
+     * the heap.
+     * 
+     * @since 1.0
+     * @param _maxDecodes
+     *            the max count of concurrent decodes, unlimited if it's <= 0.
+     */
+    public static void setMaxConcurrentDecodes( int _maxDecodes ) {
+        sDecodeGate = _maxDecodes > 0 ? new Semaphore( _maxDecodes, true ) : null;
+    }
+
+    /**
+     * Waits until a decode is allowed.
+     * 
+     * @return the gate that must be given to {@link #releaseDecode(Semaphore)}, null if decodes are unlimited.
+     */
+    private static Semaphore acquireDecode() {
+        Semaphore gate = sDecodeGate;
+        if( gate != null ) {
+            gate.acquireUninterruptibly();
+        }
+        return gate;
+    }
+
+    private static void releaseDecode( Semaphore _gate ) {
+        if( _gate != null ) {
+            _gate.release();
+        }
+    }
+
+    /**
+     * Decodes an opened file with two passes, the bounds first, then the pixels at the target size. The file is rewound before each pass.
+     * 
+     * @param _in
+     *            the image file
+     * @return the decoded bitmap
+     * @throws IOException
+     *             the file can't be decoded.
+     */
+    private Bitmap decodeFile( FileInputStream _in ) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        _in.getChannel().position( 0 );
+        BitmapFactory.decodeFileDescriptor( _in.getFD(), null, options );
+        applyTargetSize( options, mReqSize );
+        applyPixelFormat( options, mReqSize );
+        LLBitmapPool pool = LLBitmapPool.getInstance();
+        Bitmap retBp;
+        try {
+            pool.setInBitmap( options );
+            _in.getChannel().position( 0 );
+            retBp = BitmapFactory.decodeFileDescriptor( _in.getFD(), null, options );
+        }
+        catch( IllegalArgumentException _e ) {
+            // The decoder has refused the pooled bitmap.
+            pool.clearInBitmap( options );
+            _in.getChannel().position( 0 );
+            retBp = BitmapFactory.decodeFileDescriptor( _in.getFD(), null, options );
+        }
+        if( retBp == null ) {
+            throw new IOException( ":( Can't decode the cached file." );
+        }
+        LL.i( ":) Decoded file with some options successfully." );
+        return finishDecode( retBp );
+    }
+
+    /**
+     * Decodes the bytes of an image with two passes, the bounds first, then the pixels at the target size.
+     * <p>
+     * The pixels are decoded from a stream on the buffer, because only the stream decoding applies the density scaling on all versions of Android.
+     * 
+     * @param _data
+     *            the buffer
+     * @param _length
+     *            the count of valid bytes in _data.
+     * @return the decoded bitmap
+     * @throws IOException
+     *             the data can't be decoded.
+     */
+    private Bitmap decodeByteArray( byte[] _data, int _length ) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray( _data, 0, _length, options );
+        applyTargetSize( options, mReqSize );
+        applyPixelFormat( options, mReqSize );
+        LLBitmapPool pool = LLBitmapPool.getInstance();
+        Bitmap retBp;
+        try {
+            pool.setInBitmap( options );
+            retBp = BitmapFactory.decodeStream( new ByteArrayInputStream( _data, 0, _length ), null, options );
+        }
+        catch( IllegalArgumentException _e ) {
+            // The decoder has refused the pooled bitmap.
+            pool.clearInBitmap( options );
+            retBp = BitmapFactory.decodeStream( new ByteArrayInputStream( _data, 0, _length ), null, options );
+        }
+        if( retBp == null ) {
+            throw new IOException( ":( Can't decode " + _length + " bytes." );
+        }
+        LL.i( ":) Decoded stream with some options successfully." );
+        return finishDecode( retBp );
+    }
+
+    /**
+     * Sets the {@link Bitmap.Config} of decoding after the bounds have been decoded. Whether an image has alpha is told by its mime type: only a JPEG is known to be opaque.
+     * 
+     * @param _options
+     *            the options with the bounds.
+     * @param _reqSize
+     *            the requested size with the pixel format.
+     */
+    private static void applyPixelFormat( BitmapFactory.Options _options, RequestedSize _reqSize ) {
+        boolean opaque = "image/jpeg".equalsIgnoreCase( _options.outMimeType );
+        switch( _reqSize.pixelFormat )
+        {
+            case RequestedSize.PIXEL_FORMAT_AUTO:
+                _options.inPreferredConfig = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+            break;
+            case RequestedSize.PIXEL_FORMAT_MEMORY_BUDGET:
+                LLImageCache cache = LLImageCache.getInstance();
+                if( (long) cache.getSize() * 100 < (long) cache.getMaxSize() * MEMORY_BUDGET_PERCENT ) {
+                    _options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                }
+                else {
+                    _options.inPreferredConfig = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_4444;
+                }
+            break;
+            default:
+                _options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            break;
+        }
+        // Less banding in 16 bits.
+        _options.inDither = _options.inPreferredConfig != Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Sets the options of decoding the pixels after the bounds have been decoded, so that the bitmap comes out at the width of _reqSize with the height in ratio.
+     * 
+     * @param _options
+     *            the options with the bounds.
+     * @param _reqSize
+     *            the requested size, the image is decoded at original size if it's not valid.
+     */
+    private static void applyTargetSize( BitmapFactory.Options _options, RequestedSize _reqSize ) {
+        _options.inJustDecodeBounds = false;
+        _options.inSampleSize = calculateInSampleSize( _options, _reqSize );
+        if( _reqSize.isValid() && _options.outWidth > 0 ) {
+            // The width after subsampling, the decoder rounds it up.
+            int sampledWidth = (_options.outWidth + _options.inSampleSize - 1) / _options.inSampleSize;
+            if( sampledWidth != _reqSize.reqWidth ) {
+                _options.inScaled = true;
+                _options.inDensity = sampledWidth;
+                _options.inTargetDensity = _reqSize.reqWidth;
             }
         }
     }
 
     /**
-     * Get new size of being produced bitmap
+     * Gets the largest power of two subsampling that keeps the image at least as large as the target on both axes. The target is the width of _reqSize and the height in ratio of the image.
      * 
      * @param _options
+     *            the options with the bounds.
      * @param _reqSize
+     *            the requested size.
      * @see http://developer.android.com/intl/zh-CN/training/displaying-bitmaps/load-bitmap.html#load-bitmap
      * @return inSampleSize
      */
@@ -130,18 +402,53 @@ public class LLRequestImage extends LLRequestFile
         int inSampleSize = 1;
         LL.d( "reqw=" + _reqSize.reqWidth + ",reqh=" + _reqSize.reqHeight + ",outw=" + _options.outWidth + ",outh="
                 + _options.outHeight );
-        if( _reqSize.isValid() && (_options.outHeight > _reqSize.reqHeight || _options.outWidth > _reqSize.reqWidth) ) {
-            if( _options.outWidth > _options.outHeight ) {
-                inSampleSize = Math.round( (float) _options.outHeight / (float) _reqSize.reqHeight );
-            }
-            else {
-                inSampleSize = Math.round( (float) _options.outWidth / (float) _reqSize.reqWidth );
+        if( _reqSize.isValid() && _options.outWidth > 0 && _options.outHeight > 0 ) {
+            long targetWidth = _reqSize.reqWidth;
+            long targetHeight = Math.max( 1, targetWidth * _options.outHeight / _options.outWidth );
+            while( _options.outWidth / (inSampleSize * 2) >= targetWidth
+                    && _options.outHeight / (inSampleSize * 2) >= targetHeight ) {
+                inSampleSize *= 2;
             }
         }
         LL.d( "inSampleSize=" + inSampleSize );
         return inSampleSize;
     }
 
+    /**
+     * The density of a bitmap has been set to the target density of decoding, it's reset to the density of screen so that a {@link android.graphics.Canvas} draws the bitmap pixel by pixel.
+     * 
+     * @param _bitmap
+     *            the decoded bitmap.
+     * @return the _bitmap
+     */
+    private Bitmap finishDecode( Bitmap _bitmap ) {
+        Resources res = mContext != null ? mContext.getResources() : Resources.getSystem();
+        _bitmap.setDensity( res.getDisplayMetrics().densityDpi );
+        return _bitmap;
+    }
+
+    /**
+     * Wrap "new" a {@link LLRequestImage} object
+     * <p>
+     * The {@link LLImageCache} is looked up first, when the image has been decoded with the same {@link RequestedSize} the {@link #REQUEST_IMAGE_SUCCESSED} is sent to the _handler immediately and no
+     * request will be fired.
+     * <p>
+     * Every call queues its own request in the {@link LLRequestDispatcher} of {@link LLRequestEngine#getDefault(Context)}, use {@link LLImageLoader} to share the request between callers that load the same image at the same time.
+     * 
+     * @param _context
+     *            the Context
+     * @param _handler
+     *            the {@link LLRequestResponsibleObject} object
+     * @param _method
+     *            the request {@link Method}
+     * @param _url
+     *            the target url in {@link String}
+     * @param _reqSize
+     *            the size of that will be requested.
+     * @param _someCookies
+     *            the cookies in {@link String}
+     * @return the created {@link LLRequestImage} object.
+     */
     public static LLRequestImage start(
             Context _context,
             LLRequestResponsibleObject _handler,
@@ -149,26 +456,66 @@ public class LLRequestImage extends LLRequestFile
             String _url,
             RequestedSize _reqSize,
             String _someCookies ) {
-        LLRequestImage r = new LLRequestImage( _context, _handler, _method, _reqSize );
-        r.execute( createHttpClient( false ), _url, _someCookies );
-        return r;
+        LLRequestSpec spec = new LLRequestSpec( _method, _url );
+        spec.setRequestedSize( _reqSize );
+        spec.setCookies( _someCookies );
+        return LLRequestEngine.getDefault( _context ).executeImage( spec, _handler );
     }
 
     /**
-     * Scale bitmap
+     * Sends {@link #REQUEST_IMAGE_SUCCESSED} to the _handler when the image can be found in {@link LLImageCache}.
+     * 
+     * @param _handler
+     *            the {@link LLRequestResponsibleObject} object
+     * @param _url
+     *            the target url in {@link String}
+     * @param _reqSize
+     *            the size of that will be requested.
+     * @return true if the image has been cached.
+     */
+    static boolean deliverFromCache( LLRequestResponsibleObject _handler, String _url, RequestedSize _reqSize ) {
+        Bitmap cached = LLImageCache.getInstance().get( LLImageCache.makeKey( _url, _reqSize ) );
+        if( cached == null ) {
+            return false;
+        }
+        LL.i( ":) Image from cache: " + _url );
+        if( _handler != null ) {
+            LLImageResponse ret = new LLImageResponse( new LLHttpClientBaseResponse( _url, null, null ) );
+            ret.setBitmap( cached );
+            ret.setSource( LLImageResponse.SOURCE_MEMORY );
+            Message.obtain( _handler, REQUEST_IMAGE_SUCCESSED, ret ).sendToTarget();
+        }
+        return true;
+    }
+
+    /**
+     * Scale bitmap to the requested width when the decoder has not done it, i.e a subclass has changed the decoding. The target is taken from the {@link LLBitmapPool} if possible, the source
+     * bitmap is given back to the pool.
      * 
      * @param _bitmap
-     *            Image has width > height.
-     * @return
+     *            the decoded image.
+     * @return the bitmap at the requested width.
      */
     protected Bitmap doScalingImage( Bitmap _bitmap ) {
-        if( _bitmap.getHeight() > _bitmap.getWidth() )
-            return UIUtils.scaleImageHW(
-                    _bitmap,
-                    mReqSize.reqWidth );
-        else
-            return UIUtils.scaleImageWH(
-                    _bitmap,
-                    mReqSize.reqWidth );
+        if( _bitmap == null || !mReqSize.isValid() || Math.abs( _bitmap.getWidth() - mReqSize.reqWidth ) <= 1 ) {
+            return _bitmap;
+        }
+        int height = Math.max( 1, Math.round( (float) _bitmap.getHeight() * mReqSize.reqWidth / _bitmap.getWidth() ) );
+        Bitmap.Config config = _bitmap.getConfig() != null ? _bitmap.getConfig() : Bitmap.Config.ARGB_8888;
+        LLBitmapPool pool = LLBitmapPool.getInstance();
+        Bitmap scaled = pool.get( mReqSize.reqWidth, height, config );
+        if( scaled != null ) {
+            scaled.eraseColor( 0 );
+            new Canvas( scaled ).drawBitmap( _bitmap, null, new Rect( 0, 0, mReqSize.reqWidth, height ), new Paint(
+                    Paint.FILTER_BITMAP_FLAG ) );
+            scaled.setDensity( _bitmap.getDensity() );
+        }
+        else {
+            scaled = Bitmap.createScaledBitmap( _bitmap, mReqSize.reqWidth, height, true );
+        }
+        if( scaled != _bitmap && !pool.put( _bitmap ) ) {
+            _bitmap.recycle();
+        }
+        return scaled;
     }
 }
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.backend;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.cellular.lib.lightlib.backend.LLRequest.Method;
+import de.cellular.lib.lightlib.backend.LLRequestImage.RequestedSize;
+
+/**
+ * Describes a request without running it: method, url, headers, cookies, body and the size of an image. It holds no {@link android.content.Context} and can be created on any thread, see
+ * {@link LLRequestEngine}.
+ *
+ * @version <strong>1.0.1</strong> <li>Add the priority for the {@link LLRequestDispatcher}.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLRequestSpec
+{
+    private final Method                        mMethod;
+    private final String                        mUrl;
+    private final LinkedHashMap<String, String> mHeaders = new LinkedHashMap<String, String>();
+    private String                              mCookies;
+    private String                              mBody;
+    private RequestedSize                       mReqSize;
+    private int                                 mPriority;
+
+    /**
+     * Instantiates a new {@link LLRequestSpec}.
+     *
+     * @since 1.0
+     * @param _method
+     *            the request {@link Method}.
+     * @param _url
+     *            the target url in {@link String}
+     */
+    public LLRequestSpec( Method _method, String _url ) {
+        if( _method == null || _url == null ) {
+            throw new IllegalArgumentException( "method or url is null" );
+        }
+        mMethod = _method;
+        mUrl = _url;
+    }
+
+    /**
+     * Instantiates a new GET {@link LLRequestSpec}.
+     *
+     * @since 1.0
+     * @param _url
+     *            the target url in {@link String}
+     */
+    public LLRequestSpec( String _url ) {
+        this( Method.GET, _url );
+    }
+
+    /**
+     * Set a header, it replaces the default one of {@link LLRequest#onAppendHeaders(org.apache.http.client.methods.HttpRequestBase)} with the same name.
+     *
+     * @since 1.0
+     * @param _name
+     *            the name
+     * @param _value
+     *            the value, null removes the header.
+     */
+    public void setHeader( String _name, String _value ) {
+        if( _value == null ) {
+            mHeaders.remove( _name );
+        }
+        else {
+            mHeaders.put( _name, _value );
+        }
+    }
+
+    /**
+     * Set the cookies.
+     *
+     * @since 1.0
+     * @param _cookies
+     *            the cookies in {@link String}, can be null.
+     */
+    public void setCookies( String _cookies ) {
+        mCookies = _cookies;
+    }
+
+    /**
+     * Set the body of a POST.
+     *
+     * @since 1.0
+     * @param _body
+     *            the body, can be null.
+     */
+    public void setBody( String _body ) {
+        mBody = _body;
+    }
+
+    /**
+     * Set the size of an image, see {@link LLRequestEngine#executeImage(LLRequestSpec, de.cellular.lib.lightlib.backend.base.LLRequestResponsibleObject)}.
+     *
+     * @since 1.0
+     * @param _reqSize
+     *            the size of that will be requested, can be null.
+     */
+    public void setRequestedSize( RequestedSize _reqSize ) {
+        mReqSize = _reqSize;
+    }
+
+    /**
+     * Set the priority, a higher one is started earlier when the {@link LLRequestDispatcher} of the engine uses {@link LLRequestDispatcher#ORDER_PRIORITY}.
+     *
+     * @since 1.0.1
+     * @param _priority
+     *            the priority, 0 at default.
+     */
+    public void setPriority( int _priority ) {
+        mPriority = _priority;
+    }
+
+    /**
+     * @since 1.0
+     * @return the request {@link Method}.
+     */
+    public Method getMethod() {
+        return mMethod;
+    }
+
+    /**
+     * @since 1.0
+     * @return the target url in {@link String}
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @since 1.0
+     * @return the headers in order of setting, it can't be changed.
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap( mHeaders );
+    }
+
+    /**
+     * @since 1.0
+     * @return the cookies, could be null.
+     */
+    public String getCookies() {
+        return mCookies;
+    }
+
+    /**
+     * @since 1.0
+     * @return the body of a POST, could be null.
+     */
+    public String getBody() {
+        return mBody;
+    }
+
+    /**
+     * @since 1.0
+     * @return the size of an image, a new {@link RequestedSize} if it hasn't been set.
+     */
+    public RequestedSize getRequestedSize() {
+        return mReqSize != null ? mReqSize : new RequestedSize();
+    }
+
+    /**
+     * @since 1.0.1
+     * @return the priority.
+     */
+    public int getPriority() {
+        return mPriority;
+    }
+
+    @Override
+    public String toString() {
+        return mMethod + " " + mUrl;
+    }
+}
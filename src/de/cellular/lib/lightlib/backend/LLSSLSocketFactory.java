@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.backend;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+
+import org.apache.http.conn.ssl.SSLSocketFactory;
+
+import de.cellular.lib.lightlib.log.LL;
+
+/**
+ * A {@link SSLSocketFactory} of HttpClient on one shared {@link SSLContext}, so that a connection to a host that has been connected before resumes the TLS session instead of a full handshake.
+ * <p>
+ * There is one factory per trust configuration: {@link #getDefault()} trusts the certificates of the platform, {@link EasySSLSocketFactory#getInstance()} trusts all. The client session cache keeps
+ * {@link #SESSION_CACHE_SIZE} sessions for {@link #SESSION_TIMEOUT} seconds.
+ * <p>
+ * The handshakes are counted, see {@link #getResumptionRate()}. A handshake is resumed when its session is older than the socket.
+ *
+ * @version <strong>1.0</strong>
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLSSLSocketFactory extends SSLSocketFactory
+{
+    /**
+     * The count of sessions that are kept for resuming.
+     */
+    public static final int           SESSION_CACHE_SIZE = 32;
+    /**
+     * The seconds that a session is kept for resuming.
+     */
+    public static final int           SESSION_TIMEOUT    = 60 * 60;
+
+    private static LLSSLSocketFactory sDefault;
+
+    private final SSLContext          mContext;
+    private final AtomicInteger       mHandshakes        = new AtomicInteger();
+    private final AtomicInteger       mResumed           = new AtomicInteger();
+
+    /**
+     * Instantiates a new {@link LLSSLSocketFactory}.
+     *
+     * @since 1.0
+     * @param _truststore
+     *            the truststore of HttpClient, it's only loaded.
+     * @param _context
+     *            the shared context, see {@link #createContext(TrustManager[])}.
+     * @throws NoSuchAlgorithmException
+     * @throws KeyManagementException
+     * @throws KeyStoreException
+     * @throws UnrecoverableKeyException
+     *             the truststore can't be used.
+     */
+    protected LLSSLSocketFactory( KeyStore _truststore, SSLContext _context ) throws NoSuchAlgorithmException,
+            KeyManagementException, KeyStoreException, UnrecoverableKeyException {
+        super( _truststore );
+        mContext = _context;
+    }
+
+    /**
+     * Gets the shared factory that trusts the certificates of the platform.
+     *
+     * @since 1.0
+     * @return the factory, or the default of HttpClient when the platform can't create a context.
+     */
+    public static synchronized SSLSocketFactory getDefault() {
+        if( sDefault == null ) {
+            try {
+                sDefault = new LLSSLSocketFactory( createTrustStore(), createContext( null ) );
+            }
+            catch( Exception _e ) {
+                LL.e( ":( Can't create the shared SSL context: " + _e.toString() );
+                return SSLSocketFactory.getSocketFactory();
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * Creates a context with a client session cache.
+     *
+     * @since 1.0
+     * @param _trustManagers
+     *            the trust managers, null for the ones of the platform.
+     * @return the context
+     * @throws GeneralSecurityException
+     *             TLS isn't available.
+     */
+    protected static SSLContext createContext( TrustManager[] _trustManagers ) throws GeneralSecurityException {
+        SSLContext context = SSLContext.getInstance( "TLS" );
+        context.init( null, _trustManagers, null );
+        SSLSessionContext sessions = context.getClientSessionContext();
+        if( sessions != null ) {
+            sessions.setSessionCacheSize( SESSION_CACHE_SIZE );
+            sessions.setSessionTimeout( SESSION_TIMEOUT );
+        }
+        return context;
+    }
+
+    /**
+     * @return an empty, loaded truststore for HttpClient.
+     */
+    static KeyStore createTrustStore() throws GeneralSecurityException, IOException {
+        KeyStore trustStore = KeyStore.getInstance( KeyStore.getDefaultType() );
+        trustStore.load( null, null );
+        return trustStore;
+    }
+
+    /**
+     * Layers TLS over a connected socket, i.e a tunnel through a proxy. The host name is verified like by {@link SSLSocketFactory}, the socket is closed when it doesn't match.
+     */
+    @Override
+    public Socket createSocket( Socket _socket, String _host, int _port, boolean _autoClose ) throws IOException,
+            UnknownHostException {
+        SSLSocket sslSocket = (SSLSocket) track( mContext.getSocketFactory().createSocket( _socket, _host, _port,
+                _autoClose ) );
+        try {
+            getHostnameVerifier().verify( _host, sslSocket );
+        }
+        catch( IOException _e ) {
+            try {
+                sslSocket.close();
+            }
+            catch( IOException _ce ) {
+            }
+            throw _e;
+        }
+        return sslSocket;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return track( mContext.getSocketFactory().createSocket() );
+    }
+
+    /**
+     * Counts the handshake of a socket when it completes.
+     */
+    private Socket track( Socket _socket ) {
+        if( _socket instanceof SSLSocket ) {
+            final long created = System.currentTimeMillis();
+            ((SSLSocket) _socket).addHandshakeCompletedListener( new HandshakeCompletedListener() {
+                @Override
+                public void handshakeCompleted( HandshakeCompletedEvent _event ) {
+                    mHandshakes.incrementAndGet();
+                    if( _event.getSession().getCreationTime() < created ) {
+                        mResumed.incrementAndGet();
+                    }
+                }
+            } );
+        }
+        return _socket;
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of completed handshakes.
+     */
+    public int getHandshakeCount() {
+        return mHandshakes.get();
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of handshakes that have resumed a session.
+     */
+    public int getResumedCount() {
+        return mResumed.get();
+    }
+
+    /**
+     * @since 1.0
+     * @return the part of handshakes that have resumed a session, 0 if there has been none.
+     */
+    public float getResumptionRate() {
+        int handshakes = mHandshakes.get();
+        return handshakes == 0 ? 0f : (float) mResumed.get() / handshakes;
+    }
+
+    /**
+     * Clears the counters of handshakes.
+     *
+     * @since 1.0
+     */
+    public void resetMetrics() {
+        mHandshakes.set( 0 );
+        mResumed.set( 0 );
+    }
+}
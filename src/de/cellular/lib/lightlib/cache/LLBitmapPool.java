@@ -0,0 +1,420 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.cache;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import de.cellular.lib.lightlib.log.LL;
+import de.cellular.lib.lightlib.utils.LLMemoryManager;
+
+/**
+ * A pool of {@link Bitmap}s that are not used anymore, so that their pixel memory can be reused instead of allocating new bitmaps.
+ * <p>
+ * The bitmaps are bucketed by width, height and {@link Bitmap.Config}, a bitmap is only given out for exactly the same size. The pool is bounded by the bytes of pixel memory, the least recently
+ * pooled bitmaps are recycled first.
+ * <p>
+ * The decoder reuses a bitmap through <code>BitmapFactory.Options.inBitmap</code>, see {@link #setInBitmap(BitmapFactory.Options)}. It's available since Honeycomb, it's set by reflection because the
+ * library is built against Gingerbread. Before KitKat the decoded image must not be subsampled or scaled.
+ * <p>
+ * A bitmap that is put into the pool must not be used anymore by anybody. A bitmap that is shared, i.e by the slots of galleries and the {@link LLImageCache}, is counted by its holders with
+ * {@link #acquire(Bitmap)} and {@link #release(Bitmap)} instead, it's pooled when the last holder has released it.
+ *
+ * @version 1.0.2 <li>Shared bitmaps are pooled when their last holder has released them, see {@link #acquire(Bitmap)}.</li>
+ * @version 1.0.1 <li>The instance of {@link #getInstance()} shrinks with the memory pressure of {@link LLMemoryManager}.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLBitmapPool implements LLMemoryManager.Trimmable
+{
+    /**
+     * Default part of the max heap that the pool can use, 1/16.
+     */
+    private static final int                              DEFAULT_HEAP_DIVIDER = 16;
+    private static final int                              HONEYCOMB            = 11;
+    private static final int                              KITKAT               = 19;
+
+    private static LLBitmapPool                           sInstance;
+    private static Field                                  sInBitmap;
+    private static Field                                  sInMutable;
+
+    static {
+        if( Build.VERSION.SDK_INT >= HONEYCOMB ) {
+            try {
+                sInBitmap = BitmapFactory.Options.class.getField( "inBitmap" );
+                sInMutable = BitmapFactory.Options.class.getField( "inMutable" );
+            }
+            catch( NoSuchFieldException _e ) {
+                LL.w( ":| No inBitmap, bitmaps won't be reused." );
+                sInBitmap = null;
+                sInMutable = null;
+            }
+        }
+    }
+
+    private final HashMap<String, LinkedList<Bitmap>>     mBuckets             = new HashMap<String, LinkedList<Bitmap>>();
+    /**
+     * All pooled bitmaps, the least recently pooled first.
+     */
+    private final LinkedList<Bitmap>                      mLru                 = new LinkedList<Bitmap>();
+    /**
+     * The holders of the bitmaps that are in use.
+     */
+    private final HashMap<Bitmap, Holders>                mHolders             = new HashMap<Bitmap, Holders>();
+    private int                                           mMaxSize;
+    private int                                           mSize;
+    private int                                           mHitCount;
+    private int                                           mMissCount;
+    private int                                           mPutCount;
+    private int                                           mEvictionCount;
+
+    /**
+     * Instantiates a new {@link LLBitmapPool}.
+     *
+     * @since 1.0
+     * @param _maxSize
+     *            the max bytes of pixel memory that the pool holds.
+     */
+    public LLBitmapPool( int _maxSize ) {
+        if( _maxSize <= 0 ) {
+            throw new IllegalArgumentException( "maxSize <= 0" );
+        }
+        mMaxSize = _maxSize;
+    }
+
+    /**
+     * Gets the process-wide {@link LLBitmapPool}. It uses 1/16 of the max heap at default.
+     *
+     * @since 1.0
+     * @return the pool
+     */
+    public static synchronized LLBitmapPool getInstance() {
+        if( sInstance == null ) {
+            sInstance = new LLBitmapPool( (int) (Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_DIVIDER) );
+            LLMemoryManager.getInstance().register( sInstance );
+        }
+        return sInstance;
+    }
+
+    private static String makeKey( int _width, int _height, Bitmap.Config _config ) {
+        return new StringBuilder().append( _width ).append( 'x' ).append( _height ).append( ':' ).append( _config )
+                .toString();
+    }
+
+    /**
+     * Gets a pooled bitmap. Its pixels are not cleared.
+     *
+     * @since 1.0
+     * @param _width
+     *            the width.
+     * @param _height
+     *            the height.
+     * @param _config
+     *            the config.
+     * @return a mutable bitmap or null if no bitmap with the size is pooled.
+     */
+    public synchronized Bitmap get( int _width, int _height, Bitmap.Config _config ) {
+        LinkedList<Bitmap> bucket = mBuckets.get( makeKey( _width, _height, _config ) );
+        Bitmap bmp = bucket != null ? bucket.poll() : null;
+        if( bmp != null ) {
+            mLru.remove( bmp );
+            mSize -= LLImageCache.sizeOf( bmp );
+            mHitCount++;
+        }
+        else {
+            mMissCount++;
+        }
+        return bmp;
+    }
+
+    /**
+     * Puts a bitmap that is not used anymore into the pool. An immutable or recycled bitmap is ignored, a bitmap that is larger than the whole pool is recycled.
+     *
+     * @since 1.0
+     * @param _bitmap
+     *            the bitmap.
+     * @return true if the bitmap has been pooled.
+     */
+    public synchronized boolean put( Bitmap _bitmap ) {
+        if( _bitmap == null || _bitmap.isRecycled() || !_bitmap.isMutable() || _bitmap.getConfig() == null ) {
+            return false;
+        }
+        int size = LLImageCache.sizeOf( _bitmap );
+        if( size > mMaxSize ) {
+            _bitmap.recycle();
+            return false;
+        }
+        if( mLru.contains( _bitmap ) ) {
+            return true;
+        }
+        String key = makeKey( _bitmap.getWidth(), _bitmap.getHeight(), _bitmap.getConfig() );
+        LinkedList<Bitmap> bucket = mBuckets.get( key );
+        if( bucket == null ) {
+            bucket = new LinkedList<Bitmap>();
+            mBuckets.put( key, bucket );
+        }
+        bucket.add( _bitmap );
+        mLru.add( _bitmap );
+        mSize += size;
+        mPutCount++;
+        trimToSize( mMaxSize );
+        return true;
+    }
+
+    /**
+     * A holder takes a bitmap that it shows, i.e a slot of a gallery. The bitmap is pooled when the last holder has released it with {@link #release(Bitmap)}, every holder must release it once for
+     * each time it has acquired it. A bitmap that has been pooled already is taken out of the pool again.
+     *
+     * @since 1.0.2
+     * @param _bitmap
+     *            the bitmap.
+     */
+    public synchronized void acquire( Bitmap _bitmap ) {
+        hold( _bitmap, true );
+    }
+
+    /**
+     * Counts a holder of a bitmap. A bitmap that has only been held by the {@link LLImageCache} isn't pooled, it can be used by anybody who has got it from the cache.
+     *
+     * @param _bitmap
+     *            the bitmap.
+     * @param _reusable
+     *            true if the bitmap can be pooled when the last holder has released it.
+     */
+    synchronized void hold( Bitmap _bitmap, boolean _reusable ) {
+        if( _bitmap == null || _bitmap.isRecycled() ) {
+            return;
+        }
+        if( mLru.remove( _bitmap ) ) {
+            // Released too early, i.e it was still on the way to a slot.
+            mBuckets.get( makeKey( _bitmap.getWidth(), _bitmap.getHeight(), _bitmap.getConfig() ) ).remove( _bitmap );
+            mSize -= LLImageCache.sizeOf( _bitmap );
+        }
+        Holders holders = mHolders.get( _bitmap );
+        if( holders == null ) {
+            holders = new Holders();
+            mHolders.put( _bitmap, holders );
+        }
+        holders.count++;
+        holders.reusable |= _reusable;
+    }
+
+    /**
+     * A holder doesn't use a bitmap anymore. The bitmap is pooled when no holder is left and a holder has acquired it with {@link #acquire(Bitmap)}.
+     *
+     * @since 1.0.2
+     * @param _bitmap
+     *            the bitmap.
+     */
+    public synchronized void release( Bitmap _bitmap ) {
+        Holders holders = _bitmap != null ? mHolders.get( _bitmap ) : null;
+        if( holders != null && --holders.count <= 0 ) {
+            mHolders.remove( _bitmap );
+            if( holders.reusable ) {
+                put( _bitmap );
+            }
+        }
+    }
+
+    /**
+     * Recycles the least recently pooled bitmaps until the bytes of all pooled bitmaps are not larger than _maxSize.
+     *
+     * @since 1.0
+     * @param _maxSize
+     *            the bytes that the pool should hold at most after trimming.
+     */
+    public synchronized void trimToSize( int _maxSize ) {
+        while( mSize > _maxSize && !mLru.isEmpty() ) {
+            Bitmap eldest = mLru.removeFirst();
+            LinkedList<Bitmap> bucket = mBuckets.get( makeKey( eldest.getWidth(), eldest.getHeight(),
+                    eldest.getConfig() ) );
+            if( bucket != null ) {
+                bucket.remove( eldest );
+            }
+            mSize -= LLImageCache.sizeOf( eldest );
+            eldest.recycle();
+            mEvictionCount++;
+        }
+    }
+
+    @Override
+    public synchronized void onTrimMemory( int _level ) {
+        // Nobody uses the pooled bitmaps, they go before the cache does.
+        trimToSize( (int) (mMaxSize * LLMemoryManager.getKeepRatio( _level ) / 2) );
+    }
+
+    /**
+     * Recycles all pooled bitmaps.
+     *
+     * @since 1.0
+     */
+    public synchronized void evictAll() {
+        trimToSize( -1 );
+        mBuckets.clear();
+    }
+
+    /**
+     * Sets the max bytes of pixel memory that the pool holds, the pool will be trimmed if it's necessary.
+     *
+     * @since 1.0
+     * @param _maxSize
+     *            the max bytes.
+     */
+    public synchronized void setMaxSize( int _maxSize ) {
+        if( _maxSize <= 0 ) {
+            throw new IllegalArgumentException( "maxSize <= 0" );
+        }
+        mMaxSize = _maxSize;
+        trimToSize( mMaxSize );
+    }
+
+    /**
+     * Lets the decoder reuse a pooled bitmap. It must be called after the bounds have been decoded and the options of decoding the pixels have been set.
+     *
+     * @since 1.0
+     * @param _options
+     *            the options of decoding.
+     * @return true if a pooled bitmap will be reused.
+     */
+    public boolean setInBitmap( BitmapFactory.Options _options ) {
+        if( sInBitmap == null || _options.outWidth <= 0 || _options.outHeight <= 0 ) {
+            return false;
+        }
+        int sample = Math.max( 1, _options.inSampleSize );
+        boolean scaled = _options.inScaled && _options.inDensity > 0 && _options.inTargetDensity > 0
+                && _options.inDensity != _options.inTargetDensity;
+        if( Build.VERSION.SDK_INT < KITKAT && (sample != 1 || scaled) ) {
+            // Before KitKat a reused bitmap must have the size of the original image.
+            return false;
+        }
+        int width = (_options.outWidth + sample - 1) / sample;
+        int height = (_options.outHeight + sample - 1) / sample;
+        if( scaled ) {
+            float scale = (float) _options.inTargetDensity / _options.inDensity;
+            width = (int) (width * scale + 0.5f);
+            height = (int) (height * scale + 0.5f);
+        }
+        Bitmap.Config config = _options.inPreferredConfig != null ? _options.inPreferredConfig
+                : Bitmap.Config.ARGB_8888;
+        try {
+            // A decoded bitmap must be mutable to be reused later.
+            sInMutable.setBoolean( _options, true );
+            Bitmap bmp = get( width, height, config );
+            if( bmp != null ) {
+                sInBitmap.set( _options, bmp );
+                return true;
+            }
+        }
+        catch( IllegalAccessException _e ) {
+            LL.e( ":( Can't set inBitmap: " + _e.toString() );
+        }
+        return false;
+    }
+
+    /**
+     * Removes the reused bitmap from options after the decoder has refused it. The bitmap is given back to the pool.
+     *
+     * @since 1.0
+     * @param _options
+     *            the options of decoding.
+     * @return true if a reused bitmap has been removed.
+     */
+    public boolean clearInBitmap( BitmapFactory.Options _options ) {
+        if( sInBitmap == null ) {
+            return false;
+        }
+        try {
+            Bitmap bmp = (Bitmap) sInBitmap.get( _options );
+            if( bmp != null ) {
+                sInBitmap.set( _options, null );
+                put( bmp );
+                return true;
+            }
+        }
+        catch( IllegalAccessException _e ) {
+            LL.e( ":( Can't clear inBitmap: " + _e.toString() );
+        }
+        return false;
+    }
+
+    /**
+     * @since 1.0
+     * @return the max bytes of pixel memory that the pool holds.
+     */
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @since 1.0
+     * @return the bytes of pixel memory of all pooled bitmaps.
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of bitmaps that have been reused.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of requests that found no bitmap.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of bitmaps that have been pooled.
+     */
+    public synchronized int getPutCount() {
+        return mPutCount;
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of bitmaps that have been recycled to keep the pool in its bounds.
+     */
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * The count of holders of a bitmap.
+     */
+    private static class Holders {
+        int     count;
+        boolean reusable;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LLBitmapPool[size=" + mSize + ",maxSize=" + mMaxSize + ",hits=" + mHitCount + ",misses=" + mMissCount
+                + ",puts=" + mPutCount + ",evictions=" + mEvictionCount + "]";
+    }
+}
@@ -0,0 +1,957 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import de.cellular.lib.lightlib.log.LL;
+
+/**
+ * A journaled cache on file-system with a byte budget and LRU eviction.
+ * <p>
+ * Each entry has a string key and a fixed number of values, every value is stored in a file. The journal records all operations on entries so that the cache survives restarts of the process.
+ * <p>
+ * <strong>Journal</strong>
+ * <li>DIRTY key: an entry is being created or updated, it must be followed by CLEAN or REMOVE.</li>
+ * <li>CLEAN key lengths: an entry has been committed, the lengths of values are appended.</li>
+ * <li>REMOVE key: an entry has been removed.</li>
+ * <li>READ key: an entry has been read, it's used to restore the LRU order.</li>
+ * <p>
+ * An edit writes values into temporary files, they're renamed on {@link Editor#commit()}. A DIRTY entry without following CLEAN or REMOVE, i.e the process has been killed while writing, will be
+ * removed on {@link #open(File, int, int, long)}.
+ * <p>
+ * A {@link Snapshot} opens the files of its values on {@link #get(String)}, so that it reads the same values even if the entry is committed again or evicted later. It must be closed.
+ *
+ * @see https://github.com/JakeWharton/DiskLruCache for the original idea.
+ * @version 1.0.2 <li>A {@link Snapshot} holds open streams instead of files, see {@link #remove(Snapshot)}.</li>
+ * @version 1.0.1 <li>An entry of the default cache has two values: the body and its HTTP caching headers. The cache of an older version is cleared on opening.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public final class LLDiskCache implements Closeable
+{
+    static final String               JOURNAL_FILE          = "journal";
+    static final String               JOURNAL_FILE_TMP      = "journal.tmp";
+    static final String               MAGIC                 = "de.cellular.lib.lightlib.LLDiskCache";
+    static final String               VERSION               = "1";
+
+    private static final String       CLEAN                 = "CLEAN";
+    private static final String       DIRTY                 = "DIRTY";
+    private static final String       REMOVE                = "REMOVE";
+    private static final String       READ                  = "READ";
+
+    private static final int          REDUNDANT_OP_COMPACT  = 2000;
+    private static final int          IO_BUFFER_SIZE        = 8 * 1024;
+
+    /**
+     * Default byte budget of the cache from {@link #getDefault(Context)}, 20 MB.
+     */
+    public static final long          DEFAULT_MAX_SIZE      = 20 * 1024 * 1024;
+    private static final String       DEFAULT_DIR           = "ll_disk_cache";
+    private static final int          DEFAULT_APP_VERSION   = 1;
+    // The body and its HTTP caching headers, see LLRequestFile.
+    private static final int          DEFAULT_VALUE_COUNT   = 2;
+
+    private static LLDiskCache        sDefault;
+    private static boolean            sDefaultEnabled       = true;
+    private static long               sDefaultMaxSize       = DEFAULT_MAX_SIZE;
+
+    private final File                mDirectory;
+    private final File                mJournalFile;
+    private final File                mJournalFileTmp;
+    private final int                 mAppVersion;
+    private final int                 mValueCount;
+    private long                      mMaxSize;
+    private long                      mSize;
+    private Writer                    mJournalWriter;
+    private int                       mRedundantOpCount;
+    // Entries read from the journal have 0.
+    private long                      mNextSequenceNumber   = 1;
+    private final LinkedHashMap<String, Entry> mEntries     = new LinkedHashMap<String, Entry>( 0, 0.75f, true );
+
+    /**
+     * Prevent from creating a cache directly, see {@link #open(File, int, int, long)}.
+     */
+    private LLDiskCache( File _directory, int _appVersion, int _valueCount, long _maxSize ) {
+        mDirectory = _directory;
+        mAppVersion = _appVersion;
+        mJournalFile = new File( _directory, JOURNAL_FILE );
+        mJournalFileTmp = new File( _directory, JOURNAL_FILE_TMP );
+        mValueCount = _valueCount;
+        mMaxSize = _maxSize;
+    }
+
+    /**
+     * Opens the cache in _directory, creates a new one if the cache doesn't exist, or the journal is broken, or the _appVersion or _valueCount has been changed.
+     *
+     * @since 1.0
+     * @param _directory
+     *            a writable directory only for this cache.
+     * @param _appVersion
+     *            the version of stored data, a cache with other version will be cleared.
+     * @param _valueCount
+     *            the number of values per entry.
+     * @param _maxSize
+     *            the max bytes that the cache stores.
+     * @return the opened {@link LLDiskCache}
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public static LLDiskCache open( File _directory, int _appVersion, int _valueCount, long _maxSize )
+            throws IOException {
+        if( _maxSize <= 0 ) {
+            throw new IllegalArgumentException( "maxSize <= 0" );
+        }
+        if( _valueCount <= 0 ) {
+            throw new IllegalArgumentException( "valueCount <= 0" );
+        }
+
+        LLDiskCache cache = new LLDiskCache( _directory, _appVersion, _valueCount, _maxSize );
+        if( cache.mJournalFile.exists() ) {
+            try {
+                cache.readJournal();
+                cache.processJournal();
+                cache.mJournalWriter = new BufferedWriter( new FileWriter( cache.mJournalFile, true ), IO_BUFFER_SIZE );
+                return cache;
+            }
+            catch( IOException _e ) {
+                LL.w( ":| Journal of " + _directory + " is broken, the cache will be cleared: " + _e.toString() );
+                cache.delete();
+            }
+        }
+
+        if( !_directory.exists() && !_directory.mkdirs() ) {
+            throw new IOException( ":( Can't create directory of cache: " + _directory );
+        }
+        cache = new LLDiskCache( _directory, _appVersion, _valueCount, _maxSize );
+        cache.rebuildJournal();
+        return cache;
+    }
+
+    /**
+     * Gets the default cache of the library that is shared by the requests of files and images. It's stored in the cache directory of the application.
+     *
+     * @since 1.0
+     * @param _context
+     *            the Context
+     * @return the cache or null if it has been disabled with {@link #setDefaultEnabled(boolean)} or can't be opened.
+     */
+    public static synchronized LLDiskCache getDefault( Context _context ) {
+        if( !sDefaultEnabled ) {
+            return null;
+        }
+        if( sDefault == null || sDefault.isClosed() ) {
+            try {
+                sDefault = open( new File( _context.getCacheDir(), DEFAULT_DIR ), DEFAULT_APP_VERSION,
+                        DEFAULT_VALUE_COUNT, sDefaultMaxSize );
+            }
+            catch( IOException _e ) {
+                LL.e( ":( Can't open the default disk cache: " + _e.toString() );
+                sDefault = null;
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * Enables or disables the default cache, see {@link #getDefault(Context)}. It's enabled at default.
+     *
+     * @since 1.0
+     * @param _enabled
+     *            true if the default cache should be used.
+     */
+    public static synchronized void setDefaultEnabled( boolean _enabled ) {
+        sDefaultEnabled = _enabled;
+    }
+
+    /**
+     * Sets the byte budget of the default cache, see {@link #getDefault(Context)}. The default is {@link #DEFAULT_MAX_SIZE}.
+     *
+     * @since 1.0
+     * @param _maxSize
+     *            the max bytes.
+     */
+    public static synchronized void setDefaultMaxSize( long _maxSize ) {
+        sDefaultMaxSize = _maxSize;
+        if( sDefault != null ) {
+            sDefault.setMaxSize( _maxSize );
+        }
+    }
+
+    /**
+     * Creates a valid key for a url.
+     *
+     * @since 1.0
+     * @param _urlStr
+     *            the url in {@link String}
+     * @return the MD5 of _urlStr in hex.
+     */
+    public static String hashKey( String _urlStr ) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance( "MD5" );
+            byte[] bytes = digest.digest( _urlStr.getBytes( "UTF-8" ) );
+            StringBuilder sb = new StringBuilder( bytes.length * 2 );
+            for( byte b : bytes ) {
+                String hex = Integer.toHexString( 0xFF & b );
+                if( hex.length() == 1 ) {
+                    sb.append( '0' );
+                }
+                sb.append( hex );
+            }
+            return sb.toString();
+        }
+        catch( NoSuchAlgorithmException _e ) {
+            return String.valueOf( _urlStr.hashCode() );
+        }
+        catch( IOException _e ) {
+            return String.valueOf( _urlStr.hashCode() );
+        }
+    }
+
+    // -------------------------------------------------------
+    // Journal
+    // -------------------------------------------------------
+
+    private void readJournal() throws IOException {
+        BufferedReader reader = new BufferedReader( new FileReader( mJournalFile ), IO_BUFFER_SIZE );
+        try {
+            String magic = reader.readLine();
+            String version = reader.readLine();
+            String appVersion = reader.readLine();
+            String valueCount = reader.readLine();
+            String blank = reader.readLine();
+            if( !MAGIC.equals( magic ) || !VERSION.equals( version )
+                    || !Integer.toString( mAppVersion ).equals( appVersion )
+                    || !Integer.toString( mValueCount ).equals( valueCount ) || !"".equals( blank ) ) {
+                throw new IOException( "unexpected journal header: [" + magic + ", " + version + ", " + appVersion
+                        + ", " + valueCount + ", " + blank + "]" );
+            }
+
+            int lineCount = 0;
+            String line;
+            while( (line = reader.readLine()) != null ) {
+                readJournalLine( line );
+                lineCount++;
+            }
+            mRedundantOpCount = lineCount - mEntries.size();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private void readJournalLine( String _line ) throws IOException {
+        String[] parts = _line.split( " " );
+        if( parts.length < 2 ) {
+            throw new IOException( "unexpected journal line: " + _line );
+        }
+
+        String key = parts[1];
+        if( parts[0].equals( REMOVE ) && parts.length == 2 ) {
+            mEntries.remove( key );
+            return;
+        }
+
+        Entry entry = mEntries.get( key );
+        if( entry == null ) {
+            entry = new Entry( key );
+            mEntries.put( key, entry );
+        }
+
+        if( parts[0].equals( CLEAN ) && parts.length == 2 + mValueCount ) {
+            entry.readable = true;
+            entry.currentEditor = null;
+            try {
+                for( int i = 0; i < mValueCount; i++ ) {
+                    entry.lengths[i] = Long.parseLong( parts[2 + i] );
+                }
+            }
+            catch( NumberFormatException _e ) {
+                throw new IOException( "unexpected journal line: " + _line );
+            }
+        }
+        else if( parts[0].equals( DIRTY ) && parts.length == 2 ) {
+            entry.currentEditor = new Editor( entry );
+        }
+        else if( parts[0].equals( READ ) && parts.length == 2 ) {
+            // The access has been recorded by the get() above.
+        }
+        else {
+            throw new IOException( "unexpected journal line: " + _line );
+        }
+    }
+
+    /**
+     * Computes the size of the cache and removes the entries that have been left dirty.
+     */
+    private void processJournal() throws IOException {
+        deleteIfExists( mJournalFileTmp );
+        for( Iterator<Entry> it = mEntries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if( entry.currentEditor == null ) {
+                for( int i = 0; i < mValueCount; i++ ) {
+                    mSize += entry.lengths[i];
+                }
+            }
+            else {
+                entry.currentEditor = null;
+                for( int i = 0; i < mValueCount; i++ ) {
+                    deleteIfExists( entry.getCleanFile( i ) );
+                    deleteIfExists( entry.getDirtyFile( i ) );
+                }
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes a compact journal that replaces the current one.
+     */
+    private synchronized void rebuildJournal() throws IOException {
+        if( mJournalWriter != null ) {
+            mJournalWriter.close();
+        }
+
+        Writer writer = new BufferedWriter( new FileWriter( mJournalFileTmp ), IO_BUFFER_SIZE );
+        try {
+            writer.write( MAGIC );
+            writer.write( "\n" );
+            writer.write( VERSION );
+            writer.write( "\n" );
+            writer.write( Integer.toString( mAppVersion ) );
+            writer.write( "\n" );
+            writer.write( Integer.toString( mValueCount ) );
+            writer.write( "\n" );
+            writer.write( "\n" );
+
+            for( Entry entry : mEntries.values() ) {
+                if( entry.currentEditor != null ) {
+                    writer.write( DIRTY + ' ' + entry.key + '\n' );
+                }
+                else {
+                    writer.write( CLEAN + ' ' + entry.key + entry.getLengths() + '\n' );
+                }
+            }
+        }
+        finally {
+            writer.close();
+        }
+
+        if( !mJournalFileTmp.renameTo( mJournalFile ) ) {
+            throw new IOException( ":( Can't rename journal of " + mDirectory );
+        }
+        mJournalWriter = new BufferedWriter( new FileWriter( mJournalFile, true ), IO_BUFFER_SIZE );
+        mRedundantOpCount = 0;
+    }
+
+    private boolean journalRebuildRequired() {
+        return mRedundantOpCount >= REDUNDANT_OP_COMPACT && mRedundantOpCount >= mEntries.size();
+    }
+
+    private void compactJournalIfRequired() throws IOException {
+        if( journalRebuildRequired() ) {
+            rebuildJournal();
+        }
+    }
+
+    private static void closeQuietly( Closeable _closeable ) {
+        try {
+            _closeable.close();
+        }
+        catch( IOException _e ) {
+            LL.w( ":| Can't close: " + _e.toString() );
+        }
+    }
+
+    private static void deleteIfExists( File _file ) throws IOException {
+        if( _file.exists() && !_file.delete() ) {
+            throw new IOException( ":( Can't delete " + _file );
+        }
+    }
+
+    private static void deleteContents( File _dir ) throws IOException {
+        File[] files = _dir.listFiles();
+        if( files == null ) {
+            return;
+        }
+        for( File file : files ) {
+            if( file.isDirectory() ) {
+                deleteContents( file );
+            }
+            if( !file.delete() ) {
+                throw new IOException( ":( Can't delete " + file );
+            }
+        }
+    }
+
+    // -------------------------------------------------------
+    // Operations on entries
+    // -------------------------------------------------------
+
+    /**
+     * Gets a snapshot of the entry named _key.
+     *
+     * @since 1.0
+     * @param _key
+     *            the key, see {@link #hashKey(String)}.
+     * @return the {@link Snapshot} or null if the entry doesn't exist or isn't readable.
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public synchronized Snapshot get( String _key ) throws IOException {
+        checkNotClosed();
+        validateKey( _key );
+        Entry entry = mEntries.get( _key );
+        if( entry == null || !entry.readable ) {
+            return null;
+        }
+
+        // Open all values now, a later commit or eviction doesn't change what the snapshot reads.
+        FileInputStream[] ins = new FileInputStream[mValueCount];
+        try {
+            for( int i = 0; i < mValueCount; i++ ) {
+                ins[i] = new FileInputStream( entry.getCleanFile( i ) );
+            }
+        }
+        catch( FileNotFoundException _e ) {
+            // The file has been removed by someone else, the entry is broken.
+            for( int i = 0; i < mValueCount && ins[i] != null; i++ ) {
+                closeQuietly( ins[i] );
+            }
+            LL.w( ":| Lost file of cache entry: " + _key );
+            remove( _key );
+            return null;
+        }
+
+        mRedundantOpCount++;
+        mJournalWriter.append( READ + ' ' + _key + '\n' );
+        mJournalWriter.flush();
+        compactJournalIfRequired();
+        return new Snapshot( _key, entry.sequenceNumber, ins, entry.lengths.clone() );
+    }
+
+    /**
+     * Gets an {@link Editor} for the entry named _key.
+     *
+     * @since 1.0
+     * @param _key
+     *            the key, see {@link #hashKey(String)}.
+     * @return the editor or null if another edit on the entry is in progress.
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public synchronized Editor edit( String _key ) throws IOException {
+        checkNotClosed();
+        validateKey( _key );
+        Entry entry = mEntries.get( _key );
+        if( entry == null ) {
+            entry = new Entry( _key );
+            mEntries.put( _key, entry );
+        }
+        else if( entry.currentEditor != null ) {
+            return null;
+        }
+
+        Editor editor = new Editor( entry );
+        entry.currentEditor = editor;
+
+        // Flush the journal before creating files to prevent file leaks.
+        mJournalWriter.write( DIRTY + ' ' + _key + '\n' );
+        mJournalWriter.flush();
+        return editor;
+    }
+
+    private synchronized void completeEdit( Editor _editor, boolean _success ) throws IOException {
+        Entry entry = _editor.entry;
+        if( entry.currentEditor != _editor ) {
+            throw new IllegalStateException();
+        }
+
+        // A new entry must create every value.
+        if( _success && !entry.readable ) {
+            for( int i = 0; i < mValueCount; i++ ) {
+                if( !entry.getDirtyFile( i ).exists() ) {
+                    _editor.abort();
+                    throw new IllegalStateException( "edit didn't create file " + i );
+                }
+            }
+        }
+
+        for( int i = 0; i < mValueCount; i++ ) {
+            File dirty = entry.getDirtyFile( i );
+            if( _success ) {
+                if( dirty.exists() ) {
+                    File clean = entry.getCleanFile( i );
+                    deleteIfExists( clean );
+                    if( !dirty.renameTo( clean ) ) {
+                        throw new IOException( ":( Can't commit " + clean );
+                    }
+                    long oldLength = entry.lengths[i];
+                    long newLength = clean.length();
+                    entry.lengths[i] = newLength;
+                    mSize = mSize - oldLength + newLength;
+                }
+            }
+            else {
+                deleteIfExists( dirty );
+            }
+        }
+
+        mRedundantOpCount++;
+        entry.currentEditor = null;
+        if( _success ) {
+            entry.sequenceNumber = mNextSequenceNumber++;
+        }
+        if( entry.readable | _success ) {
+            entry.readable = true;
+            mJournalWriter.write( CLEAN + ' ' + entry.key + entry.getLengths() + '\n' );
+        }
+        else {
+            mEntries.remove( entry.key );
+            mJournalWriter.write( REMOVE + ' ' + entry.key + '\n' );
+        }
+        mJournalWriter.flush();
+
+        trimToSize( mMaxSize );
+        compactJournalIfRequired();
+    }
+
+    /**
+     * Removes the entry named _key.
+     *
+     * @since 1.0
+     * @param _key
+     *            the key, see {@link #hashKey(String)}.
+     * @return true if an entry has been removed.
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public synchronized boolean remove( String _key ) throws IOException {
+        checkNotClosed();
+        validateKey( _key );
+        Entry entry = mEntries.get( _key );
+        if( entry == null || entry.currentEditor != null ) {
+            return false;
+        }
+
+        for( int i = 0; i < mValueCount; i++ ) {
+            deleteIfExists( entry.getCleanFile( i ) );
+            mSize -= entry.lengths[i];
+            entry.lengths[i] = 0;
+        }
+
+        mRedundantOpCount++;
+        mJournalWriter.append( REMOVE + ' ' + _key + '\n' );
+        mEntries.remove( _key );
+        compactJournalIfRequired();
+        return true;
+    }
+
+    /**
+     * Removes the entry of a {@link Snapshot} only if it hasn't been committed again since the snapshot was taken, i.e a value that can't be read shouldn't remove a newer one.
+     *
+     * @since 1.0.2
+     * @param _snapshot
+     *            the snapshot from {@link #get(String)}.
+     * @return true if the entry has been removed.
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public synchronized boolean remove( Snapshot _snapshot ) throws IOException {
+        checkNotClosed();
+        Entry entry = mEntries.get( _snapshot.getKey() );
+        if( entry == null || entry.sequenceNumber != _snapshot.mSequenceNumber ) {
+            return false;
+        }
+        return remove( _snapshot.getKey() );
+    }
+
+    /**
+     * Removes the least recently used entries until the cache stores not more than _maxSize bytes.
+     *
+     * @since 1.0
+     * @param _maxSize
+     *            the bytes that the cache should store at most after trimming.
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public synchronized void trimToSize( long _maxSize ) throws IOException {
+        if( mSize <= _maxSize ) {
+            return;
+        }
+        List<String> toEvict = new ArrayList<String>();
+        long size = mSize;
+        for( Map.Entry<String, Entry> eldest : mEntries.entrySet() ) {
+            if( size <= _maxSize ) {
+                break;
+            }
+            Entry entry = eldest.getValue();
+            if( entry.currentEditor == null && entry.readable ) {
+                toEvict.add( eldest.getKey() );
+                for( long length : entry.lengths ) {
+                    size -= length;
+                }
+            }
+        }
+        for( String key : toEvict ) {
+            remove( key );
+        }
+        mJournalWriter.flush();
+    }
+
+    /**
+     * Sets the byte budget of the cache, the cache will be trimmed if it's necessary.
+     *
+     * @since 1.0
+     * @param _maxSize
+     *            the max bytes.
+     */
+    public synchronized void setMaxSize( long _maxSize ) {
+        mMaxSize = _maxSize;
+        if( !isClosed() ) {
+            try {
+                trimToSize( mMaxSize );
+            }
+            catch( IOException _e ) {
+                LL.e( ":( Can't trim disk cache: " + _e.toString() );
+            }
+        }
+    }
+
+    /**
+     * @since 1.0
+     * @return the byte budget of the cache.
+     */
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @since 1.0
+     * @return the bytes of all values that are stored.
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * @since 1.0
+     * @return the directory of the cache.
+     */
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * Writes the journal to file-system.
+     *
+     * @since 1.0
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public synchronized void flush() throws IOException {
+        checkNotClosed();
+        trimToSize( mMaxSize );
+        mJournalWriter.flush();
+    }
+
+    /**
+     * @since 1.0
+     * @return true if the cache has been closed.
+     */
+    public synchronized boolean isClosed() {
+        return mJournalWriter == null;
+    }
+
+    /**
+     * Closes the cache, all edits in progress will be aborted. Stored values are kept.
+     *
+     * @since 1.0
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if( mJournalWriter == null ) {
+            return;
+        }
+        for( Entry entry : new ArrayList<Entry>( mEntries.values() ) ) {
+            if( entry.currentEditor != null ) {
+                entry.currentEditor.abort();
+            }
+        }
+        trimToSize( mMaxSize );
+        mJournalWriter.close();
+        mJournalWriter = null;
+    }
+
+    /**
+     * Closes the cache and deletes all stored values.
+     *
+     * @since 1.0
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public void delete() throws IOException {
+        close();
+        deleteContents( mDirectory );
+    }
+
+    private void checkNotClosed() {
+        if( mJournalWriter == null ) {
+            throw new IllegalStateException( "cache is closed" );
+        }
+    }
+
+    private static void validateKey( String _key ) {
+        if( _key == null || _key.length() == 0 || _key.length() > 120 || _key.indexOf( ' ' ) >= 0
+                || _key.indexOf( '\n' ) >= 0 || _key.indexOf( '\r' ) >= 0 || _key.indexOf( '/' ) >= 0 ) {
+            throw new IllegalArgumentException( "invalid key: \"" + _key + "\"" );
+        }
+    }
+
+    // -------------------------------------------------------
+    // Entries, Snapshots and Editors
+    // -------------------------------------------------------
+
+    /**
+     * A snapshot of the values of an entry. The values are opened when the snapshot is taken, it must be closed with {@link #close()}.
+     *
+     * @since 1.0
+     */
+    public static final class Snapshot implements Closeable
+    {
+        private final String            mKey;
+        private final long              mSequenceNumber;
+        private final FileInputStream[] mIns;
+        private final long[]            mLengths;
+
+        private Snapshot( String _key, long _sequenceNumber, FileInputStream[] _ins, long[] _lengths ) {
+            mKey = _key;
+            mSequenceNumber = _sequenceNumber;
+            mIns = _ins;
+            mLengths = _lengths;
+        }
+
+        /**
+         * @since 1.0
+         * @return the key of the entry.
+         */
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * Gets the opened value. A {@link FileInputStream} can be rewound through its channel or decoded by its descriptor.
+         *
+         * @since 1.0
+         * @param _index
+         *            the index of the value.
+         * @return the stream, it's closed with the snapshot.
+         */
+        public FileInputStream getInputStream( int _index ) {
+            return mIns[_index];
+        }
+
+        /**
+         * @since 1.0
+         * @param _index
+         *            the index of the value.
+         * @return the length of the value in bytes.
+         */
+        public long getLength( int _index ) {
+            return mLengths[_index];
+        }
+
+        /**
+         * Closes all values.
+         *
+         * @since 1.0.2
+         */
+        @Override
+        public void close() {
+            for( FileInputStream in : mIns ) {
+                closeQuietly( in );
+            }
+        }
+    }
+
+    /**
+     * Edits the values of an entry. Each {@link Editor} must be completed with {@link #commit()} or {@link #abort()}.
+     *
+     * @since 1.0
+     */
+    public final class Editor
+    {
+        private final Entry entry;
+        private boolean     hasErrors;
+
+        private Editor( Entry _entry ) {
+            entry = _entry;
+        }
+
+        /**
+         * Creates a stream that writes the value, the value is visible after {@link #commit()}.
+         *
+         * @since 1.0
+         * @param _index
+         *            the index of the value.
+         * @return the stream that must be closed by the caller.
+         * @throws IOException
+         *             Signals that an I/O exception has occurred.
+         */
+        public OutputStream newOutputStream( int _index ) throws IOException {
+            synchronized( LLDiskCache.this ) {
+                if( entry.currentEditor != this ) {
+                    throw new IllegalStateException();
+                }
+                return new FaultHidingOutputStream( new FileOutputStream( entry.getDirtyFile( _index ) ) );
+            }
+        }
+
+        /**
+         * Commits the values so that they're visible for readers.
+         *
+         * @since 1.0
+         * @throws IOException
+         *             Signals that an I/O exception has occurred.
+         */
+        public void commit() throws IOException {
+            if( hasErrors ) {
+                completeEdit( this, false );
+                remove( entry.key );
+            }
+            else {
+                completeEdit( this, true );
+            }
+        }
+
+        /**
+         * Aborts the edit, the previous values of the entry are kept.
+         *
+         * @since 1.0
+         * @throws IOException
+         *             Signals that an I/O exception has occurred.
+         */
+        public void abort() throws IOException {
+            completeEdit( this, false );
+        }
+
+        private class FaultHidingOutputStream extends OutputStream
+        {
+            private final OutputStream mOut;
+
+            private FaultHidingOutputStream( OutputStream _out ) {
+                mOut = _out;
+            }
+
+            @Override
+            public void write( int _oneByte ) {
+                try {
+                    mOut.write( _oneByte );
+                }
+                catch( IOException _e ) {
+                    hasErrors = true;
+                }
+            }
+
+            @Override
+            public void write( byte[] _buffer, int _offset, int _length ) {
+                try {
+                    mOut.write( _buffer, _offset, _length );
+                }
+                catch( IOException _e ) {
+                    hasErrors = true;
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    mOut.close();
+                }
+                catch( IOException _e ) {
+                    hasErrors = true;
+                }
+            }
+
+            @Override
+            public void flush() {
+                try {
+                    mOut.flush();
+                }
+                catch( IOException _e ) {
+                    hasErrors = true;
+                }
+            }
+        }
+    }
+
+    private final class Entry
+    {
+        private final String key;
+        private final long[] lengths;
+        private boolean      readable;
+        private Editor       currentEditor;
+        /**
+         * Changes on every commit, see {@link LLDiskCache#remove(Snapshot)}.
+         */
+        private long         sequenceNumber;
+
+        private Entry( String _key ) {
+            key = _key;
+            lengths = new long[mValueCount];
+        }
+
+        private String getLengths() {
+            StringBuilder result = new StringBuilder();
+            for( long size : lengths ) {
+                result.append( ' ' ).append( size );
+            }
+            return result.toString();
+        }
+
+        private File getCleanFile( int _i ) {
+            return new File( mDirectory, key + "." + _i );
+        }
+
+        private File getDirtyFile( int _i ) {
+            return new File( mDirectory, key + "." + _i + ".tmp" );
+        }
+    }
+}
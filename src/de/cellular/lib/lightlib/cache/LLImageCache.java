@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import de.cellular.lib.lightlib.backend.LLRequestImage;
+import de.cellular.lib.lightlib.backend.LLRequestImage.RequestedSize;
+import de.cellular.lib.lightlib.log.LL;
+import de.cellular.lib.lightlib.utils.LLMemoryManager;
+
+/**
+ * A process-wide LRU cache for decoded {@link Bitmap}s.
+ * <p>
+ * The cache is bounded by the bytes of pixel memory that the bitmaps occupy, not by the count of entries. An entry is keyed by the url of the image and the {@link RequestedSize} with which it has
+ * been decoded, see {@link #makeKey(String, RequestedSize)}.
+ * <p>
+ * The {@link LLRequestImage} looks up the cache before it starts a request and fills the cache after decoding.
+ * <p>
+ * A cached bitmap is held in the {@link LLBitmapPool}, so that a bitmap that a gallery has released isn't reused while it's still cached, see {@link LLBitmapPool#acquire(Bitmap)}.
+ *
+ * @version 1.0.3 <li>The cached bitmaps are held in the {@link LLBitmapPool}.</li>
+ * @version 1.0.2 <li>The pixel format of a {@link RequestedSize} is a part of the key unless it's the default.</li>
+ * @version 1.0.1 <li>The instance of {@link #getInstance()} shrinks with the memory pressure of {@link LLMemoryManager}.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLImageCache implements LLMemoryManager.Trimmable
+{
+    /**
+     * Default part of the max heap that the cache can use, 1/8.
+     */
+    private static final int                    DEFAULT_HEAP_DIVIDER = 8;
+
+    private static LLImageCache                 sInstance;
+
+    private final LinkedHashMap<String, Bitmap> mMap                 = new LinkedHashMap<String, Bitmap>( 0, 0.75f,
+                                                                             true );
+    private int                                 mMaxSize;
+    private int                                 mSize;
+    private int                                 mHitCount;
+    private int                                 mMissCount;
+    private int                                 mEvictionCount;
+
+    /**
+     * Instantiates a new {@link LLImageCache}.
+     *
+     * @since 1.0
+     * @param _maxSize
+     *            the max bytes of pixel memory that the cache holds.
+     */
+    public LLImageCache( int _maxSize ) {
+        if( _maxSize <= 0 ) {
+            throw new IllegalArgumentException( "maxSize <= 0" );
+        }
+        mMaxSize = _maxSize;
+    }
+
+    /**
+     * Gets the process-wide {@link LLImageCache}. It uses 1/8 of the max heap at default.
+     *
+     * @since 1.0
+     * @return the cache
+     */
+    public static synchronized LLImageCache getInstance() {
+        if( sInstance == null ) {
+            sInstance = new LLImageCache( (int) (Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_DIVIDER) );
+            LLMemoryManager.getInstance().register( sInstance );
+        }
+        return sInstance;
+    }
+
+    /**
+     * Creates the key of an entry.
+     *
+     * @since 1.0
+     * @param _urlStr
+     *            the url of the image in {@link String}
+     * @param _reqSize
+     *            the {@link RequestedSize} with which the image is decoded, can be null.
+     * @return the key
+     */
+    public static String makeKey( String _urlStr, RequestedSize _reqSize ) {
+        StringBuilder key = new StringBuilder( _urlStr );
+        key.append( '@' );
+        if( _reqSize != null ) {
+            key.append( _reqSize.reqWidth ).append( 'x' ).append( _reqSize.reqHeight );
+            if( _reqSize.pixelFormat != RequestedSize.PIXEL_FORMAT_ARGB_8888 ) {
+                key.append( ':' ).append( _reqSize.pixelFormat );
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets bytes of pixel memory of a {@link Bitmap}.
+     *
+     * @since 1.0
+     * @param _bitmap
+     *            the bitmap
+     * @return the bytes
+     */
+    public static int sizeOf( Bitmap _bitmap ) {
+        return _bitmap.getRowBytes() * _bitmap.getHeight();
+    }
+
+    /**
+     * Gets the cached {@link Bitmap}.
+     *
+     * @since 1.0
+     * @param _key
+     *            the key from {@link #makeKey(String, RequestedSize)}
+     * @return the bitmap or null if it has not been cached.
+     */
+    public synchronized Bitmap get( String _key ) {
+        Bitmap bmp = mMap.get( _key );
+        if( bmp != null && bmp.isRecycled() ) {
+            remove( _key );
+            bmp = null;
+        }
+        if( bmp != null ) {
+            mHitCount++;
+        }
+        else {
+            mMissCount++;
+        }
+        return bmp;
+    }
+
+    /**
+     * Caches a {@link Bitmap}. A bitmap that is larger than the whole cache won't be cached.
+     *
+     * @since 1.0
+     * @param _key
+     *            the key from {@link #makeKey(String, RequestedSize)}
+     * @param _bitmap
+     *            the bitmap
+     */
+    public synchronized void put( String _key, Bitmap _bitmap ) {
+        if( _key == null || _bitmap == null || _bitmap.isRecycled() ) {
+            return;
+        }
+        int size = sizeOf( _bitmap );
+        if( size > mMaxSize ) {
+            LL.w( ":| Bitmap is too large to be cached: " + _key );
+            return;
+        }
+        Bitmap previous = mMap.put( _key, _bitmap );
+        mSize += size;
+        LLBitmapPool.getInstance().hold( _bitmap, false );
+        if( previous != null ) {
+            mSize -= sizeOf( previous );
+            LLBitmapPool.getInstance().release( previous );
+        }
+        trimToSize( mMaxSize );
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @since 1.0
+     * @param _key
+     *            the key from {@link #makeKey(String, RequestedSize)}
+     * @return the removed bitmap or null.
+     */
+    public synchronized Bitmap remove( String _key ) {
+        Bitmap previous = mMap.remove( _key );
+        if( previous != null ) {
+            mSize -= sizeOf( previous );
+            LLBitmapPool.getInstance().release( previous );
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the eldest entries until the bytes of all entries are not larger than _maxSize.
+     *
+     * @since 1.0
+     * @param _maxSize
+     *            the bytes that the cache should hold at most after trimming.
+     */
+    public synchronized void trimToSize( int _maxSize ) {
+        Iterator<Map.Entry<String, Bitmap>> it = mMap.entrySet().iterator();
+        while( mSize > _maxSize && it.hasNext() ) {
+            Map.Entry<String, Bitmap> eldest = it.next();
+            mSize -= sizeOf( eldest.getValue() );
+            it.remove();
+            mEvictionCount++;
+            LLBitmapPool.getInstance().release( eldest.getValue() );
+        }
+    }
+
+    @Override
+    public synchronized void onTrimMemory( int _level ) {
+        // The bitmaps that are shown are still held by the galleries, they're only not cached anymore.
+        trimToSize( (int) (mMaxSize * LLMemoryManager.getKeepRatio( _level )) );
+    }
+
+    /**
+     * Removes all entries.
+     *
+     * @since 1.0
+     */
+    public synchronized void evictAll() {
+        trimToSize( -1 );
+    }
+
+    /**
+     * Sets the max bytes of pixel memory that the cache holds, the cache will be trimmed if it's necessary.
+     *
+     * @since 1.0
+     * @param _maxSize
+     *            the max bytes.
+     */
+    public synchronized void setMaxSize( int _maxSize ) {
+        if( _maxSize <= 0 ) {
+            throw new IllegalArgumentException( "maxSize <= 0" );
+        }
+        mMaxSize = _maxSize;
+        trimToSize( mMaxSize );
+    }
+
+    /**
+     * @since 1.0
+     * @return the max bytes of pixel memory that the cache holds.
+     */
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @since 1.0
+     * @return the bytes of pixel memory of all cached bitmaps.
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of successful look-ups.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of failed look-ups.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @since 1.0
+     * @return the count of entries that have been evicted.
+     */
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LLImageCache[size=" + mSize + ",maxSize=" + mMaxSize + ",hits=" + mHitCount + ",misses="
+                + mMissCount + ",evictions=" + mEvictionCount + "]";
+    }
+}
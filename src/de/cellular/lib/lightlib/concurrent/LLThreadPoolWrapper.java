@@ -16,6 +16,7 @@
 
 package de.cellular.lib.lightlib.concurrent;
 
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -25,16 +26,19 @@ import java.util.concurrent.TimeUnit;
 
 import android.content.ComponentCallbacks;
 import android.content.res.Configuration;
+import de.cellular.lib.lightlib.utils.LLMemoryManager;
 
 /**
  * Factory and adapter of {@link LLThreadPool}
+ * <p>
+ * A created pool is registered at {@link LLMemoryManager}, its idle threads are allowed to die when the UI is hidden or memory runs low. Nothing blocks the calling thread.
  * 
- * 
+ * @version 1.0.1 <li>{@link #onLowMemory()} doesn't shut the pool down and wait anymore, it lets idle threads die.</li>
  * @author Chris Xinyue Zhao <hasszhao@gmail.com>
  * 
  * 
  */
-public class LLThreadPoolWrapper implements ComponentCallbacks
+public class LLThreadPoolWrapper implements ComponentCallbacks, LLMemoryManager.Trimmable
 {
     /**
      * Loading thread pool
@@ -70,6 +74,7 @@ public class LLThreadPoolWrapper implements ComponentCallbacks
                 120, TimeUnit.SECONDS,
                 new LinkedBlockingQueue<Runnable>( _queueSize ), _rejectedHandler
                 );
+        LLMemoryManager.getInstance().register( wrapper );
         return wrapper;
     }
 
@@ -92,6 +97,33 @@ public class LLThreadPoolWrapper implements ComponentCallbacks
                 120, TimeUnit.SECONDS,
                 new LinkedBlockingQueue<Runnable>(), _rejectedHandler
                 );
+        LLMemoryManager.getInstance().register( wrapper );
+        return wrapper;
+    }
+
+    /**
+     * Creates a new ThreadPoolExecutor with the given initial parameters and an own queue, i.e a {@link java.util.concurrent.PriorityBlockingQueue} to run urgent tasks first. _corePoolSize <=
+     * _maximumPoolSize
+     * 
+     * @param _corePoolSize
+     *            the max number of threads to keep executing and running in the pool, even if they are idle.
+     * @param _maximumPoolSize
+     *            the maximum number of threads to allow in the pool, reduce the reusing of threads.
+     * @param _queue
+     *            the queue that holding tasks. The tasks must be given with {@link #execute(Runnable)}, because {@link #submit(Callable)} wraps them.
+     * @param _rejectedHandler
+     *            callback when the task can never be executed because of the full of queue
+     * @return
+     */
+    public static LLThreadPoolWrapper newPausableThreadPool( int _corePoolSize, int _maximumPoolSize,
+            BlockingQueue<Runnable> _queue, RejectedExecutionHandler _rejectedHandler )
+    {
+        LLThreadPoolWrapper wrapper = new LLThreadPoolWrapper();
+        wrapper.mPool = new LLThreadPool( _corePoolSize, _maximumPoolSize,
+                120, TimeUnit.SECONDS,
+                _queue, _rejectedHandler
+                );
+        LLMemoryManager.getInstance().register( wrapper );
         return wrapper;
     }
 
@@ -167,14 +199,26 @@ public class LLThreadPoolWrapper implements ComponentCallbacks
     @Override
     public void onLowMemory()
     {
-        shutdownAndAwaitTermination( getPool() );
+        onTrimMemory( LLMemoryManager.TRIM_MEMORY_COMPLETE );
+    }
+
+    @Override
+    public void onTrimMemory( int _level )
+    {
+        if( _level >= LLMemoryManager.TRIM_MEMORY_RUNNING_LOW )
+        {
+            // Idle threads and their stacks go after the keep-alive time, queued tasks still run.
+            getPool().allowCoreThreadTimeOut( true );
+            getPool().purge();
+        }
     }
 
     @Override
     protected void finalize() throws Throwable
     {
         super.finalize();
-        shutdownAndAwaitTermination( getPool() );
+        // The finalizer thread must not wait for the tasks.
+        getPool().shutdown();
     }
 
     /**
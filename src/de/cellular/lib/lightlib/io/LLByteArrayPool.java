@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+import de.cellular.lib.lightlib.utils.LLMemoryManager;
+
+/**
+ * A pool of byte-arrays that can be reused for reading responses, so that the heap won't be churned by large temporary buffers.
+ * <p>
+ * A buffer from {@link #getBuf(int)} is at least as large as requested. It should be given back with {@link #returnBuf(byte[])}. The pool holds not more than the size limit in bytes, the buffers that
+ * haven't been used for the longest time are dropped first.
+ * 
+ * @see https://android.googlesource.com/platform/frameworks/volley for the original idea.
+ * @version 1.0.1 <li>The pool of {@link #getDefault()} shrinks with the memory pressure of {@link LLMemoryManager}.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ * 
+ */
+public class LLByteArrayPool implements LLMemoryManager.Trimmable
+{
+    /**
+     * Size limit of the pool from {@link #getDefault()}, 512 KB.
+     */
+    public static final int                DEFAULT_SIZE_LIMIT = 512 * 1024;
+
+    private static LLByteArrayPool         sDefault;
+
+    private final List<byte[]>             mBuffersByLastUse  = new LinkedList<byte[]>();
+    private final List<byte[]>             mBuffersBySize     = new ArrayList<byte[]>( 64 );
+    private int                            mCurrentSize;
+    private final int                      mSizeLimit;
+
+    protected static final Comparator<byte[]> BUF_COMPARATOR = new Comparator<byte[]>() {
+        @Override
+        public int compare( byte[] _lhs, byte[] _rhs ) {
+            return _lhs.length - _rhs.length;
+        }
+    };
+
+    /**
+     * Instantiates a new {@link LLByteArrayPool}.
+     * 
+     * @since 1.0
+     * @param _sizeLimit
+     *            the max bytes of the buffers that are held by the pool.
+     */
+    public LLByteArrayPool( int _sizeLimit ) {
+        mSizeLimit = _sizeLimit;
+    }
+
+    /**
+     * Gets the pool that is shared by the library.
+     * 
+     * @since 1.0
+     * @return the pool
+     */
+    public static synchronized LLByteArrayPool getDefault() {
+        if( sDefault == null ) {
+            sDefault = new LLByteArrayPool( DEFAULT_SIZE_LIMIT );
+            LLMemoryManager.getInstance().register( sDefault );
+        }
+        return sDefault;
+    }
+
+    /**
+     * Gets a buffer from the pool, a new one will be allocated if no buffer is large enough.
+     * 
+     * @since 1.0
+     * @param _len
+     *            the min size of the buffer.
+     * @return the buffer
+     */
+    public synchronized byte[] getBuf( int _len ) {
+        for( int i = 0; i < mBuffersBySize.size(); i++ ) {
+            byte[] buf = mBuffersBySize.get( i );
+            if( buf.length >= _len ) {
+                mCurrentSize -= buf.length;
+                mBuffersBySize.remove( i );
+                mBuffersByLastUse.remove( buf );
+                return buf;
+            }
+        }
+        return new byte[_len];
+    }
+
+    /**
+     * Gives a buffer back to the pool.
+     * 
+     * @since 1.0
+     * @param _buf
+     *            the buffer, it must not be used anymore by the caller.
+     */
+    public synchronized void returnBuf( byte[] _buf ) {
+        if( _buf == null || _buf.length > mSizeLimit ) {
+            return;
+        }
+        mBuffersByLastUse.add( _buf );
+        int pos = Collections.binarySearch( mBuffersBySize, _buf, BUF_COMPARATOR );
+        if( pos < 0 ) {
+            pos = -pos - 1;
+        }
+        mBuffersBySize.add( pos, _buf );
+        mCurrentSize += _buf.length;
+        trim( mSizeLimit );
+    }
+
+    @Override
+    public synchronized void onTrimMemory( int _level ) {
+        trim( (int) (mSizeLimit * LLMemoryManager.getKeepRatio( _level )) );
+    }
+
+    /**
+     * Drops the buffers that haven't been used for the longest time until the pool holds not more than _sizeLimit bytes.
+     * 
+     * @since 1.0
+     * @param _sizeLimit
+     *            the max bytes after trimming.
+     */
+    public synchronized void trim( int _sizeLimit ) {
+        while( mCurrentSize > _sizeLimit && !mBuffersByLastUse.isEmpty() ) {
+            byte[] buf = mBuffersByLastUse.remove( 0 );
+            mBuffersBySize.remove( buf );
+            mCurrentSize -= buf.length;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cellular.lib.lightlib.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link ByteArrayOutputStream} whose buffers come from a {@link LLByteArrayPool}. The buffer can be read directly with {@link #getBuffer()} and {@link #size()} without copying.
+ * <p>
+ * The stream must be closed to give its buffer back to the pool.
+ * 
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ * 
+ */
+public class LLPoolingByteArrayOutputStream extends ByteArrayOutputStream
+{
+    private static final int      DEFAULT_SIZE = 32 * 1024;
+    private final LLByteArrayPool mPool;
+
+    /**
+     * Instantiates a new {@link LLPoolingByteArrayOutputStream}.
+     * 
+     * @since 1.0
+     * @param _pool
+     *            the pool of buffers.
+     * @param _size
+     *            the initial size of buffer, a default size is used if _size <= 0.
+     */
+    public LLPoolingByteArrayOutputStream( LLByteArrayPool _pool, int _size ) {
+        mPool = _pool;
+        buf = mPool.getBuf( Math.max( _size, DEFAULT_SIZE ) );
+    }
+
+    /**
+     * Reads the whole _in into the stream. The _in won't be closed.
+     * 
+     * @since 1.0
+     * @param _in
+     *            the source
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public void readFrom( InputStream _in ) throws IOException {
+        int read;
+        do {
+            expand( 1 );
+            read = _in.read( buf, count, buf.length - count );
+            if( read > 0 ) {
+                count += read;
+            }
+        }
+        while( read != -1 );
+    }
+
+    /**
+     * Gets the internal buffer, only the first {@link #size()} bytes are valid.
+     * 
+     * @since 1.0
+     * @return the buffer
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mPool.returnBuf( buf );
+        buf = null;
+        super.close();
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        if( buf != null ) {
+            mPool.returnBuf( buf );
+        }
+        super.finalize();
+    }
+
+    /**
+     * Ensures there is enough space in the buffer for the given number of additional bytes.
+     */
+    private void expand( int _i ) {
+        if( count + _i <= buf.length ) {
+            return;
+        }
+        byte[] newbuf = mPool.getBuf( (count + _i) * 2 );
+        System.arraycopy( buf, 0, newbuf, 0, count );
+        mPool.returnBuf( buf );
+        buf = newbuf;
+    }
+
+    @Override
+    public synchronized void write( byte[] _buffer, int _offset, int _len ) {
+        expand( _len );
+        super.write( _buffer, _offset, _len );
+    }
+
+    @Override
+    public synchronized void write( int _oneByte ) {
+        expand( 1 );
+        super.write( _oneByte );
+    }
+}
@@ -15,34 +15,46 @@
  */
 package de.cellular.lib.lightlib.ui.view.gallery;
 
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 
 import android.content.ComponentCallbacks;
+import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Message;
 import android.text.TextUtils;
+import android.util.SparseArray;
 import android.view.View;
+import de.cellular.lib.lightlib.backend.LLImageLoader;
 import de.cellular.lib.lightlib.backend.LLImageResponse;
 import de.cellular.lib.lightlib.backend.LLRequest;
 import de.cellular.lib.lightlib.backend.LLRequestException;
+import de.cellular.lib.lightlib.backend.LLRequestFile;
 import de.cellular.lib.lightlib.backend.LLRequestImage;
 import de.cellular.lib.lightlib.backend.LLRequestImage.RequestedSize;
 import de.cellular.lib.lightlib.backend.base.LLRequestResponsibleObject;
+import de.cellular.lib.lightlib.backend.base.LLRequestResponsibleSimpleObject;
+import de.cellular.lib.lightlib.cache.LLBitmapPool;
+import de.cellular.lib.lightlib.cache.LLDiskCache;
+import de.cellular.lib.lightlib.cache.LLImageCache;
+import de.cellular.lib.lightlib.log.LL;
 import de.cellular.lib.lightlib.ui.view.gallery.LLGallery.CommentPosition;
 import de.cellular.lib.lightlib.ui.view.gallery.LLGallery.OnItemClickListener;
 import de.cellular.lib.lightlib.ui.view.gallery.LLGallery.OnItemScrollListener;
 import de.cellular.lib.lightlib.ui.view.gallery.LLGallery.OnItemScrolledListener;
 import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGallery;
+import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGalleryAdapter;
+import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGalleryTileSource;
 
 /**
  * Decorator for {@link LLGallery} that user can pass an array of URLs and the Gallery shows all items asynchronized.
@@ -50,17 +62,38 @@ import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGallery;
  * @see {@link http://en.wikipedia.org/wiki/Decorator_pattern}
  *      <p>
  *      To know more about the Decorator pattern from GOF.
+ * <p>
+ * The loader keeps its state when the gallery is recreated i.e by rotation: {@link #detach()} the old gallery and keep the {@link LLAsyncGallery} outside of the {@link android.app.Activity}, i.e
+ * with <code>onRetainNonConfigurationInstance()</code>, then {@link #attach(LLGallery)} the new gallery. The running requests go on, the items around the current one are held while no gallery is
+ * attached, the new gallery shows the same items at the same position without requesting them again. The methods of {@link ILLGallery} need an attached gallery.
+ * 
+ * @version <strong>1.0.15 </strong> <li>In progressive mode a full item that has been cancelled far away is requested again when it comes near.</li>
+ * @version <strong>1.0.14 </strong> <li>Released items are given to the {@link LLBitmapPool} again: the slots, the pinned items and the {@link LLImageCache} are counted as holders of a bitmap, it's
+ *          pooled when the last one has released it.</li>
+ * @version <strong>1.0.13 </strong> <li>The disk cache isn't read on the UI thread: a thumbnail from the disk cache is looked up by the {@link LLImageLoader}.</li>
+ * @version <strong>1.0.12 </strong> <li>Released items aren't given to the {@link LLBitmapPool} anymore, the same bitmap can still be shown by another slot or gallery.</li>
+ * @version <strong>1.0.11 </strong> <li>Progressive loading: a thumbnail is shown first and replaced by the full item, see {@link #setProgressive(boolean)} and {@link #setThumbnailUrlTemplate(String)}.</li>
+ * @version <strong>1.0.10 </strong> <li>Survives a configuration change, see {@link #attach(LLGallery)} and {@link #detach()}. {@link #onConfigurationChanged(Configuration)} doesn't abort requests
+ *          anymore.</li>
+ * @version <strong>1.0.9 </strong> <li>Loaded images, cache hits and the first drawn item are recorded by a {@link LLGalleryMetrics}, see {@link #setMetrics(LLGalleryMetrics)}.</li>
+ * @version <strong>1.0.8 </strong> <li>A zoomed item is drawn from its original file in the {@link LLDiskCache}.</li>
+ * @version <strong>1.0.7 </strong> <li>Items that leave the gallery are given to the {@link LLBitmapPool} when the {@link LLImageCache} doesn't hold them anymore.</li>
+ * @version <strong>1.0.6 </strong> <li>The gallery gets all slots up front from an {@link ILLGalleryAdapter}, a loaded image updates its own slot instead of being appended, so that items and comments keep
+ *          the order of the urls.</li>
+ * @version <strong>1.0.5 </strong> <li>The current item is loaded first, then the next items in the direction of moving, see {@link #setPrefetchCount(int)}.</li>
+ * @version <strong>1.0.4 </strong> <li>Images are loaded by the {@link LLImageLoader} with limited concurrency instead of one {@link LLRequestImage} task for each url, the same url is only
+ *          downloaded once.</li>
  * @version <strong>1.0.3 </strong> <li>Removed unused functions after changing {@link LLGallery} to 1.0.5</li>
  * @version <strong>1.0.2</strong> <li>Fixed bug that the comment can't be shown with correct index and be shown lazily.</li>
  *   
  * @version <strong>1.0.1</strong> <li>Added comments.</li>
  *          <p>
  *          Because a comment of a bitmap must be shown later(All bitmaps are loaded async in {@link #load(RequestedSize)}).
- *          Here I introduce {@link CommentHelper} to store comments that are loaded later
+ *          Here I introduce CommentHelper to store comments that are loaded later
  *          <br>
  *          and change {@link Queue} to {@link List} that stored {@link Uri}s, so that the {@link LLAsyncGallery} can get a correct comment for a loaded bitmap with an index.
  *          <p>
- * @see {@link #appendBitmapFromMessage(Message), knows that how a comment links to the correct bitmap.
+ * @see appendBitmapFromMessage(Message) knows that how a comment links to the correct bitmap.
  *      <p>
  *      <strong>1.0</strong>
  *      <li>just a beginning</li>
@@ -69,17 +102,74 @@ import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGallery;
  */
 public class LLAsyncGallery extends LLRequestResponsibleObject implements ComponentCallbacks, ILLGallery
 {
-    private volatile LLGallery     mGallery;
-    private List<Uri>              mUris             = new LinkedList<Uri>();
-    private Map<String, LLRequest> mConsumedRequests = new HashMap<String, LLRequest>();
+    /**
+     * Default count of items in the direction of moving that are loaded right after the current one.
+     */
+    public static final int                   DEFAULT_PREFETCH_COUNT = 3;
 
-    static class CommentHelper {
-        public int             commentViewId;
-        public CommentPosition commentPosition;
-        public List<String>    comments = new ArrayList<String>();
-    }
+    private volatile LLGallery                mGallery;
+    private List<Uri>                         mUris             = new ArrayList<Uri>();
+    /**
+     * Positions of each url, a url can be shown in more than one slot.
+     */
+    private Map<String, List<Integer>>        mPositions        = new HashMap<String, List<Integer>>();
+    private Map<String, LLImageLoader.Ticket> mConsumedRequests = new HashMap<String, LLImageLoader.Ticket>();
+    private int                               mPrefetchCount    = DEFAULT_PREFETCH_COUNT;
+    /**
+     * Count of items beside the current one that are held while no gallery is attached.
+     */
+    private static final int                  PIN_RANGE              = 1;
+    /**
+     * A thumbnail is decoded at the requested size divided by it.
+     */
+    private static final int                  THUMBNAIL_DIVIDER      = 4;
+    /**
+     * Thumbnails are loaded before all full items.
+     */
+    private static final int                  THUMBNAIL_PRIORITY     = 1 << 16;
+    /**
+     * Count of items beside the current one that are loaded at full resolution in progressive mode.
+     */
+    private static final int                  FULL_RANGE             = 1;
 
-    private final static CommentHelper sCommentHelper = new CommentHelper();
+    private boolean                           mProgressive;
+    private String                            mThumbnailUrlTemplate;
+    private RequestedSize                     mThumbnailSize;
+    /**
+     * Thumbnail requests by the url of their full items.
+     */
+    private Map<String, LLImageLoader.Ticket> mThumbnailRequests     = new HashMap<String, LLImageLoader.Ticket>();
+    /**
+     * Urls of thumbnails by the urls of their full items and the other way round.
+     */
+    private Map<String, String>               mThumbnailUrls         = new HashMap<String, String>();
+    private Map<String, String>               mFullUrls              = new HashMap<String, String>();
+    private final ThumbnailHandler            mThumbnailHandler      = new ThumbnailHandler();
+
+    private RequestedSize                     mReqSize;
+    private UriAdapter                        mAdapter;
+    private Context                           mContext;
+    private LLGalleryMetrics                  mMetrics;
+    /**
+     * The position and direction of the last attached gallery.
+     */
+    private int                               mPosition;
+    private int                               mDirection             = 1;
+    /**
+     * Items around {@link #mPosition} that are held while no gallery is attached, so that the cache can't drop them.
+     */
+    private SparseArray<Bitmap>               mPinned                = new SparseArray<Bitmap>();
+    private int                               mCommentViewId;
+    private CommentPosition                   mCommentPosition;
+    private String[]                          mComments;
+    private final LLSlideView.OnPositionChangedListener mPositionListener = new LLSlideView.OnPositionChangedListener() {
+        @Override
+        public void onPositionChanged( int _position, int _direction ) {
+            mPosition = _position;
+            mDirection = _direction;
+            reprioritize( _position, _direction );
+        }
+    };
 
     /**
      * Instantiates a new {@link LLAsyncGallery}.
@@ -89,7 +179,230 @@ public class LLAsyncGallery extends LLRequestResponsibleObject implements Compon
      *            the _gallery that will be decorated.
      */
     public LLAsyncGallery( LLGallery _gallery ) {
+        attach( _gallery );
+    }
+
+    /**
+     * Attaches a gallery, i.e a new one after a configuration change. It shows the loaded items at the position of the last gallery without requesting them again.
+     * 
+     * @since 1.0.10
+     * @param _gallery
+     *            the gallery that will be decorated.
+     */
+    public void attach( LLGallery _gallery ) {
+        if( mGallery != null ) {
+            detach();
+        }
         mGallery = _gallery;
+        mContext = _gallery.getContext().getApplicationContext();
+        mGallery.setOnPositionChangedListener( mPositionListener );
+        if( mMetrics != null ) {
+            mGallery.setMetrics( mMetrics );
+        }
+        if( !mUris.isEmpty() && mReqSize != null ) {
+            int position = mPosition;
+            showAdapter();
+            mGallery.setCurrentPosition( position );
+            if( mComments != null ) {
+                mGallery.addComments( mCommentViewId, mCommentPosition, mComments );
+            }
+        }
+        // The gallery holds them now.
+        unpinAll();
+    }
+
+    /**
+     * Detaches the gallery, i.e before the {@link android.app.Activity} is destroyed for a configuration change. The requests keep running, the items around the current one are held until a
+     * gallery is attached again.
+     * 
+     * @since 1.0.10
+     */
+    public void detach() {
+        if( mGallery == null ) {
+            return;
+        }
+        mPosition = mGallery.getCurrentPosition();
+        mDirection = mGallery.getDirection();
+        mGallery.setOnPositionChangedListener( null );
+        mGallery = null;
+        mAdapter = null;
+        unpinAll();
+        for( int position = mPosition - PIN_RANGE; position <= mPosition + PIN_RANGE; position++ ) {
+            if( position >= 0 && position < mUris.size() ) {
+                Bitmap bmp = LLImageCache.getInstance().get(
+                        LLImageCache.makeKey( mUris.get( position ).toString(), mReqSize ) );
+                if( bmp != null ) {
+                    pin( position, bmp );
+                }
+            }
+        }
+    }
+
+    /**
+     * @since 1.0.10
+     * @return true if a gallery is attached.
+     */
+    public boolean isAttached() {
+        return mGallery != null;
+    }
+
+    /**
+     * Sets how many items in the direction of moving are loaded right after the current one, before the items on the other side.
+     * 
+     * @since 1.0.5
+     * @param _count
+     *            the count of items, default is {@link #DEFAULT_PREFETCH_COUNT}.
+     */
+    public void setPrefetchCount( int _count ) {
+        mPrefetchCount = Math.max( 0, _count );
+        reprioritize( getCurrentPosition(), getDirection() );
+    }
+
+    /**
+     * Shows a thumbnail of each item first, it's replaced by the full item when that has been loaded. Only the current item and the ones beside it are loaded at full resolution, a full load is
+     * cancelled when the user has moved away.
+     * <p>
+     * A thumbnail is loaded from {@link #getThumbnailUrl(String)}. Without a template it's only available when the full image is in the {@link LLDiskCache}, it's decoded from there with a high
+     * subsampling.
+     * 
+     * @since 1.0.11
+     * @param _progressive
+     *            true to load progressively, default is false. It should be set before the images.
+     */
+    public void setProgressive( boolean _progressive ) {
+        mProgressive = _progressive;
+    }
+
+    /**
+     * Sets the template of thumbnail urls for progressive loading, see {@link #setProgressive(boolean)}.
+     * 
+     * @since 1.0.11
+     * @param _template
+     *            i.e "http://cdn.example.com/thumb?src={url}", "{url}" is replaced by the encoded url of the full image. Null to decode the thumbnails from the disk cache.
+     */
+    public void setThumbnailUrlTemplate( String _template ) {
+        mThumbnailUrlTemplate = _template;
+    }
+
+    /**
+     * Gets the url of the thumbnail of an image. A subclass can map the urls in its own way.
+     * 
+     * @since 1.0.11
+     * @param _urlStr
+     *            the url of the full image.
+     * @return the url of the thumbnail, the url of the full image if it's decoded small from the disk cache, or null if there's no thumbnail. It's called on the UI thread, it mustn't read
+     *         the disk.
+     */
+    protected String getThumbnailUrl( String _urlStr ) {
+        if( mThumbnailUrlTemplate != null ) {
+            return mThumbnailUrlTemplate.replace( "{url}", Uri.encode( _urlStr ) );
+        }
+        // Whether the full image is cached is looked up by the loader in the background.
+        return mThumbnailSize.isValid() ? _urlStr : null;
+    }
+
+    /**
+     * @return true if the full item of the url has been loaded.
+     */
+    private boolean isLoaded( String _urlStr ) {
+        return mConsumedRequests.containsKey( _urlStr ) && mConsumedRequests.get( _urlStr ) == null;
+    }
+
+    /**
+     * @return the position of the current item, the last one if no gallery is attached.
+     */
+    private int getCurrentPosition() {
+        LLGallery gallery = mGallery;
+        return gallery != null ? gallery.getCurrentPosition() : mPosition;
+    }
+
+    /**
+     * @return the direction of moving, the last one if no gallery is attached.
+     */
+    private int getDirection() {
+        LLGallery gallery = mGallery;
+        return gallery != null ? gallery.getDirection() : mDirection;
+    }
+
+    /**
+     * Calculates the loading priority of an item. The current item has the highest, then the next {@link #mPrefetchCount} items in the direction of moving, then all other items by distance.
+     * 
+     * @since 1.0.5
+     * @param _index
+     *            the index of the item.
+     * @param _current
+     *            the position of current item.
+     * @param _direction
+     *            1 if the user moves to the next items, -1 to the previous ones.
+     * @return the priority for {@link LLImageLoader}, a higher one is loaded earlier.
+     */
+    private int priorityOf( int _index, int _current, int _direction ) {
+        int offset = (_index - _current) * _direction;
+        int rank;
+        if( offset >= 0 && offset <= mPrefetchCount ) {
+            rank = offset;
+        }
+        else {
+            // Behind the current item or far ahead, the nearer the earlier, ahead wins a tie.
+            rank = mPrefetchCount + Math.abs( offset ) * 2 - (offset > 0 ? 1 : 0);
+        }
+        return LLImageLoader.DEFAULT_PRIORITY - rank;
+    }
+
+    /**
+     * Changes the priorities of all waiting loads after the current item has changed.
+     * 
+     * @since 1.0.5
+     * @param _current
+     *            the position of current item.
+     * @param _direction
+     *            1 if the user moves to the next items, -1 to the previous ones.
+     */
+    private void reprioritize( int _current, int _direction ) {
+        Iterator<Map.Entry<String, LLImageLoader.Ticket>> it = mConsumedRequests.entrySet().iterator();
+        while( it.hasNext() ) {
+            Map.Entry<String, LLImageLoader.Ticket> entry = it.next();
+            LLImageLoader.Ticket ticket = entry.getValue();
+            if( ticket != null && !ticket.isCancelled() ) {
+                // The nearest slot of a url decides.
+                int priority = Integer.MIN_VALUE;
+                int distance = Integer.MAX_VALUE;
+                for( int position : mPositions.get( entry.getKey() ) ) {
+                    priority = Math.max( priority, priorityOf( position, _current, _direction ) );
+                    distance = Math.min( distance, Math.abs( position - _current ) );
+                }
+                if( mProgressive && distance > FULL_RANGE ) {
+                    // The user has moved on, the thumbnail is enough for now.
+                    ticket.cancel();
+                    it.remove();
+                }
+                else {
+                    ticket.setPriority( priority );
+                }
+            }
+        }
+        if( mProgressive ) {
+            // A slot that stays in the window has lost its full load while it was far, the window doesn't load it again.
+            for( int position = _current - FULL_RANGE; position <= _current + FULL_RANGE; position++ ) {
+                if( position >= 0 && position < mUris.size() ) {
+                    String urlStr = mUris.get( position ).toString();
+                    if( !mConsumedRequests.containsKey( urlStr )
+                            && LLImageCache.getInstance().get( LLImageCache.makeKey( urlStr, mReqSize ) ) == null ) {
+                        request( urlStr, mReqSize, priorityOf( position, _current, _direction ) );
+                    }
+                }
+            }
+        }
+        for( Map.Entry<String, LLImageLoader.Ticket> entry : mThumbnailRequests.entrySet() ) {
+            LLImageLoader.Ticket ticket = entry.getValue();
+            if( ticket != null && !ticket.isCancelled() ) {
+                int priority = Integer.MIN_VALUE;
+                for( int position : mPositions.get( entry.getKey() ) ) {
+                    priority = Math.max( priority, priorityOf( position, _current, _direction ) );
+                }
+                ticket.setPriority( THUMBNAIL_PRIORITY + priority );
+            }
+        }
     }
 
     /**
@@ -112,7 +425,11 @@ public class LLAsyncGallery extends LLRequestResponsibleObject implements Compon
      *            the size of that will be requested.
      */
     public void setImages( Uri[] _uris, RequestedSize _reqSize ) {
-        mUris.addAll( Arrays.asList( _uris ) );
+        for( Uri uri : _uris ) {
+            if( uri != null ) {
+                add( uri );
+            }
+        }
         load( _reqSize );
     }
 
@@ -128,7 +445,7 @@ public class LLAsyncGallery extends LLRequestResponsibleObject implements Compon
     public void setImages( String[] _urlStrs, RequestedSize _reqSize ) {
         for( String urlStr : _urlStrs ) {
             if( !TextUtils.isEmpty( urlStr ) ) {
-                mUris.add( Uri.parse( urlStr ) );
+                add( Uri.parse( urlStr ) );
             }
         }
         load( _reqSize );
@@ -146,7 +463,7 @@ public class LLAsyncGallery extends LLRequestResponsibleObject implements Compon
     public void setImages( URL[] _URLs, RequestedSize _reqSize ) {
         for( URL url : _URLs ) {
             if( url != null ) {
-                mUris.add( Uri.parse( url.toString() ) );
+                add( Uri.parse( url.toString() ) );
             }
         }
         load( _reqSize );
@@ -164,25 +481,158 @@ public class LLAsyncGallery extends LLRequestResponsibleObject implements Compon
     public void setImages( URI[] _URIs, RequestedSize _reqSize ) {
         for( URI uri : _URIs ) {
             if( uri != null ) {
-                mUris.add( Uri.parse( uri.toString() ) );
+                add( Uri.parse( uri.toString() ) );
             }
         }
         load( _reqSize );
     }
 
+    /**
+     * Reserves the next slot for an uri.
+     * 
+     * @since 1.0.6
+     * @param _uri
+     *            the uri.
+     */
+    private void add( Uri _uri ) {
+        String urlStr = _uri.toString();
+        List<Integer> positions = mPositions.get( urlStr );
+        if( positions == null ) {
+            positions = new ArrayList<Integer>( 1 );
+            mPositions.put( urlStr, positions );
+        }
+        positions.add( mUris.size() );
+        mUris.add( _uri );
+    }
+
     /**
      * Load images.
+     * <p>
+     * The slots of all images are given to the gallery first, it requests the items that it shows with {@link UriAdapter}, then all other images are requested with lower priorities.
      * 
      * @since 1.0
      * @param _reqSize
      *            the size of that will be requested.
      */
     private void load( RequestedSize _reqSize ) {
-        for( Uri uri : mUris ) {
-            request( uri.toString(), _reqSize );
+        mReqSize = _reqSize;
+        mThumbnailSize = new RequestedSize();
+        mThumbnailSize.pixelFormat = _reqSize.pixelFormat;
+        if( _reqSize.isValid() ) {
+            mThumbnailSize.reqWidth = Math.max( 1, _reqSize.reqWidth / THUMBNAIL_DIVIDER );
+            mThumbnailSize.reqHeight = Math.max( 1, _reqSize.reqHeight / THUMBNAIL_DIVIDER );
+        }
+        if( mMetrics != null ) {
+            mMetrics.onStart();
+        }
+        if( mGallery == null ) {
+            // The items are shown when a gallery is attached.
+        }
+        else if( mAdapter == null ) {
+            showAdapter();
+        }
+        else {
+            mGallery.notifyItemsChanged();
+        }
+        int current = getCurrentPosition();
+        int direction = getDirection();
+        for( int i = 0, cnt = mUris.size(); i < cnt; i++ ) {
+            String urlStr = mUris.get( i ).toString();
+            if( !mProgressive ) {
+                if( !mConsumedRequests.containsKey( urlStr ) ) {
+                    request( urlStr, _reqSize, priorityOf( i, current, direction ) );
+                }
+            }
+            else if( !isLoaded( urlStr ) && !mThumbnailRequests.containsKey( urlStr ) ) {
+                // The full items beside the current one are requested by the gallery.
+                requestThumbnail( urlStr, THUMBNAIL_PRIORITY + priorityOf( i, current, direction ) );
+            }
+        }
+    }
+
+    /**
+     * Requests the thumbnail of an image.
+     * 
+     * @since 1.0.11
+     * @param _urlStr
+     *            the url of the full image.
+     * @param _priority
+     *            the priority of loading.
+     */
+    private void requestThumbnail( String _urlStr, int _priority ) {
+        String thumbnailUrl = getThumbnailUrl( _urlStr );
+        if( thumbnailUrl == null ) {
+            return;
+        }
+        mThumbnailUrls.put( _urlStr, thumbnailUrl );
+        mFullUrls.put( thumbnailUrl, _urlStr );
+        LLImageLoader loader = LLImageLoader.getInstance();
+        mThumbnailRequests.put( _urlStr, thumbnailUrl.equals( _urlStr ) ? loader.loadFromDiskCache( mContext,
+                mThumbnailHandler, thumbnailUrl, mThumbnailSize, _priority ) : loader.load( mContext,
+                mThumbnailHandler, thumbnailUrl, mThumbnailSize, null, _priority ) );
+    }
+
+    /**
+     * Gets the thumbnail of an image from {@link LLImageCache}.
+     * 
+     * @since 1.0.11
+     * @param _urlStr
+     *            the url of the full image.
+     * @return the thumbnail or null.
+     */
+    private Bitmap getCachedThumbnail( String _urlStr ) {
+        String thumbnailUrl = mThumbnailUrls.get( _urlStr );
+        return thumbnailUrl == null ? null : LLImageCache.getInstance().get(
+                LLImageCache.makeKey( thumbnailUrl, mThumbnailSize ) );
+    }
+
+    /**
+     * Puts a loaded thumbnail into its slots unless the full item is there already.
+     * 
+     * @since 1.0.11
+     * @param _msg
+     *            the _msg from {@link LLRequestImage}
+     */
+    private void setThumbnailFromMessage( Message _msg ) {
+        LLGallery gallery = mGallery;
+        if( gallery != null && _msg.obj instanceof LLImageResponse ) {
+            LLImageResponse response = (LLImageResponse) _msg.obj;
+            String urlStr = mFullUrls.get( response.getUrlStr() );
+            List<Integer> positions = urlStr != null ? mPositions.get( urlStr ) : null;
+            if( positions != null && !isLoaded( urlStr ) ) {
+                for( int position : positions ) {
+                    LLBitmapPool.getInstance().acquire( response.getBitmap() );
+                    gallery.setItemBitmap( position, response.getBitmap() );
+                }
+            }
         }
     }
 
+    /**
+     * Receives the thumbnails.
+     * 
+     * @since 1.0.11
+     */
+    private class ThumbnailHandler extends LLRequestResponsibleSimpleObject
+    {
+        @Override
+        public void onRequestImageSuccessed( Message _msg ) {
+            setThumbnailFromMessage( _msg );
+        }
+    }
+
+    /**
+     * Gives the slots of all images to the attached gallery.
+     * 
+     * @since 1.0.10
+     */
+    private void showAdapter() {
+        mAdapter = new UriAdapter();
+        int width = mReqSize.isValid() ? mReqSize.reqWidth : mGallery.getWidth();
+        int height = mReqSize.isValid() ? mReqSize.reqHeight : mGallery.getHeight();
+        mGallery.setAdapter( mAdapter, width, height );
+    }
+
     /**
      * Request uris.
      * 
@@ -191,29 +641,61 @@ public class LLAsyncGallery extends LLRequestResponsibleObject implements Compon
      *            the required uri.
      * @param _reqSize
      *            the size of that will be requested.
+     * @param _priority
+     *            the priority of loading, see {@link #priorityOf(int, int, int)}.
      */
-    private void request( String _uriStr, RequestedSize _reqSize ) {
-        LLRequest req = LLRequestImage.start(
-                mGallery.getContext(),
+    private void request( String _uriStr, RequestedSize _reqSize, int _priority ) {
+        LLImageLoader.Ticket req = LLImageLoader.getInstance().load(
+                mContext,
                 this,
-                LLRequest.Method.GET,
                 _uriStr.toString(),
                 _reqSize,
-                null );
+                null,
+                _priority );
         mConsumedRequests.put( _uriStr, req );
     }
 
     /**
-     * Release unused {@link LLRequest}.
+     * Set the {@link LLGalleryMetrics} that collects how the gallery performs, it should be set before loading. Nothing is recorded at default.
+     * 
+     * @since 1.0.9
+     * @param _metrics
+     *            the metrics, null to stop recording.
+     */
+    public void setMetrics( LLGalleryMetrics _metrics ) {
+        mMetrics = _metrics;
+        if( mGallery != null ) {
+            mGallery.setMetrics( _metrics );
+        }
+    }
+
+    /**
+     * @since 1.0.9
+     * @return the {@link LLGalleryMetrics} or null if nothing is recorded.
+     */
+    public LLGalleryMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Release unused {@link LLRequest}. A download that is shared with other waiters keeps running for them.
      * 
      * @since 1.0
      */
     public void release() {
-        for( LLRequest req : mConsumedRequests.values() ) {
+        unpinAll();
+        for( LLImageLoader.Ticket req : mConsumedRequests.values() ) {
+            if( req != null ) {
+                req.cancel();
+            }
+        }
+        for( LLImageLoader.Ticket req : mThumbnailRequests.values() ) {
             if( req != null ) {
-                req.abort();
+                req.cancel();
             }
         }
+        // They're requested again by the next loading.
+        mThumbnailRequests.clear();
     }
 
     /**
@@ -226,41 +708,142 @@ public class LLAsyncGallery extends LLRequestResponsibleObject implements Compon
     private void setConsumedRequestToNullForError( Message _msg ) {
         if( _msg.obj instanceof LLRequestException ) {
             LLRequestException exp = (LLRequestException) _msg.obj;
-            mConsumedRequests.put( exp.getUrlStr(), null );
+            // Forget it, so that it will be requested again when the gallery shows it.
+            mConsumedRequests.remove( exp.getUrlStr() );
         }
     }
 
     /**
-     * Append bitmap from message.
+     * Puts the bitmap from message into its slots.
      * 
      * @since 1.0
      * @param _msg
      *            the _msg from {@link LLRequestImage}
      */
-    private void appendBitmapFromMessage( Message _msg ) {
+    private void setBitmapFromMessage( Message _msg ) {
         if( _msg.obj instanceof LLImageResponse ) {
             LLImageResponse response = (LLImageResponse) _msg.obj;
-            synchronized( this ) {
-                this.appendImage( response.getBitmap() );
-                int i = 0;
-                for( Uri uri : mUris ) {
-                    if( TextUtils.equals( uri.toString(), response.getUrlStr() ) ) {
-                        mGallery.addComments(
-                                sCommentHelper.commentViewId,
-                                sCommentHelper.commentPosition,
-                                new String[] { sCommentHelper.comments.get( i ) } );
-                        break;
+            if( mMetrics != null ) {
+                mMetrics.onImageLoaded( response );
+            }
+            List<Integer> positions = mPositions.get( response.getUrlStr() );
+            if( positions != null ) {
+                LLGallery gallery = mGallery;
+                for( int position : positions ) {
+                    if( gallery != null ) {
+                        LLBitmapPool.getInstance().acquire( response.getBitmap() );
+                        gallery.setItemBitmap( position, response.getBitmap() );
+                    }
+                    else if( Math.abs( position - mPosition ) <= PIN_RANGE ) {
+                        // Hold it for the next gallery.
+                        pin( position, response.getBitmap() );
+                    }
+                }
+            }
+            mConsumedRequests.put( response.getUrlStr(), null );
+        }
+    }
+
+    /**
+     * Holds an item for the next gallery.
+     * 
+     * @since 1.0.14
+     * @param _position
+     *            the position of the item.
+     * @param _bmp
+     *            the item.
+     */
+    private void pin( int _position, Bitmap _bmp ) {
+        LLBitmapPool.getInstance().acquire( _bmp );
+        Bitmap old = mPinned.get( _position );
+        mPinned.put( _position, _bmp );
+        if( old != null ) {
+            LLBitmapPool.getInstance().release( old );
+        }
+    }
+
+    /**
+     * Lets the pinned items go, they're pooled when nobody else holds them.
+     * 
+     * @since 1.0.14
+     */
+    private void unpinAll() {
+        for( int i = 0; i < mPinned.size(); i++ ) {
+            LLBitmapPool.getInstance().release( mPinned.valueAt( i ) );
+        }
+        mPinned.clear();
+    }
+
+    /**
+     * {@link ILLGalleryAdapter} on {@link #mUris}, the bitmaps are kept by the {@link LLImageCache}. Every bitmap that is given to the gallery is acquired in the {@link LLBitmapPool} and released
+     * when the gallery gives it back, so that it's pooled when no slot, no gallery and no cache holds it anymore.
+     * 
+     * @since 1.0.6
+     */
+    private class UriAdapter implements ILLGalleryAdapter, ILLGalleryTileSource
+    {
+        @Override
+        public int getCount() {
+            return mUris.size();
+        }
+
+        @Override
+        public Bitmap loadBitmap( int _position ) {
+            String urlStr = mUris.get( _position ).toString();
+            Bitmap cached = mPinned.get( _position );
+            if( cached == null ) {
+                cached = LLImageCache.getInstance().get( LLImageCache.makeKey( urlStr, mReqSize ) );
+            }
+            if( cached != null ) {
+                if( mMetrics != null ) {
+                    mMetrics.onMemoryHit();
+                }
+                LLBitmapPool.getInstance().acquire( cached );
+                return cached;
+            }
+            LLImageLoader.Ticket ticket = mConsumedRequests.get( urlStr );
+            if( ticket == null || ticket.isCancelled() ) {
+                // Not requested yet, failed, released or evicted from cache.
+                request( urlStr, mReqSize, priorityOf( _position, getCurrentPosition(), getDirection() ) );
+            }
+            // The thumbnail until the full item comes.
+            Bitmap thumbnail = mProgressive ? getCachedThumbnail( urlStr ) : null;
+            LLBitmapPool.getInstance().acquire( thumbnail );
+            return thumbnail;
+        }
+
+        /**
+         * Opens the full image in the {@link LLDiskCache}, it's called on the thread of the tile decoder.
+         */
+        @Override
+        public FileInputStream openSource( int _position ) {
+            LLDiskCache cache = LLDiskCache.getDefault( mContext );
+            if( cache != null ) {
+                try {
+                    LLDiskCache.Snapshot snapshot = cache.get( LLDiskCache.hashKey( mUris.get( _position ).toString() ) );
+                    if( snapshot != null ) {
+                        // Only the body is kept open for the tiles.
+                        snapshot.getInputStream( LLRequestFile.CACHE_HTTP_ENTRY ).close();
+                        return snapshot.getInputStream( LLRequestFile.CACHE_BODY );
                     }
-                    i++;
                 }
-                mConsumedRequests.put( response.getUrlStr(), null );
+                catch( IOException _e ) {
+                    LL.e( ":( Can't read disk cache: " + _e.toString() );
+                }
             }
+            return null;
+        }
+
+        @Override
+        public void releaseBitmap( int _position, Bitmap _bitmap ) {
+            // Pooled when another slot, gallery or the cache doesn't hold it anymore.
+            LLBitmapPool.getInstance().release( _bitmap );
         }
     }
 
     @Override
     public void onConfigurationChanged( Configuration _newConfig ) {
-        release();
+        // The requests go on for the gallery that will be attached.
     }
 
     @Override
@@ -285,7 +868,7 @@ public class LLAsyncGallery extends LLRequestResponsibleObject implements Compon
 
     @Override
     public void onRequestImageSuccessed( Message _msg ) {
-        appendBitmapFromMessage( _msg );
+        setBitmapFromMessage( _msg );
     }
 
     @Override
@@ -303,6 +886,16 @@ public class LLAsyncGallery extends LLRequestResponsibleObject implements Compon
         mGallery.setImages( _bitmaps );
     }
 
+    @Override
+    public void setAdapter( ILLGalleryAdapter _adapter, int _itemWidth, int _itemHeight ) {
+        mGallery.setAdapter( _adapter, _itemWidth, _itemHeight );
+    }
+
+    @Override
+    public void setItemBitmap( int _position, Bitmap _bmp ) {
+        mGallery.setItemBitmap( _position, _bmp );
+    }
+
     @Override
     public void appendImage( Bitmap _bmp ) {
         mGallery.appendImage( _bmp );
@@ -321,11 +914,11 @@ public class LLAsyncGallery extends LLRequestResponsibleObject implements Compon
 
     @Override
     public void addComments( int _commentViewId, CommentPosition _pos, String[] _comments ) {
-        // mGallery.addComments( _commentViewId, _pos, null );
-        // mGallery.getCommentsView().setVisibility( View.GONE );
-        sCommentHelper.commentViewId = _commentViewId;
-        sCommentHelper.commentPosition = _pos;
-        sCommentHelper.comments.addAll( Arrays.asList( _comments ) );
+        // The slots keep the order of urls, so the comments can be passed directly.
+        mCommentViewId = _commentViewId;
+        mCommentPosition = _pos;
+        mComments = _comments;
+        mGallery.addComments( _commentViewId, _pos, _comments );
     }
 
     @Override
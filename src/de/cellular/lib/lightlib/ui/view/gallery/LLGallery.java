@@ -28,15 +28,17 @@ import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.animation.Interpolator;
 import android.widget.Button;
 import android.widget.ImageButton;
-import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 import de.cellular.lib.lightlib.R;
 import de.cellular.lib.lightlib.log.LL;
 import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGallery;
+import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGalleryAdapter;
+import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGalleryTileSource;
 
 /**
  * A smooth gallery with an indicator, left-right button controlling, left-right arrow controlling, and comment text under or upon.
@@ -46,6 +48,28 @@ import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGallery;
  * <li>Data source should have equal width and height.</li>
  * <p>
  * 
+ * @version <strong>1.0.12</strong>
+ *          <p>
+ *          <li>Add {@link #setCurrentPosition(int)}.</li>
+ * @version <strong>1.0.11</strong>
+ *          <p>
+ *          <li>Add {@link #setMetrics(LLGalleryMetrics)}.</li>
+ * @version <strong>1.0.10</strong>
+ *          <p>
+ *          <li>The indicator is drawn by one {@link LLIndicatorView}, add {@link #setIndicatorMode(int)}.</li>
+ * @version <strong>1.0.9</strong>
+ *          <p>
+ *          <li>The current item can be zoomed, see {@link #setZoomable(boolean)} and {@link ILLGalleryTileSource}.</li>
+ * @version <strong>1.0.8</strong>
+ *          <p>
+ *          <li>Items move by elapsed time, add {@link #setInterpolator(Interpolator)} and {@link #setMoveDuration(int)}.</li>
+ * @version <strong>1.0.7</strong>
+ *          <p>
+ *          <li>Add {@link #getCurrentPosition()} and {@link #getDirection()}.</li>
+ *          <li>Add {@link #setPlaceholder(Drawable)} and {@link #notifyItemsChanged()}.</li>
+ * @version <strong>1.0.6</strong>
+ *          <p>
+ *          <li>Items can be provided on demand with an {@link ILLGalleryAdapter}, see {@link #setAdapter(ILLGalleryAdapter, int, int)}.</li>
  * @version <strong>1.0.5</strong>
  *          <p>
  *          <li>Don't scale image again when images are passed into gallery, removed many unused functions.</li>
@@ -251,7 +275,7 @@ public class LLGallery extends RelativeLayout implements LLSlideView.OnItemClick
         // indicator dots (1)
         // -------------------------------------------
 
-        final LinearLayout indicatorDotsLayout = new LinearLayout( _context );
+        final LLIndicatorView indicatorDotsLayout = new LLIndicatorView( _context );
         indicatorDotsLayout.setId( R.id.ll_gallery_indicator_dots );
         indicatorLayout.addView( indicatorDotsLayout );
 
@@ -361,7 +385,6 @@ public class LLGallery extends RelativeLayout implements LLSlideView.OnItemClick
         // indicator dots (2)
         // -------------------------------------------
 
-        indicatorDotsLayout.setOrientation( LinearLayout.HORIZONTAL );
         params = (RelativeLayout.LayoutParams) indicatorDotsLayout.getLayoutParams();
         // params.width = RelativeLayout.LayoutParams.FILL_PARENT;
         params.height = indicatorHeight;
@@ -532,6 +555,169 @@ public class LLGallery extends RelativeLayout implements LLSlideView.OnItemClick
         }
     }
 
+    @Override
+    public void setAdapter( ILLGalleryAdapter _adapter, int _itemWidth, int _itemHeight ) {
+        if( _adapter == null ) {
+            LL.e( "Adapter is NULL." );
+        }
+        else {
+            changeThisViewLayoutAfterAddingItems( _itemWidth, _itemHeight );
+            mSlideView.setAdapter( _adapter, _itemWidth );
+        }
+    }
+
+    @Override
+    public void setItemBitmap( int _position, Bitmap _bmp ) {
+        mSlideView.setItemBitmap( _position, _bmp );
+    }
+
+    /**
+     * Set how many items on each side of the current item are kept decoded when the items come from an {@link ILLGalleryAdapter}.
+     * 
+     * @since 1.0.6
+     * @param _limit
+     *            count of items on each side, default is 1.
+     */
+    public void setOffscreenLimit( int _limit ) {
+        mSlideView.setOffscreenLimit( _limit );
+    }
+
+    /**
+     * The count of items of the {@link ILLGalleryAdapter} has changed, i.e items have been added. The current item stays.
+     * 
+     * @since 1.0.7
+     */
+    public void notifyItemsChanged() {
+        mSlideView.notifyItemsChanged();
+    }
+
+    /**
+     * Set the drawable that is shown in the slot of an item that has not been loaded yet.
+     * 
+     * @since 1.0.7
+     * @param _placeholder
+     *            the placeholder, null shows nothing.
+     */
+    public void setPlaceholder( Drawable _placeholder ) {
+        mSlideView.setPlaceholder( _placeholder );
+    }
+
+    /**
+     * Set whether the current item can be zoomed with two fingers. A zoomed item is drawn in tiles from its original file when the adapter is an {@link ILLGalleryTileSource}, otherwise the
+     * shown bitmap is scaled up. Only a swipable gallery can be zoomed.
+     * 
+     * @since 1.0.9
+     * @param _zoomable
+     *            true if zoomable, default is false.
+     */
+    public void setZoomable( boolean _zoomable ) {
+        mSlideView.setZoomable( _zoomable );
+    }
+
+    /**
+     * Set the max zoom of an item.
+     * 
+     * @since 1.0.9
+     * @param _maxZoom
+     *            the max factor, default is 4.
+     */
+    public void setMaxZoom( float _maxZoom ) {
+        mSlideView.setMaxZoom( _maxZoom );
+    }
+
+    /**
+     * Set the {@link LLGalleryMetrics} that collects how the gallery performs, it should be set before the items. Nothing is recorded at default.
+     * 
+     * @since 1.0.11
+     * @param _metrics
+     *            the metrics, null to stop recording.
+     */
+    public void setMetrics( LLGalleryMetrics _metrics ) {
+        mSlideView.setMetrics( _metrics );
+    }
+
+    /**
+     * @since 1.0.11
+     * @return the {@link LLGalleryMetrics} or null if nothing is recorded.
+     */
+    public LLGalleryMetrics getMetrics() {
+        return mSlideView.getMetrics();
+    }
+
+    /**
+     * Set how the indicator shows the items, default is {@link LLIndicatorView#MODE_AUTO}.
+     * 
+     * @since 1.0.10
+     * @param _mode
+     *            {@link LLIndicatorView#MODE_AUTO}, {@link LLIndicatorView#MODE_DOTS}, {@link LLIndicatorView#MODE_WINDOWED} or {@link LLIndicatorView#MODE_TEXT}.
+     */
+    public void setIndicatorMode( int _mode ) {
+        ((LLIndicatorView) findViewById( R.id.ll_gallery_indicator_dots )).setMode( _mode );
+    }
+
+    /**
+     * Set the {@link Interpolator} of moving items, default is a {@link android.view.animation.DecelerateInterpolator}.
+     * 
+     * @since 1.0.8
+     * @param _interpolator
+     *            the interpolator.
+     */
+    public void setInterpolator( Interpolator _interpolator ) {
+        mSlideView.setInterpolator( _interpolator );
+    }
+
+    /**
+     * Set the duration of moving a whole item.
+     * 
+     * @since 1.0.8
+     * @param _duration
+     *            the duration in ms, default is 300.
+     */
+    public void setMoveDuration( int _duration ) {
+        mSlideView.setMoveDuration( _duration );
+    }
+
+    /**
+     * Get current item's position.
+     * 
+     * @since 1.0.7
+     * @return the position.
+     */
+    public int getCurrentPosition() {
+        return mSlideView.getCurrentPosition();
+    }
+
+    /**
+     * Show an item without moving.
+     * 
+     * @since 1.0.12
+     * @param _position
+     *            the position of the item.
+     */
+    public void setCurrentPosition( int _position ) {
+        mSlideView.setCurrentPosition( _position );
+    }
+
+    /**
+     * Get the direction of the last move.
+     * 
+     * @since 1.0.7
+     * @return 1 if the user has moved to the next items, -1 to the previous ones.
+     */
+    public int getDirection() {
+        return mSlideView.getDirection();
+    }
+
+    /**
+     * Set listener for the change of the current item.
+     * 
+     * @since 1.0.7
+     * @param _listener
+     */
+    void setOnPositionChangedListener( LLSlideView.OnPositionChangedListener _listener ) {
+        mSlideView.setOnPositionChangedListener( _listener );
+    }
+
     @Override
     public void addComments( int _commentViewId, String[] _comments ) {
         addComments( _commentViewId, CommentPosition.BOTTOM, _comments );
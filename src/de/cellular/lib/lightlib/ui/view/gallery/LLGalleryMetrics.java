@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cellular.lib.lightlib.ui.view.gallery;
+
+import android.os.SystemClock;
+import de.cellular.lib.lightlib.backend.LLImageResponse;
+
+/**
+ * Collects how a {@link LLGallery} performs, it's opt-in, see {@link LLGallery#setMetrics(LLGalleryMetrics)}.
+ * <p>
+ * <li>Per-image download time, decode time and bytes, see {@link Listener#onImageLoaded(String, long, long, long, int)}.</li>
+ * <li>Hits of the memory cache, hits of the disk cache and misses that have been downloaded.</li>
+ * <li>Time from loading until the first item has been drawn.</li>
+ * <li>Frames of each transition and the dropped frames, a frame that comes later than 1.5 frames is counted as dropped.</li>
+ * <p>
+ * Only counters are updated while items are drawn and moved, nothing is allocated, so that it can be kept on in production. The values can be read with {@link #snapshot()} or are passed to a
+ * {@link Listener} as primitives. The methods of recording are called on the UI thread.
+ *
+ * @version <strong>1.0</strong>
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLGalleryMetrics
+{
+    /**
+     * Receives the metrics when they have been recorded, it's called on the UI thread and must be cheap.
+     */
+    public interface Listener {
+        /**
+         * An image has been loaded.
+         *
+         * @param _urlStr
+         *            the url of the image.
+         * @param _downloadTime
+         *            the ms of downloading, 0 if it's not from the network.
+         * @param _decodeTime
+         *            the ms of decoding, 0 if it's from the memory cache.
+         * @param _bytes
+         *            the bytes of the encoded image, 0 if it's from the memory cache.
+         * @param _source
+         *            {@link LLImageResponse#SOURCE_MEMORY}, {@link LLImageResponse#SOURCE_DISK} or {@link LLImageResponse#SOURCE_NETWORK}.
+         */
+        void onImageLoaded( String _urlStr, long _downloadTime, long _decodeTime, long _bytes, int _source );
+
+        /**
+         * The first item has been drawn.
+         *
+         * @param _time
+         *            the ms since the gallery has started loading.
+         */
+        void onFirstSlide( long _time );
+
+        /**
+         * A transition has finished.
+         *
+         * @param _duration
+         *            the ms of the transition.
+         * @param _frames
+         *            the count of frames.
+         * @param _droppedFrames
+         *            the count of dropped frames.
+         * @param _worstFrame
+         *            the ms of the longest frame.
+         */
+        void onTransition( long _duration, int _frames, int _droppedFrames, long _worstFrame );
+    }
+
+    /**
+     * The values of a {@link LLGalleryMetrics} at a moment.
+     */
+    public static class Snapshot
+    {
+        public final int  imageCount;
+        public final long totalDownloadTime;
+        public final long totalDecodeTime;
+        public final long maxDecodeTime;
+        public final long totalBytes;
+        public final int  memoryHitCount;
+        public final int  diskHitCount;
+        public final int  missCount;
+        /**
+         * -1 if the first item has not been drawn yet.
+         */
+        public final long timeToFirstSlide;
+        public final int  transitionCount;
+        public final int  frameCount;
+        public final int  droppedFrameCount;
+        public final long worstFrameTime;
+
+        private Snapshot( LLGalleryMetrics _m ) {
+            imageCount = _m.mImageCount;
+            totalDownloadTime = _m.mTotalDownloadTime;
+            totalDecodeTime = _m.mTotalDecodeTime;
+            maxDecodeTime = _m.mMaxDecodeTime;
+            totalBytes = _m.mTotalBytes;
+            memoryHitCount = _m.mMemoryHitCount;
+            diskHitCount = _m.mDiskHitCount;
+            missCount = _m.mMissCount;
+            timeToFirstSlide = _m.mTimeToFirstSlide;
+            transitionCount = _m.mTransitionCount;
+            frameCount = _m.mFrameCount;
+            droppedFrameCount = _m.mDroppedFrameCount;
+            worstFrameTime = _m.mWorstFrameTime;
+        }
+
+        @Override
+        public String toString() {
+            return "LLGalleryMetrics.Snapshot[images=" + imageCount + ",download=" + totalDownloadTime + "ms,decode="
+                    + totalDecodeTime + "ms,maxDecode=" + maxDecodeTime + "ms,bytes=" + totalBytes + ",memoryHits="
+                    + memoryHitCount + ",diskHits=" + diskHitCount + ",misses=" + missCount + ",firstSlide="
+                    + timeToFirstSlide + "ms,transitions=" + transitionCount + ",frames=" + frameCount + ",dropped="
+                    + droppedFrameCount + ",worstFrame=" + worstFrameTime + "ms]";
+        }
+    }
+
+    private final long mFrameTime;
+    private Listener   mListener;
+
+    private int        mImageCount;
+    private long       mTotalDownloadTime;
+    private long       mTotalDecodeTime;
+    private long       mMaxDecodeTime;
+    private long       mTotalBytes;
+    private int        mMemoryHitCount;
+    private int        mDiskHitCount;
+    private int        mMissCount;
+
+    private long       mStartTime        = -1;
+    private long       mTimeToFirstSlide = -1;
+
+    private int        mTransitionCount;
+    private int        mFrameCount;
+    private int        mDroppedFrameCount;
+    private long       mWorstFrameTime;
+
+    // The running transition.
+    private long       mTransitionStart  = -1;
+    private long       mLastFrame;
+    private int        mTransitionFrames;
+    private int        mTransitionDropped;
+    private long       mTransitionWorst;
+
+    /**
+     * Instantiates a new {@link LLGalleryMetrics} for the frame time of the {@link LLSlideView}.
+     *
+     * @since 1.0
+     */
+    public LLGalleryMetrics() {
+        this( LLSlideView.FRAME_DELAY );
+    }
+
+    /**
+     * Instantiates a new {@link LLGalleryMetrics}.
+     *
+     * @since 1.0
+     * @param _frameTime
+     *            the expected ms of a frame.
+     */
+    public LLGalleryMetrics( long _frameTime ) {
+        mFrameTime = Math.max( 1, _frameTime );
+    }
+
+    /**
+     * Set the listener that receives the metrics when they have been recorded.
+     *
+     * @since 1.0
+     * @param _listener
+     */
+    public synchronized void setListener( Listener _listener ) {
+        mListener = _listener;
+    }
+
+    /**
+     * Gets the values that have been collected so far.
+     *
+     * @since 1.0
+     * @return a new {@link Snapshot}.
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot( this );
+    }
+
+    /**
+     * Clears all values, time-to-first-slide is measured again from the next loading.
+     *
+     * @since 1.0
+     */
+    public synchronized void reset() {
+        mImageCount = 0;
+        mTotalDownloadTime = 0;
+        mTotalDecodeTime = 0;
+        mMaxDecodeTime = 0;
+        mTotalBytes = 0;
+        mMemoryHitCount = 0;
+        mDiskHitCount = 0;
+        mMissCount = 0;
+        mStartTime = -1;
+        mTimeToFirstSlide = -1;
+        mTransitionCount = 0;
+        mFrameCount = 0;
+        mDroppedFrameCount = 0;
+        mWorstFrameTime = 0;
+        mTransitionStart = -1;
+    }
+
+    /**
+     * The gallery has started loading, only the first call counts.
+     */
+    synchronized void onStart() {
+        if( mStartTime < 0 ) {
+            mStartTime = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * An item has been drawn, only the first one after {@link #onStart()} counts.
+     */
+    void onSlideDrawn() {
+        Listener listener;
+        long time;
+        synchronized( this ) {
+            if( mStartTime < 0 || mTimeToFirstSlide >= 0 ) {
+                return;
+            }
+            time = mTimeToFirstSlide = SystemClock.uptimeMillis() - mStartTime;
+            listener = mListener;
+        }
+        if( listener != null ) {
+            listener.onFirstSlide( time );
+        }
+    }
+
+    /**
+     * An item has been taken from the memory cache without a request.
+     */
+    synchronized void onMemoryHit() {
+        mMemoryHitCount++;
+    }
+
+    /**
+     * An image has been loaded.
+     *
+     * @param _response
+     *            the response of loading.
+     */
+    void onImageLoaded( LLImageResponse _response ) {
+        Listener listener;
+        synchronized( this ) {
+            switch( _response.getSource() )
+            {
+                case LLImageResponse.SOURCE_MEMORY:
+                    mMemoryHitCount++;
+                break;
+                case LLImageResponse.SOURCE_DISK:
+                    mDiskHitCount++;
+                break;
+                default:
+                    mMissCount++;
+                break;
+            }
+            mImageCount++;
+            mTotalDownloadTime += _response.getDownloadTime();
+            mTotalDecodeTime += _response.getDecodeTime();
+            mMaxDecodeTime = Math.max( mMaxDecodeTime, _response.getDecodeTime() );
+            mTotalBytes += _response.getByteCount();
+            listener = mListener;
+        }
+        if( listener != null ) {
+            listener.onImageLoaded( _response.getUrlStr(), _response.getDownloadTime(), _response.getDecodeTime(),
+                    _response.getByteCount(), _response.getSource() );
+        }
+    }
+
+    /**
+     * A transition has started, a transition that hasn't finished is dropped.
+     *
+     * @param _now
+     *            the uptime in ms.
+     */
+    synchronized void onTransitionStart( long _now ) {
+        mTransitionStart = _now;
+        mLastFrame = _now;
+        mTransitionFrames = 0;
+        mTransitionDropped = 0;
+        mTransitionWorst = 0;
+    }
+
+    /**
+     * A frame of the transition has been drawn.
+     *
+     * @param _now
+     *            the uptime in ms.
+     */
+    synchronized void onFrame( long _now ) {
+        if( mTransitionStart < 0 ) {
+            return;
+        }
+        long frame = _now - mLastFrame;
+        mLastFrame = _now;
+        mTransitionFrames++;
+        if( frame > mTransitionWorst ) {
+            mTransitionWorst = frame;
+        }
+        if( frame * 2 > mFrameTime * 3 ) {
+            // The frames that should have been drawn in between.
+            mTransitionDropped += Math.max( 1, (int) ((frame + mFrameTime / 2) / mFrameTime) - 1 );
+        }
+    }
+
+    /**
+     * The transition has finished.
+     *
+     * @param _now
+     *            the uptime in ms.
+     */
+    void onTransitionEnd( long _now ) {
+        Listener listener;
+        long duration;
+        int frames;
+        int dropped;
+        long worst;
+        synchronized( this ) {
+            if( mTransitionStart < 0 ) {
+                return;
+            }
+            duration = _now - mTransitionStart;
+            frames = mTransitionFrames;
+            dropped = mTransitionDropped;
+            worst = mTransitionWorst;
+            mTransitionStart = -1;
+            mTransitionCount++;
+            mFrameCount += frames;
+            mDroppedFrameCount += dropped;
+            if( worst > mWorstFrameTime ) {
+                mWorstFrameTime = worst;
+            }
+            listener = mListener;
+        }
+        if( listener != null ) {
+            listener.onTransition( duration, frames, dropped, worst );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
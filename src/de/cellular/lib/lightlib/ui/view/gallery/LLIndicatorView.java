@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cellular.lib.lightlib.ui.view.gallery;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * The indicator under the {@link LLGallery}. All dots are drawn by this single view, changing the current item only invalidates it, nothing is allocated and no layout is requested.
+ * <p>
+ * <li>{@link #MODE_DOTS} draws a dot for each item.</li>
+ * <li>{@link #MODE_WINDOWED} draws at most {@link #setMaxDots(int)} dots around the current item, the dots at the edges are smaller when there are more items behind them.</li>
+ * <li>{@link #MODE_TEXT} draws "n / N".</li>
+ * <li>{@link #MODE_AUTO} draws a dot for each item when there are not more than {@link #setMaxDots(int)} items, otherwise it's windowed. It's the default.</li>
+ * <p>
+ * The dots are only drawn when both drawables of dots have been set.
+ *
+ * @version <strong>1.0</strong>
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLIndicatorView extends View
+{
+    public static final int    MODE_AUTO        = 0;
+    public static final int    MODE_DOTS        = 1;
+    public static final int    MODE_WINDOWED    = 2;
+    public static final int    MODE_TEXT        = 3;
+
+    private static final int   DEFAULT_MAX_DOTS = 10;
+    private static final int   DOT_SPACE        = 5;
+    private static final int   TEXT_SIZE_SP     = 12;
+    private static final float EDGE_DOT_SCALE   = 0.6f;
+    private static final char[] SEPARATOR       = " / ".toCharArray();
+
+    private Drawable           mDotSelected;
+    private Drawable           mDotUnselected;
+    private int                mMode            = MODE_AUTO;
+    private int                mMaxDots         = DEFAULT_MAX_DOTS;
+    private int                mCount;
+    private int                mPosition;
+    private final Paint        mTextPaint       = new Paint( Paint.ANTI_ALIAS_FLAG );
+    /**
+     * "n / N", it's filled when the position or count changes.
+     */
+    private final char[]       mText            = new char[2 * 11 + SEPARATOR.length];
+    private int                mTextLength;
+
+    public LLIndicatorView( Context _context ) {
+        this( _context, null );
+    }
+
+    public LLIndicatorView( Context _context, AttributeSet _attrs ) {
+        super( _context, _attrs );
+        mTextPaint.setColor( Color.WHITE );
+        mTextPaint.setTextSize( TypedValue.applyDimension( TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP, getResources()
+                .getDisplayMetrics() ) );
+    }
+
+    /**
+     * Set "dot" for the current item.
+     *
+     * @since 1.0
+     * @param _dot
+     */
+    public void setDotSelected( Drawable _dot ) {
+        mDotSelected = _dot;
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Set "dot" for the other items.
+     *
+     * @since 1.0
+     * @param _dot
+     */
+    public void setDotUnselected( Drawable _dot ) {
+        mDotUnselected = _dot;
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Set how the items are indicated.
+     *
+     * @since 1.0
+     * @param _mode
+     *            {@link #MODE_AUTO}, {@link #MODE_DOTS}, {@link #MODE_WINDOWED} or {@link #MODE_TEXT}.
+     */
+    public void setMode( int _mode ) {
+        if( _mode != mMode ) {
+            mMode = _mode;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    /**
+     * Set the max count of dots in {@link #MODE_WINDOWED} and {@link #MODE_AUTO}.
+     *
+     * @since 1.0
+     * @param _maxDots
+     *            at least 3.
+     */
+    public void setMaxDots( int _maxDots ) {
+        _maxDots = Math.max( 3, _maxDots );
+        if( _maxDots != mMaxDots ) {
+            mMaxDots = _maxDots;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    /**
+     * @since 1.0
+     * @return the paint of "n / N", its color and size can be changed.
+     */
+    public Paint getTextPaint() {
+        return mTextPaint;
+    }
+
+    /**
+     * Set the count of items and the current one. A layout is only requested when the count has changed.
+     *
+     * @since 1.0
+     * @param _count
+     *            the count of items.
+     * @param _position
+     *            the position of the current item.
+     */
+    public void setPosition( int _count, int _position ) {
+        if( _count != mCount ) {
+            mCount = _count;
+            requestLayout();
+        }
+        else if( _position == mPosition ) {
+            return;
+        }
+        mPosition = _position;
+        fillText();
+        invalidate();
+    }
+
+    private int getEffectiveMode() {
+        if( mMode == MODE_AUTO ) {
+            return mCount <= mMaxDots ? MODE_DOTS : MODE_WINDOWED;
+        }
+        return mMode;
+    }
+
+    private int getDotCount() {
+        return getEffectiveMode() == MODE_DOTS ? mCount : Math.min( mCount, mMaxDots );
+    }
+
+    private boolean hasDots() {
+        return mDotSelected != null && mDotUnselected != null;
+    }
+
+    private int getDotWidth() {
+        return Math.max( 0, Math.max( mDotSelected.getIntrinsicWidth(), mDotUnselected.getIntrinsicWidth() ) );
+    }
+
+    private int getDotHeight() {
+        return Math.max( 0, Math.max( mDotSelected.getIntrinsicHeight(), mDotUnselected.getIntrinsicHeight() ) );
+    }
+
+    private void fillText() {
+        int len = putInt( mPosition + 1, 0 );
+        System.arraycopy( SEPARATOR, 0, mText, len, SEPARATOR.length );
+        len += SEPARATOR.length;
+        mTextLength = putInt( mCount, len );
+    }
+
+    /**
+     * Writes the digits of a non-negative int into {@link #mText}.
+     *
+     * @return the index after the last digit.
+     */
+    private int putInt( int _value, int _start ) {
+        int digits = 1;
+        for( int v = _value / 10; v > 0; v /= 10 ) {
+            digits++;
+        }
+        for( int i = _start + digits - 1; i >= _start; i-- ) {
+            mText[i] = (char) ('0' + _value % 10);
+            _value /= 10;
+        }
+        return _start + digits;
+    }
+
+    @Override
+    protected void onMeasure( int _widthMeasureSpec, int _heightMeasureSpec ) {
+        int width = 0;
+        int height = 0;
+        if( getEffectiveMode() == MODE_TEXT ) {
+            // The widest text of the count, so that the width doesn't change while swiping.
+            int len = putInt( mCount, 0 );
+            width = (int) Math.ceil( 2 * mTextPaint.measureText( mText, 0, len )
+                    + mTextPaint.measureText( SEPARATOR, 0, SEPARATOR.length ) );
+            height = (int) Math.ceil( mTextPaint.descent() - mTextPaint.ascent() );
+            fillText();
+        }
+        else if( hasDots() ) {
+            int dots = getDotCount();
+            width = dots * (getDotWidth() + DOT_SPACE);
+            height = getDotHeight();
+        }
+        width += getPaddingLeft() + getPaddingRight();
+        height += getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension( resolveSize( width, _widthMeasureSpec ), resolveSize( height, _heightMeasureSpec ) );
+    }
+
+    @Override
+    protected void onDraw( Canvas _canvas ) {
+        super.onDraw( _canvas );
+        if( mCount <= 0 ) {
+            return;
+        }
+        int mode = getEffectiveMode();
+        if( mode == MODE_TEXT ) {
+            float x = (getWidth() - mTextPaint.measureText( mText, 0, mTextLength )) / 2f;
+            float y = (getHeight() - mTextPaint.descent() - mTextPaint.ascent()) / 2f;
+            _canvas.drawText( mText, 0, mTextLength, x, y, mTextPaint );
+            return;
+        }
+        if( !hasDots() ) {
+            return;
+        }
+        int dots = getDotCount();
+        int first = 0;
+        if( dots < mCount ) {
+            // Keep the current item in the middle of the window.
+            first = Math.max( 0, Math.min( mPosition - dots / 2, mCount - dots ) );
+        }
+        int dotWidth = getDotWidth();
+        int dotHeight = getDotHeight();
+        int left = (getWidth() - dots * (dotWidth + DOT_SPACE)) / 2;
+        int centerY = getHeight() / 2;
+        for( int i = 0; i < dots; i++ ) {
+            int position = first + i;
+            // The current item uses the "unselected" dot, it's how the gallery has always drawn it.
+            Drawable dot = position == mPosition ? mDotUnselected : mDotSelected;
+            float scale = 1f;
+            if( (i == 0 && first > 0) || (i == dots - 1 && first + dots < mCount) ) {
+                scale = EDGE_DOT_SCALE;
+            }
+            int w = (int) (dot.getIntrinsicWidth() * scale);
+            int h = (int) (dot.getIntrinsicHeight() * scale);
+            int l = left + i * (dotWidth + DOT_SPACE) + (dotWidth - w) / 2;
+            int t = centerY - h / 2;
+            dot.setBounds( l, t, l + w, t + h );
+            dot.draw( _canvas );
+        }
+    }
+}
@@ -16,36 +16,43 @@
 
 package de.cellular.lib.lightlib.ui.view.gallery;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
+import android.content.BroadcastReceiver;
 import android.content.ComponentCallbacks;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
 import android.view.GestureDetector;
 import android.view.GestureDetector.OnGestureListener;
-import android.view.Gravity;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.view.View.OnClickListener;
-import android.view.ViewGroup;
 import android.view.WindowManager;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
 import android.widget.Button;
 import android.widget.ImageButton;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
-import android.widget.LinearLayout.LayoutParams;
 import de.cellular.lib.lightlib.R;
 import de.cellular.lib.lightlib.log.LL;
+import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGalleryAdapter;
+import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGalleryTileSource;
+import de.cellular.lib.lightlib.utils.LLMemoryManager;
 
 /**
  * A sliding view draws bitmaps with finger or without finger under control of timer.
@@ -57,7 +64,34 @@ import de.cellular.lib.lightlib.log.LL;
  * <li>Data source should have equal width and height.</li>
  * <p>
  * 
- * @version <strong>1.0.2</strong> <li>Downloaded images are available in listeners</li>
+ * @version <strong>1.0.13</strong> <li>The original file of a zoomed item is opened in the background.</li>
+ * @version <strong>1.0.12</strong> <li>An item of an {@link ILLGalleryAdapter} that is narrower than the slot, i.e a thumbnail, is drawn scaled to the width of the slot. An item that is replaced by
+ *          {@link #setItemBitmap(int, Bitmap)} is given back to the adapter.</li>
+ *          <p>
+ *          <strong>1.0.11</strong> <li>Add {@link #setCurrentPosition(int)}.</li>
+ *          <p>
+ *          <strong>1.0.10</strong> <li>The view is a {@link LLMemoryManager.Trimmable} while it's attached, under critical pressure the items beside the current one and the tiles of zooming are
+ *          dropped.</li>
+ *          <p>
+ *          <strong>1.0.9</strong> <li>Frames of transitions and the first drawn item are recorded by a {@link LLGalleryMetrics}, see {@link #setMetrics(LLGalleryMetrics)}.</li>
+ *          <p>
+ *          <strong>1.0.8</strong> <li>The indicator is a single {@link LLIndicatorView}, an item doesn't inflate a view for its dot anymore.</li>
+ *          <p>
+ *          <strong>1.0.7</strong> <li>Items roll automatically on the UI thread instead of a {@link java.util.Timer}, rolling pauses while the view is detached, invisible or the screen is off.
+ *          A tick is skipped while items are moving, the item after the next one is loaded before rolling.</li>
+ *          <p>
+ *          <strong>1.0.6</strong> <li>The current item can be zoomed with two fingers, see {@link #setZoomable(boolean)}. A zoomed item is drawn in tiles from its original file when the
+ *          {@link ILLGalleryAdapter} is an {@link ILLGalleryTileSource}.</li>
+ *          <p>
+ *          <strong>1.0.5</strong> <li>Items move by elapsed time with an {@link Interpolator} and stop exactly at the width of an item, see {@link #setInterpolator(Interpolator)} and
+ *          {@link #setMoveDuration(int)}.</li>
+ *          <p>
+ *          <strong>1.0.4</strong> <li>Add {@link #getDirection()} and {@link OnPositionChangedListener} to prioritize loading around the current item.</li>
+ *          <li>Add {@link #setPlaceholder(Drawable)} for pending items and {@link #notifyItemsChanged()} when the count of items of the {@link ILLGalleryAdapter} has changed.</li>
+ *          <p>
+ *          <strong>1.0.3</strong> <li>Items come from an {@link ILLGalleryAdapter}, only the items around the current one are kept decoded, see {@link #setOffscreenLimit(int)}.</li>
+ *          <p>
+ *          <strong>1.0.2</strong> <li>Downloaded images are available in listeners</li>
  *          <p>
  *          <strong>1.0.1</strong>
  *          <li>Add</li>
@@ -72,11 +106,19 @@ import de.cellular.lib.lightlib.log.LL;
  * @author Chris Xinyue Zhao <hasszhao@gmail.com>
  * 
  */
-class LLSlideView extends View implements ComponentCallbacks, OnGestureListener, OnClickListener
+class LLSlideView extends View implements ComponentCallbacks, OnGestureListener, OnClickListener,
+        LLMemoryManager.Trimmable
 {
     private static final int                   PLUS                = 1;
     private static final int                   MINUS               = -1;
-    private static final int                   MOVE_UNIT           = 15;
+    /**
+     * Default duration in ms of moving a whole item.
+     */
+    private static final int                   MOVE_DURATION       = 300;
+    /**
+     * Delay between two frames of moving, about 60 frames per second.
+     */
+    static final int                           FRAME_DELAY         = 16;
     private static final int                   WIDTH_BETWEEN_ITEMS = 7;
 
     private View                               mParent;
@@ -95,14 +137,27 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
 
     private Handler                            mMoveHandler        = new Handler();
     private Moving                             moving;
+    private Interpolator                       mInterpolator       = new DecelerateInterpolator();
+    private int                                mMoveDuration       = MOVE_DURATION;
     private int                                mDirection          = PLUS;
     private int                                mCurrentPosition;
 
     // -------------------------------------------------------
     // Auto rolling and moving
     // -------------------------------------------------------
-    private Timer                              mAutoRollTimer;
     private int                                mAutoRate;
+    private boolean                            mAutoRollScheduled;
+    private boolean                            mAttached;
+    private boolean                            mScreenOn           = true;
+    private boolean                            mMoving;
+    private BroadcastReceiver                  mScreenReceiver;
+    private final Runnable                     mAutoRoll           = new Runnable() {
+                                                                       @Override
+                                                                       public void run() {
+                                                                           mAutoRollScheduled = false;
+                                                                           autoRoll();
+                                                                       }
+                                                                   };
 
     // -------------------------------------------------------
     // Draw bitmaps
@@ -116,9 +171,40 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
     private Bitmap                             mCurBmp;
     private Bitmap                             mNxtBmp;
     private Bitmap                             mPrevImg;
+    private Drawable                           mPlaceholder;
+
+    // -------------------------------------------------------
+    // Zooming
+    // -------------------------------------------------------
+
+    private static final float                 DEFAULT_MAX_ZOOM    = 4f;
+    private boolean                            mZoomable;
+    private ScaleGestureDetector               mScaleDetector;
+    private float                              mMaxZoom            = DEFAULT_MAX_ZOOM;
+    private float                              mZoom               = 1f;
+    private float                              mPanX;
+    private float                              mPanY;
+    private LLTileDecoder                      mTiles;
+    private boolean                            mOpeningTiles;
+    private final Paint                        mTilePaint          = new Paint( Paint.FILTER_BITMAP_FLAG );
+    private final RectF                        mTileRect           = new RectF();
+    /**
+     * True if narrower items are scaled to the width of slot, only for an {@link ILLGalleryAdapter} from {@link #setAdapter(ILLGalleryAdapter, int)}.
+     */
+    private boolean                            mScaleToSlot;
+    private final RectF                        mItemRect           = new RectF();
 
     private List<Bitmap>                       mBitmaps            = new ArrayList<Bitmap>();
 
+    // -------------------------------------------------------
+    // Data source, only a window around the current item
+    // is decoded.
+    // -------------------------------------------------------
+
+    private ILLGalleryAdapter                  mAdapter;
+    private int                                mOffscreenLimit     = 1;
+    private SparseArray<Bitmap>                mWindow             = new SparseArray<Bitmap>();
+
     // -------------------------------------------------------
     // Bottom indicator
     // -------------------------------------------------------
@@ -128,9 +214,7 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
     private Button                             mTriggerLeftMovingRight;
     private ImageButton                        mArrowMovingLeft;
     private Button                             mTriggerMovingLeft;
-    private ViewGroup                          mDots;
-    private Drawable                           mDotSelected;
-    private Drawable                           mDotUnselected;
+    private LLIndicatorView                    mDots;
 
     // -------------------------------------------------------
     // Events / onEvents
@@ -139,6 +223,8 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
     private LLSlideView.OnItemClickListener    mOnItemClickListener;
     private LLSlideView.OnItemScrollListener   mOnItemScrollListener;
     private LLSlideView.OnItemScrolledListener mOnItemScrolledListener;
+    private OnPositionChangedListener          mOnPositionChangedListener;
+    private LLGalleryMetrics                   mMetrics;
 
     /**
      * Event when user clicks on the shown items.
@@ -212,6 +298,33 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
         public void onItemScrolled( int _location, List<Bitmap> _bitmaps );
     }
 
+    /**
+     * Event when the current item has changed, it's used by the loaders of items.
+     * 
+     * @since 1.0.4
+     */
+    interface OnPositionChangedListener {
+        /**
+         * Current item has changed.
+         * 
+         * @param _position
+         *            the position of the current item.
+         * @param _direction
+         *            1 if the user moves to the next items, -1 to the previous ones.
+         */
+        void onPositionChanged( int _position, int _direction );
+    }
+
+    /**
+     * Set listener for the change of the current item.
+     * 
+     * @param _listener
+     * @since 1.0.4
+     */
+    void setOnPositionChangedListener( OnPositionChangedListener _listener ) {
+        mOnPositionChangedListener = _listener;
+    }
+
     /**
      * Set listener for click event.
      * 
@@ -301,7 +414,7 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
             gestureScanner = new GestureDetector( this );
         }
 
-        mDots = (ViewGroup) _parent.findViewById( R.id.ll_gallery_indicator_dots );
+        mDots = (LLIndicatorView) _parent.findViewById( R.id.ll_gallery_indicator_dots );
 
         mArrowLeftMovingRight = (ImageButton) _parent.findViewById( R.id.ll_gallery_arrow_left );
         mArrowLeftMovingRight.setOnClickListener( this );
@@ -374,7 +487,10 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
     public boolean onTouchEvent( MotionEvent _me ) {
         if( mSwipable ) {
             requestDisallowParentInterceptTouchEvent( _me );
-            if( !mShouldFling && _me.getAction() == MotionEvent.ACTION_UP ) {
+            if( mScaleDetector != null ) {
+                mScaleDetector.onTouchEvent( _me );
+            }
+            if( !mShouldFling && _me.getAction() == MotionEvent.ACTION_UP && !isZoomed() ) {
                 moveItem();
             }
             mShouldFling = false;
@@ -391,6 +507,10 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
             MotionEvent _e2,
             float _distanceX,
             float _distanceY ) {
+        if( isZoomed() ) {
+            panBy( -_distanceX, -_distanceY );
+            return true;
+        }
         mLeft = (int) (_e2.getX() - _e1.getX());
         drawItem();
         return true;
@@ -425,6 +545,9 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
             MotionEvent _e2,
             float _velocityX,
             float _velocityY ) {
+        if( isZoomed() ) {
+            return false;
+        }
         mShouldFling = true;
         mDirection = (_velocityX < 0) ? PLUS : MINUS;
         moveItem();
@@ -461,25 +584,58 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
             LL.e( "Bitmap source is NULL." );
         }
         else {
-            mBitmaps = _bitmaps;
-            mMaxWidthOfBitmaps = _maxWidth;
-            mCount = mBitmaps.size();
-            mCurrentPosition = 0;
-
-            if( mCount > 0 )
-                mCurBmp = mBitmaps.get( mCurrentPosition );
-            if( mCount > 1 )
-                mNxtBmp = mBitmaps.get( mCurrentPosition + 1 );
+            mScaleToSlot = false;
+            setSource( new ListAdapter( _bitmaps ), _bitmaps, _maxWidth );
+        }
+    }
 
-            mParent.findViewById( R.id.ll_gallery_pb ).setVisibility( View.GONE );
-            invalidate();
-            updateIndicator();
-            setOnClickListener( this );
+    /**
+     * Set item source that provides items on demand.
+     * 
+     * @param _adapter
+     *            data source
+     * @param _maxWidth
+     *            max-width that each item can be shown.
+     * @since 1.0.3
+     */
+    public void setAdapter( ILLGalleryAdapter _adapter, int _maxWidth ) {
+        if( _adapter == null ) {
+            LL.e( "Adapter is NULL." );
+        }
+        else {
+            mScaleToSlot = true;
+            setSource( _adapter, new WindowList(), _maxWidth );
+        }
+    }
 
-            if( !mSwipable ) {
-                startAutoRollTimer();
-            }
+    /**
+     * Set data source and show the first item.
+     * 
+     * @param _adapter
+     *            data source
+     * @param _bitmaps
+     *            the list that is passed to listeners.
+     * @param _maxWidth
+     *            max-width that each item can be shown.
+     * @since 1.0.3
+     */
+    private void setSource( ILLGalleryAdapter _adapter, List<Bitmap> _bitmaps, int _maxWidth ) {
+        releaseWindow();
+        mAdapter = _adapter;
+        mBitmaps = _bitmaps;
+        mMaxWidthOfBitmaps = _maxWidth;
+        mCount = mAdapter.getCount();
+        mCurrentPosition = 0;
+        if( mMetrics != null ) {
+            mMetrics.onStart();
         }
+        updateWindow();
+
+        invalidate();
+        updateIndicator();
+        setOnClickListener( this );
+
+        updateAutoRoll();
     }
 
     /**
@@ -496,23 +652,193 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
             LL.e( "Bitmap source is NULL." );
         }
         else {
-            mParent.findViewById( R.id.ll_gallery_pb ).setVisibility( View.GONE );
+            if( !(mAdapter instanceof ListAdapter) ) {
+                releaseWindow();
+                mScaleToSlot = false;
+                mBitmaps = new ArrayList<Bitmap>();
+                mAdapter = new ListAdapter( mBitmaps );
+                // The items of the adapter are gone.
+                mCount = 0;
+                mCurrentPosition = 0;
+            }
             mMaxWidthOfBitmaps = _maxWidth;
-            mCount++;
             mBitmaps.add( _bitmap );
+            mCount = mBitmaps.size();
             mCurrentPosition = mCount - 1;
-
-            if( mCount == 1 ) {
-                mCurBmp = mBitmaps.get( mCurrentPosition );
-            }
-            else {
-                mPrevImg = mBitmaps.get( mCurrentPosition - 1 );
-                mCurBmp = mBitmaps.get( mCurrentPosition );
-            }
+            updateWindow();
 
             invalidate();
             updateIndicator();
             setOnClickListener( this );
+            updateAutoRoll();
+        }
+    }
+
+    /**
+     * An item from {@link ILLGalleryAdapter} has been loaded later.
+     * 
+     * @param _position
+     *            the position of the item.
+     * @param _bitmap
+     *            the item.
+     * @since 1.0.3
+     */
+    public void setItemBitmap( int _position, Bitmap _bitmap ) {
+        if( mAdapter == null || _bitmap == null ) {
+            return;
+        }
+        if( isInWindow( _position ) ) {
+            Bitmap old = mWindow.get( _position );
+            mWindow.put( _position, _bitmap );
+            if( old != null ) {
+                // i.e a thumbnail that has been replaced by the full item, or the same item that has been given twice.
+                mAdapter.releaseBitmap( _position, old );
+            }
+            if( _position >= mCurrentPosition - 1 && _position <= mCurrentPosition + 1 ) {
+                updateDrawnItems();
+                invalidate();
+            }
+        }
+        else {
+            // The user has moved away, give it back.
+            mAdapter.releaseBitmap( _position, _bitmap );
+        }
+    }
+
+    /**
+     * The count of items of the {@link ILLGalleryAdapter} has changed, i.e items have been added. The current item stays.
+     * 
+     * @since 1.0.4
+     */
+    public void notifyItemsChanged() {
+        if( mAdapter == null ) {
+            return;
+        }
+        mCount = mAdapter.getCount();
+        if( mCurrentPosition >= mCount ) {
+            mCurrentPosition = Math.max( 0, mCount - 1 );
+        }
+        updateWindow();
+        invalidate();
+        updateIndicator();
+        updateAutoRoll();
+    }
+
+    /**
+     * Set the drawable that is shown in the slot of an item that has not been loaded yet.
+     * 
+     * @param _placeholder
+     *            the placeholder, null shows nothing.
+     * @since 1.0.4
+     */
+    public void setPlaceholder( Drawable _placeholder ) {
+        mPlaceholder = _placeholder;
+        invalidate();
+    }
+
+    /**
+     * Set how many items on each side of the current item are kept decoded. Default is 1, the previous and next items that are drawn while moving.
+     * 
+     * @param _limit
+     *            count of items on each side, >= 1.
+     * @since 1.0.3
+     */
+    public void setOffscreenLimit( int _limit ) {
+        mOffscreenLimit = Math.max( 1, _limit );
+        if( mAdapter != null ) {
+            updateWindow();
+        }
+    }
+
+    /**
+     * @param _position
+     *            the position of an item.
+     * @return true if the item should be kept decoded.
+     * @since 1.0.3
+     */
+    private boolean isInWindow( int _position ) {
+        return _position >= 0 && _position < mCount && Math.abs( _position - mCurrentPosition ) <= mOffscreenLimit;
+    }
+
+    /**
+     * Releases the items that have left the window around {@link #mCurrentPosition} and loads the items that have entered it.
+     * 
+     * @since 1.0.3
+     */
+    private void updateWindow() {
+        if( mAdapter == null ) {
+            return;
+        }
+        for( int i = mWindow.size() - 1; i >= 0; i-- ) {
+            int position = mWindow.keyAt( i );
+            if( !isInWindow( position ) ) {
+                Bitmap bmp = mWindow.valueAt( i );
+                mWindow.delete( position );
+                mAdapter.releaseBitmap( position, bmp );
+            }
+        }
+        int from = Math.max( 0, mCurrentPosition - mOffscreenLimit );
+        int to = Math.min( mCount - 1, mCurrentPosition + mOffscreenLimit );
+        // Load the current item first, then the neighbours.
+        loadIntoWindow( mCurrentPosition );
+        for( int distance = 1; distance <= mOffscreenLimit; distance++ ) {
+            if( mCurrentPosition + distance <= to ) {
+                loadIntoWindow( mCurrentPosition + distance );
+            }
+            if( mCurrentPosition - distance >= from ) {
+                loadIntoWindow( mCurrentPosition - distance );
+            }
+        }
+        updateDrawnItems();
+    }
+
+    /**
+     * Requests an item from {@link #mAdapter} if it has not been requested.
+     * 
+     * @param _position
+     *            the position of item.
+     * @since 1.0.3
+     */
+    private void loadIntoWindow( int _position ) {
+        if( _position >= 0 && _position < mCount && mWindow.indexOfKey( _position ) < 0 ) {
+            // A null value marks a pending item.
+            mWindow.put( _position, mAdapter.loadBitmap( _position ) );
+        }
+    }
+
+    /**
+     * Gives all items back to {@link #mAdapter}.
+     * 
+     * @since 1.0.3
+     */
+    private void releaseWindow() {
+        resetZoom();
+        if( mAdapter != null ) {
+            for( int i = 0; i < mWindow.size(); i++ ) {
+                mAdapter.releaseBitmap( mWindow.keyAt( i ), mWindow.valueAt( i ) );
+            }
+        }
+        mWindow.clear();
+        mCurBmp = null;
+        mNxtBmp = null;
+        mPrevImg = null;
+    }
+
+    /**
+     * Update the items that are drawn by {@link #onDraw(Canvas)}.
+     * 
+     * @since 1.0.3
+     */
+    private void updateDrawnItems() {
+        mCurBmp = mWindow.get( mCurrentPosition );
+        mNxtBmp = mWindow.get( mCurrentPosition + 1 );
+        mPrevImg = mWindow.get( mCurrentPosition - 1 );
+        if( mCurBmp != null ) {
+            mParent.findViewById( R.id.ll_gallery_pb ).setVisibility( View.GONE );
+        }
+        else if( mAdapter != null && mCount > 0 ) {
+            // The current item is still pending.
+            mParent.findViewById( R.id.ll_gallery_pb ).setVisibility( View.VISIBLE );
         }
     }
 
@@ -522,25 +848,8 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
      * @since 1.0
      */
     private void updateIndicator() {
-        if( mBitmaps != null && mDots != null && mDotUnselected != null && mDotSelected != null ) {
-            if( mDots.getChildCount() > 0 )
-                mDots.removeAllViews();
-
-            int cnt = mBitmaps.size();
-            for( int i = 0; i < cnt; i++ ) {
-                ImageView ivDot = new ImageView( getContext() );
-                if( mCurrentPosition == i ) {
-                    ivDot.setImageDrawable( mDotUnselected );// R.drawable.paginator_hero_inactive );
-                }
-                else {
-                    ivDot.setImageDrawable( mDotSelected );// R.drawable.paginator_hero_active );
-                }
-                ivDot.setPadding( 0, 0, 5, 0 );
-                mDots.addView( ivDot );
-                LinearLayout.LayoutParams params = (LayoutParams) ivDot.getLayoutParams();
-                params.gravity = Gravity.CENTER;
-                ivDot.setLayoutParams( params );
-            }
+        if( mDots != null ) {
+            mDots.setPosition( mCount, mCurrentPosition );
             mArrowLeftMovingRight.setVisibility( (mCurrentPosition <= 0) ? View.INVISIBLE : View.VISIBLE );
             mArrowMovingLeft.setVisibility( (mCurrentPosition >= mCount - 1) ? View.INVISIBLE : View.VISIBLE );
             mTriggerLeftMovingRight.setVisibility( (mCurrentPosition <= 0) ? View.INVISIBLE : View.VISIBLE );
@@ -558,104 +867,358 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
     @Override
     public void onDraw( Canvas c ) {
         super.onDraw( c );
+        if( isZoomed() ) {
+            drawZoomed( c );
+            return;
+        }
         if( mCurBmp != null ) {
-            c.drawBitmap( mCurBmp,
-                    mLeft,
-                    0,
-                    mPaint );
+            drawItem( c, mCurBmp, mLeft );
+            if( mMetrics != null ) {
+                mMetrics.onSlideDrawn();
+            }
+        }
+        else {
+            drawPlaceholder( c, mCurrentPosition, mLeft );
         }
         if( mNxtBmp != null ) {
-            c.drawBitmap( mNxtBmp,
-                    mLeft + mMaxWidthOfBitmaps + WIDTH_BETWEEN_ITEMS,
-                    0,
-                    mPaint );
+            drawItem( c, mNxtBmp, mLeft + mMaxWidthOfBitmaps + WIDTH_BETWEEN_ITEMS );
+        }
+        else {
+            drawPlaceholder( c, mCurrentPosition + 1, mLeft + mMaxWidthOfBitmaps + WIDTH_BETWEEN_ITEMS );
         }
         if( mPrevImg != null ) {
-            c.drawBitmap( mPrevImg,
-                    mLeft - mMaxWidthOfBitmaps - WIDTH_BETWEEN_ITEMS,
-                    0,
-                    mPaint );
+            drawItem( c, mPrevImg, mLeft - mMaxWidthOfBitmaps - WIDTH_BETWEEN_ITEMS );
+        }
+        else {
+            drawPlaceholder( c, mCurrentPosition - 1, mLeft - mMaxWidthOfBitmaps - WIDTH_BETWEEN_ITEMS );
+        }
+    }
+
+    /**
+     * Draw the current item zoomed. The item is scaled up as background, the tiles of its original file are drawn over it when they are ready.
+     * 
+     * @param _c
+     *            the canvas.
+     * @since 1.0.6
+     */
+    private void drawZoomed( Canvas _c ) {
+        _c.save();
+        _c.clipRect( 0, 0, getWidth(), getHeight() );
+        if( mCurBmp != null ) {
+            _c.save();
+            _c.translate( mPanX, mPanY );
+            _c.scale( mZoom, mZoom );
+            _c.drawBitmap( mCurBmp, 0, 0, mTilePaint );
+            _c.restore();
+        }
+        if( mTiles != null ) {
+            // The scale from the original image to the screen.
+            float scale = mMaxWidthOfBitmaps * mZoom / mTiles.getWidth();
+            int sample = LLTileDecoder.sampleFor( scale );
+            int tileSize = LLTileDecoder.TILE_SIZE * sample;
+            int left = (int) Math.max( 0, -mPanX / scale );
+            int top = (int) Math.max( 0, -mPanY / scale );
+            int right = (int) Math.min( mTiles.getWidth(), (getWidth() - mPanX) / scale );
+            int bottom = (int) Math.min( mTiles.getHeight(), (getHeight() - mPanY) / scale );
+            mTiles.beginFrame();
+            for( int row = top / tileSize; row * tileSize < bottom; row++ ) {
+                for( int col = left / tileSize; col * tileSize < right; col++ ) {
+                    Bitmap tile = mTiles.getTile( sample, col, row );
+                    if( tile != null ) {
+                        float x = mPanX + col * tileSize * scale;
+                        float y = mPanY + row * tileSize * scale;
+                        mTileRect.set( x, y, x + tile.getWidth() * sample * scale, y + tile.getHeight() * sample * scale );
+                        _c.drawBitmap( tile, null, mTileRect, mTilePaint );
+                    }
+                }
+            }
+        }
+        _c.restore();
+    }
+
+    /**
+     * @return true if the current item has been zoomed.
+     * @since 1.0.6
+     */
+    private boolean isZoomed() {
+        return mZoom > 1f;
+    }
+
+    /**
+     * Set whether the current item can be zoomed with two fingers. Only a swipable view can be zoomed.
+     * 
+     * @param _zoomable
+     *            true if zoomable, default is false.
+     * @since 1.0.6
+     */
+    public void setZoomable( boolean _zoomable ) {
+        mZoomable = _zoomable && mSwipable;
+        if( mZoomable && mScaleDetector == null ) {
+            mScaleDetector = new ScaleGestureDetector( getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                @Override
+                public boolean onScale( ScaleGestureDetector _detector ) {
+                    zoomTo( mZoom * _detector.getScaleFactor(), _detector.getFocusX(), _detector.getFocusY() );
+                    return true;
+                }
+            } );
+        }
+        else if( !mZoomable ) {
+            mScaleDetector = null;
+            resetZoom();
+        }
+    }
+
+    /**
+     * Set the max zoom of an item.
+     * 
+     * @param _maxZoom
+     *            the max factor, default is 4.
+     * @since 1.0.6
+     */
+    public void setMaxZoom( float _maxZoom ) {
+        mMaxZoom = Math.max( 1f, _maxZoom );
+    }
+
+    /**
+     * Zoom the current item and keep the point under the fingers.
+     * 
+     * @param _zoom
+     *            the new zoom.
+     * @param _focusX
+     *            x of the focus in the view.
+     * @param _focusY
+     *            y of the focus in the view.
+     * @since 1.0.6
+     */
+    private void zoomTo( float _zoom, float _focusX, float _focusY ) {
+        float zoom = Math.max( 1f, Math.min( mMaxZoom, _zoom ) );
+        if( zoom <= 1f ) {
+            resetZoom();
+            invalidate();
+            return;
+        }
+        if( !isZoomed() ) {
+            // Begin zooming, the item stays at its slot.
+            stopMoving();
+            mLeft = 0;
+            mPanX = 0;
+            mPanY = 0;
+            openTiles();
+        }
+        mPanX = _focusX - (_focusX - mPanX) * zoom / mZoom;
+        mPanY = _focusY - (_focusY - mPanY) * zoom / mZoom;
+        mZoom = zoom;
+        panBy( 0, 0 );
+    }
+
+    /**
+     * Move the zoomed item, it can't be moved out of the view.
+     * 
+     * @param _dx
+     *            delta in x.
+     * @param _dy
+     *            delta in y.
+     * @since 1.0.6
+     */
+    private void panBy( float _dx, float _dy ) {
+        float width = mMaxWidthOfBitmaps * mZoom;
+        float height = (mCurBmp != null ? mCurBmp.getHeight() : getHeight()) * mZoom;
+        mPanX = Math.max( Math.min( 0, getWidth() - width ), Math.min( 0, mPanX + _dx ) );
+        mPanY = Math.max( Math.min( 0, getHeight() - height ), Math.min( 0, mPanY + _dy ) );
+        invalidate();
+    }
+
+    /**
+     * Open the original file of the current item for tiles. The file is opened in the background, the item is drawn scaled until the tiles are there.
+     * 
+     * @since 1.0.6
+     */
+    private void openTiles() {
+        if( mTiles != null || mOpeningTiles || !(mAdapter instanceof ILLGalleryTileSource) ) {
+            return;
+        }
+        final int position = mCurrentPosition;
+        mOpeningTiles = true;
+        LLTileDecoder.open( (ILLGalleryTileSource) mAdapter, position, new LLTileDecoder.OnOpenedListener() {
+            @Override
+            public void onOpened( LLTileDecoder _tiles ) {
+                mOpeningTiles = false;
+                if( _tiles == null ) {
+                    return;
+                }
+                if( !isZoomed() || mTiles != null || position != mCurrentPosition ) {
+                    // Zoom has been reset or another item is zoomed meanwhile.
+                    _tiles.recycle();
+                    if( isZoomed() ) {
+                        openTiles();
+                    }
+                    return;
+                }
+                mTiles = _tiles;
+                int cols = getWidth() / LLTileDecoder.TILE_SIZE + 2;
+                int rows = getHeight() / LLTileDecoder.TILE_SIZE + 2;
+                // Tiles of the view, a part of them at the next level while zooming.
+                mTiles.setMaxTiles( Math.max( LLTileDecoder.DEFAULT_MAX_TILES, cols * rows * 2 ) );
+                mTiles.setOnTileLoadedListener( new LLTileDecoder.OnTileLoadedListener() {
+                    @Override
+                    public void onTileLoaded() {
+                        invalidate();
+                    }
+                } );
+                invalidate();
+            }
+        } );
+    }
+
+    /**
+     * Show the current item unzoomed and release the tiles.
+     * 
+     * @since 1.0.6
+     */
+    private void resetZoom() {
+        mZoom = 1f;
+        mPanX = 0;
+        mPanY = 0;
+        if( mTiles != null ) {
+            mTiles.recycle();
+            mTiles = null;
+        }
+    }
+
+    /**
+     * Draw an item at its slot.
+     * 
+     * @param _c
+     *            the canvas.
+     * @param _bmp
+     *            the item.
+     * @param _left
+     *            the left of the slot.
+     * @since 1.0.12
+     */
+    private void drawItem( Canvas _c, Bitmap _bmp, int _left ) {
+        int width = _bmp.getWidth();
+        if( mScaleToSlot && width > 0 && width < mMaxWidthOfBitmaps ) {
+            // A thumbnail, the full item follows.
+            mItemRect.set( _left, 0, _left + mMaxWidthOfBitmaps, (float) _bmp.getHeight() * mMaxWidthOfBitmaps
+                    / width );
+            _c.drawBitmap( _bmp, null, mItemRect, mTilePaint );
+        }
+        else {
+            _c.drawBitmap( _bmp, _left, 0, mPaint );
+        }
+    }
+
+    /**
+     * Draw {@link #mPlaceholder} in the slot of an item that is pending.
+     * 
+     * @param _c
+     *            the canvas.
+     * @param _position
+     *            the position of the item.
+     * @param _left
+     *            the left edge of the slot.
+     * @since 1.0.4
+     */
+    private void drawPlaceholder( Canvas _c, int _position, int _left ) {
+        if( mPlaceholder != null && _position >= 0 && _position < mCount ) {
+            mPlaceholder.setBounds( _left, 0, _left + mMaxWidthOfBitmaps, getHeight() );
+            mPlaceholder.draw( _c );
         }
     }
 
     /**
      * Helper class that provides an illusion that an item moves animatedly.
+     * <p>
+     * The item moves from the current {@link #mLeft} to the slot of the next or previous item, or back to 0 when there is no item in {@link #mDirection}. The offset is calculated from the elapsed
+     * time with {@link #mInterpolator}, so that the speed doesn't depend on the load of device. Each frame is drawn once.
      * 
      * @since 1.0
      */
     private class Moving implements Runnable
     {
+        private int  mFrom;
+        private int  mTo;
+        private long mStartTime = -1;
+        private long mDuration;
+
         @Override
         public void run() {
-            int stop = calcBound();
+            long now = SystemClock.uptimeMillis();
+            if( mStartTime < 0 ) {
+                begin( now );
+            }
 
             // ------------------------------------------
-            // Begin to draw bitmap
+            // Draw the frame of elapsed time.
             // ------------------------------------------
-            start();
-
-            // -----------------------------------------------------------------
-            // Stop animation when the left edge reach the bound of gallery.
-            // -----------------------------------------------------------------
+            if( mMetrics != null ) {
+                mMetrics.onFrame( now );
+            }
+            float progress = mDuration > 0 ? Math.min( 1f, (float) (now - mStartTime) / mDuration ) : 1f;
+            mLeft = mFrom + Math.round( (mTo - mFrom) * mInterpolator.getInterpolation( progress ) );
 
-            if( isOutOfBound( stop ) ) {
+            if( progress >= 1f ) {
+                // -----------------------------------------------------------------
+                // The item has reached its slot.
+                // -----------------------------------------------------------------
                 mLeft = 0;
-                if( (mSwipable && mCurrentPosition > MINUS && mCurrentPosition < mBitmaps.size())
-                        ||
-                        (mCurrentPosition >= -1 && mCurrentPosition <= mBitmaps.size()) ) {
+                if( mTo != 0 ) {
                     calcCurrentPosition();
                 }
+                drawItem();
 
                 // ------------------------------------------
                 // End of drawing a bitmap
                 // ------------------------------------------
+                if( mMetrics != null ) {
+                    mMetrics.onTransitionEnd( SystemClock.uptimeMillis() );
+                }
                 stop();
             }
             else {
-                mMoveHandler.post( this );
+                drawItem();
+                // Keep the pace even when drawing took a part of the frame.
+                long spent = SystemClock.uptimeMillis() - now;
+                mMoveHandler.postDelayed( this, Math.max( 0, FRAME_DELAY - spent ) );
             }
         }
 
-        private void calcCurrentPosition() {
-            mCurrentPosition += (mDirection == PLUS) ? PLUS : MINUS;
-            mCurrentPosition = (mCurrentPosition == -1) ? 0 : mCurrentPosition;
-            mCurrentPosition = (mCurrentPosition == mBitmaps.size()) ? mCurrentPosition - 1 : mCurrentPosition;
-
-            mCurBmp = mBitmaps.get( mCurrentPosition );
-            mNxtBmp = (mBitmaps.size() > mCurrentPosition + 1) ? mBitmaps.get( mCurrentPosition + 1 ) : null;
-            mPrevImg = (mCurrentPosition - 1 > MINUS) ? mBitmaps.get( mCurrentPosition - 1 ) : null;
-        }
-
-        private boolean isOutOfBound( int stop ) {
-            return (mLeft < -(stop * metrics.density) && mCurrentPosition + 1 != mBitmaps.size())
-                    ||
-                    (mLeft > (stop * metrics.density) && mCurrentPosition != 0);
-        }
-
-        private int calcBound() {
-            int stop = 0;
-            if( mDirection == PLUS && mCurrentPosition + 1 < mBitmaps.size() ) {
-                mLeft -= MOVE_UNIT;
-                stop = 320;
-            }
-            else if( mDirection == PLUS && mCurrentPosition + 1 == mBitmaps.size() ) {
-                mLeft += MOVE_UNIT;
-                stop = 0;
+        /**
+         * Calculates where the item moves to.
+         */
+        private void begin( long _now ) {
+            int width = mMaxWidthOfBitmaps + WIDTH_BETWEEN_ITEMS;
+            mFrom = mLeft;
+            if( mDirection == PLUS && mCurrentPosition + 1 < mCount ) {
+                mTo = -width;
             }
             else if( mDirection == MINUS && mCurrentPosition != 0 ) {
-                mLeft += MOVE_UNIT;
-                stop = 320;
+                mTo = width;
+            }
+            else {
+                // No item in this direction, move back.
+                mTo = 0;
             }
-            else if( mDirection == MINUS && mCurrentPosition == 0 ) {
-                mLeft -= MOVE_UNIT;
-                stop = 0;
+            // A part of the way takes a part of the time.
+            mDuration = width > 0 ? (long) mMoveDuration * Math.abs( mTo - mFrom ) / width : 0;
+            mStartTime = _now;
+            mCanClickButton = false;
+            if( mMetrics != null ) {
+                mMetrics.onTransitionStart( _now );
             }
-            return stop;
         }
 
-        private void start() {
-            drawItem();
-            mCanClickButton = false;
+        private void calcCurrentPosition() {
+            int oldPosition = mCurrentPosition;
+            mCurrentPosition += (mDirection == PLUS) ? PLUS : MINUS;
+            mCurrentPosition = (mCurrentPosition == -1) ? 0 : mCurrentPosition;
+            mCurrentPosition = (mCurrentPosition == mCount) ? mCurrentPosition - 1 : mCurrentPosition;
+
+            updateWindow();
+            if( mOnPositionChangedListener != null && oldPosition != mCurrentPosition ) {
+                mOnPositionChangedListener.onPositionChanged( mCurrentPosition, mDirection );
+            }
         }
 
         private void stop() {
@@ -665,6 +1228,47 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
         }
     }
 
+    /**
+     * Set the {@link LLGalleryMetrics} that records the frames of transitions and the first drawn item. It should be set before the items.
+     * 
+     * @param _metrics
+     *            the metrics, null to stop recording.
+     * @since 1.0.9
+     */
+    public void setMetrics( LLGalleryMetrics _metrics ) {
+        mMetrics = _metrics;
+    }
+
+    /**
+     * @since 1.0.9
+     * @return the {@link LLGalleryMetrics} or null if nothing is recorded.
+     */
+    public LLGalleryMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Set the {@link Interpolator} of moving items, default is a {@link DecelerateInterpolator}.
+     * 
+     * @param _interpolator
+     *            the interpolator.
+     * @since 1.0.5
+     */
+    public void setInterpolator( Interpolator _interpolator ) {
+        mInterpolator = _interpolator != null ? _interpolator : new DecelerateInterpolator();
+    }
+
+    /**
+     * Set the duration of moving a whole item.
+     * 
+     * @param _duration
+     *            the duration in ms, default is 300.
+     * @since 1.0.5
+     */
+    public void setMoveDuration( int _duration ) {
+        mMoveDuration = Math.max( 0, _duration );
+    }
+
     @Override
     public void onClick( View _v ) {
         if( _v == this && !mSwipable ) {
@@ -711,6 +1315,7 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
     private void moveItem() {
         if( mCount > 1 ) {
             stopMoving();
+            mMoving = true;
             mMoveHandler.post( moving = new Moving() );
         }
     }
@@ -721,6 +1326,7 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
      * @since 1.0
      */
     private void stopMoving() {
+        mMoving = false;
         if( moving != null ) {
             mMoveHandler.removeCallbacks( moving );
             onItemScrolled();
@@ -753,7 +1359,7 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
      * @since 1.0
      */
     public void setDotSelected( Drawable _dotSelected ) {
-        mDotSelected = _dotSelected;
+        mDots.setDotSelected( _dotSelected );
     }
 
     /**
@@ -763,7 +1369,7 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
      * @since 1.0
      */
     public void setDotUnselected( Drawable _dotUnselected ) {
-        mDotUnselected = _dotUnselected;
+        mDots.setDotUnselected( _dotUnselected );
     }
 
     /**
@@ -778,38 +1384,154 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
     }
 
     /**
-     * Stop timer for moving items automatically.
+     * Roll to the next item, the first item follows the last one. It's called on the UI thread.
      * 
-     * @since 1.0
+     * @since 1.0.7
      */
-    private void stopAutoRollTimer() {
-        if( mAutoRollTimer != null ) {
-            mAutoRollTimer.cancel();
-            mAutoRollTimer.purge();
-            mAutoRollTimer = null;
+    private void autoRoll() {
+        if( !canAutoRoll() ) {
+            return;
+        }
+        if( mMoving || isZoomed() ) {
+            // The last one is still running, skip this tick.
+            LL.d( ":| Skip a tick of rolling." );
+        }
+        else if( mCurrentPosition >= mCount - 1 ) {
+            jumpTo( 0 );
+        }
+        else {
+            moveRight();
+        }
+        prefetchAfterNext();
+        scheduleAutoRoll();
+    }
+
+    /**
+     * Show an item without moving.
+     * 
+     * @param _position
+     *            the position of the item.
+     * @since 1.0.7
+     */
+    private void jumpTo( int _position ) {
+        int oldPosition = mCurrentPosition;
+        mCurrentPosition = _position;
+        mLeft = 0;
+        updateWindow();
+        invalidate();
+        updateIndicator();
+        if( mOnPositionChangedListener != null && oldPosition != mCurrentPosition ) {
+            mOnPositionChangedListener.onPositionChanged( mCurrentPosition, mDirection );
         }
     }
 
     /**
-     * Start timer to control moving items automatically.
+     * The item that the next tick rolls to is in the window already, load the one after it, so that it's ready before it's shown. The first item follows the last one.
+     * 
+     * @since 1.0.7
+     */
+    private void prefetchAfterNext() {
+        if( mAdapter == null || mCount < 2 ) {
+            return;
+        }
+        int position = (mCurrentPosition + 2) % mCount;
+        if( !isInWindow( position ) ) {
+            Bitmap bmp = mAdapter.loadBitmap( position );
+            if( bmp != null ) {
+                // Only warm up the source, the window takes it when it's its turn.
+                mAdapter.releaseBitmap( position, bmp );
+            }
+        }
+    }
+
+    /**
+     * @return true if items should roll now.
+     * @since 1.0.7
+     */
+    private boolean canAutoRoll() {
+        return !mSwipable && mAutoRate > 0 && mCount > 1 && mAttached && mScreenOn && isShown();
+    }
+
+    /**
+     * Schedule the next tick of rolling.
+     * 
+     * @since 1.0.7
+     */
+    private void scheduleAutoRoll() {
+        if( !mAutoRollScheduled ) {
+            mAutoRollScheduled = true;
+            mMoveHandler.postDelayed( mAutoRoll, mAutoRate );
+        }
+    }
+
+    /**
+     * Stop rolling items automatically.
      * 
      * @since 1.0
      */
-    private void startAutoRollTimer() {
-        if( mCount > 1 ) {
-            stopAutoRollTimer();
-            mAutoRollTimer = new Timer( true );
-            mAutoRollTimer.scheduleAtFixedRate( new TimerTask() {
+    private void stopAutoRoll() {
+        mMoveHandler.removeCallbacks( mAutoRoll );
+        mAutoRollScheduled = false;
+    }
+
+    /**
+     * Start or pause rolling items automatically when the state of the view has changed.
+     * 
+     * @since 1.0.7
+     */
+    private void updateAutoRoll() {
+        if( canAutoRoll() ) {
+            scheduleAutoRoll();
+        }
+        else {
+            stopAutoRoll();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        LLMemoryManager.getInstance().register( this );
+        mScreenOn = ((PowerManager) getContext().getSystemService( Context.POWER_SERVICE )).isScreenOn();
+        if( mScreenReceiver == null ) {
+            mScreenReceiver = new BroadcastReceiver() {
                 @Override
-                public void run()
-                {
-                    if( mCurrentPosition == mCount - 1 ) {
-                        mCurrentPosition = -1;
-                    }
-                    moveRight();
+                public void onReceive( Context _context, Intent _intent ) {
+                    mScreenOn = Intent.ACTION_SCREEN_ON.equals( _intent.getAction() );
+                    updateAutoRoll();
                 }
-            }, mAutoRate, mAutoRate );
+            };
+            IntentFilter filter = new IntentFilter( Intent.ACTION_SCREEN_ON );
+            filter.addAction( Intent.ACTION_SCREEN_OFF );
+            getContext().registerReceiver( mScreenReceiver, filter );
         }
+        updateAutoRoll();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mAttached = false;
+        LLMemoryManager.getInstance().unregister( this );
+        if( mScreenReceiver != null ) {
+            getContext().unregisterReceiver( mScreenReceiver );
+            mScreenReceiver = null;
+        }
+        stopAutoRoll();
+        stopMoving();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged( int _visibility ) {
+        super.onWindowVisibilityChanged( _visibility );
+        updateAutoRoll();
+    }
+
+    @Override
+    protected void onVisibilityChanged( View _changedView, int _visibility ) {
+        super.onVisibilityChanged( _changedView, _visibility );
+        updateAutoRoll();
     }
 
     /**
@@ -820,18 +1542,72 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
      */
     public void setAutoRate( int _autoRate ) {
         mAutoRate = _autoRate;
+        stopAutoRoll();
+        updateAutoRoll();
     }
 
     @Override
     public void onConfigurationChanged( Configuration _newConfig ) {
         stopMoving();
-        stopAutoRollTimer();
+        // Start a new period.
+        stopAutoRoll();
+        updateAutoRoll();
     }
 
     @Override
     public void onLowMemory() {
         stopMoving();
-        stopAutoRollTimer();
+        stopAutoRoll();
+        updateAutoRoll();
+        resetZoom();
+    }
+
+    @Override
+    public void onTrimMemory( int _level ) {
+        if( _level >= LLMemoryManager.TRIM_MEMORY_RUNNING_CRITICAL ) {
+            resetZoom();
+            if( !mMoving ) {
+                releaseOffscreenItems();
+            }
+        }
+    }
+
+    /**
+     * Gives the items beside the current one back to {@link #mAdapter}, they're loaded again when the current item changes.
+     * 
+     * @since 1.0.10
+     */
+    private void releaseOffscreenItems() {
+        if( mAdapter == null ) {
+            return;
+        }
+        for( int i = mWindow.size() - 1; i >= 0; i-- ) {
+            int position = mWindow.keyAt( i );
+            if( position != mCurrentPosition ) {
+                Bitmap bmp = mWindow.valueAt( i );
+                mWindow.delete( position );
+                mAdapter.releaseBitmap( position, bmp );
+            }
+        }
+        updateDrawnItems();
+        invalidate();
+    }
+
+    /**
+     * Show an item without moving.
+     * 
+     * @param _position
+     *            the position of the item.
+     * @since 1.0.11
+     */
+    public void setCurrentPosition( int _position ) {
+        if( _position < 0 || _position >= mCount || _position == mCurrentPosition ) {
+            return;
+        }
+        stopMoving();
+        resetZoom();
+        jumpTo( _position );
+        onItemScrolled();
     }
 
     /**
@@ -843,4 +1619,64 @@ class LLSlideView extends View implements ComponentCallbacks, OnGestureListener,
     public int getCurrentPosition() {
         return mCurrentPosition;
     }
+
+    /**
+     * Get the direction of the last move.
+     * 
+     * @return 1 if the user has moved to the next items, -1 to the previous ones.
+     * @since 1.0.4
+     */
+    public int getDirection() {
+        return mDirection;
+    }
+
+    /**
+     * {@link ILLGalleryAdapter} on a list of bitmaps that have been loaded by the client.
+     * 
+     * @since 1.0.3
+     */
+    private static class ListAdapter implements ILLGalleryAdapter
+    {
+        private final List<Bitmap> mList;
+
+        ListAdapter( List<Bitmap> _list ) {
+            mList = _list;
+        }
+
+        @Override
+        public int getCount() {
+            return mList.size();
+        }
+
+        @Override
+        public Bitmap loadBitmap( int _position ) {
+            return mList.get( _position );
+        }
+
+        @Override
+        public void releaseBitmap( int _position, Bitmap _bitmap ) {
+            // The list is owned by the client.
+        }
+    }
+
+    /**
+     * A view on the decoded items for listeners, the items out of the window are null.
+     * 
+     * @since 1.0.3
+     */
+    private class WindowList extends AbstractList<Bitmap>
+    {
+        @Override
+        public Bitmap get( int _location ) {
+            if( _location < 0 || _location >= mCount ) {
+                throw new IndexOutOfBoundsException();
+            }
+            return mWindow.get( _location );
+        }
+
+        @Override
+        public int size() {
+            return mCount;
+        }
+    }
 }
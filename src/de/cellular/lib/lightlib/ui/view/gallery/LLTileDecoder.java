@@ -0,0 +1,354 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cellular.lib.lightlib.ui.view.gallery;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import de.cellular.lib.lightlib.concurrent.LLThreadPoolWrapper;
+import de.cellular.lib.lightlib.log.LL;
+import de.cellular.lib.lightlib.ui.view.gallery.base.ILLGalleryTileSource;
+
+/**
+ * Decodes tiles of a large image file with a {@link BitmapRegionDecoder}, so that a zoomed item can be drawn at the resolution of the screen without decoding the whole image.
+ * <p>
+ * A tile covers {@link #TILE_SIZE} pixels of the decoded bitmap, i.e TILE_SIZE * sample pixels of the image. The tiles are decoded one by one on a background thread, a tile that isn't visible
+ * anymore when its turn comes is skipped. The decoded tiles are kept in a small LRU.
+ *
+ * @version <strong>1.0.1</strong> <li>Read the image from an opened file instead of its path, it's opened on the background thread.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+class LLTileDecoder
+{
+    /**
+     * Size of a decoded tile in pixels.
+     */
+    static final int                           TILE_SIZE         = 256;
+    /**
+     * Default count of tiles that are kept.
+     */
+    static final int                           DEFAULT_MAX_TILES = 24;
+
+    /**
+     * Event when a decoder has been opened in the background, see {@link LLTileDecoder#open(ILLGalleryTileSource, int, OnOpenedListener)}.
+     */
+    interface OnOpenedListener
+    {
+        /**
+         * It's called on the UI thread.
+         *
+         * @param _decoder
+         *            the decoder, null if the image can't be opened.
+         */
+        void onOpened( LLTileDecoder _decoder );
+    }
+
+    /**
+     * Event when a tile has been decoded.
+     */
+    interface OnTileLoadedListener {
+        /**
+         * A tile has been decoded, it's called on the UI thread.
+         */
+        void onTileLoaded();
+    }
+
+    private static LLThreadPoolWrapper         sWorker;
+
+    private final BitmapRegionDecoder          mDecoder;
+    private final FileInputStream              mSource;
+    private final LinkedHashMap<String, Bitmap> mTiles            = new LinkedHashMap<String, Bitmap>( 0, 0.75f,
+                                                                          true );
+    private final HashSet<String>              mPending          = new HashSet<String>();
+    private final HashSet<String>              mVisible          = new HashSet<String>();
+    private final Handler                      mHandler          = new Handler( Looper.getMainLooper() );
+    private final int                          mWidth;
+    private final int                          mHeight;
+    private int                                mMaxTiles         = DEFAULT_MAX_TILES;
+    private OnTileLoadedListener               mListener;
+    private volatile boolean                   mRecycled;
+
+    private LLTileDecoder( BitmapRegionDecoder _decoder, FileInputStream _source ) {
+        mDecoder = _decoder;
+        mSource = _source;
+        mWidth = _decoder.getWidth();
+        mHeight = _decoder.getHeight();
+    }
+
+    /**
+     * Opens an image file. The decoder reads the file by its descriptor, the file is kept open until {@link #recycle()}.
+     *
+     * @param _source
+     *            JPEG or PNG, it's closed by the decoder, also when it can't be opened.
+     * @return the decoder.
+     * @throws IOException
+     *             the file can't be read or its format isn't supported.
+     */
+    static LLTileDecoder open( FileInputStream _source ) throws IOException {
+        try {
+            return new LLTileDecoder( BitmapRegionDecoder.newInstance( _source.getFD(), false ), _source );
+        }
+        catch( IOException _e ) {
+            closeSource( _source );
+            throw _e;
+        }
+    }
+
+    /**
+     * Opens the image of an item on the background thread, the disk isn't read on the UI thread.
+     *
+     * @param _source
+     *            the source of the image.
+     * @param _position
+     *            the position of the item.
+     * @param _listener
+     *            gets the decoder on the UI thread.
+     */
+    static void open( final ILLGalleryTileSource _source, final int _position, final OnOpenedListener _listener ) {
+        final Handler handler = new Handler( Looper.getMainLooper() );
+        getWorker().execute( new Runnable() {
+            @Override
+            public void run() {
+                LLTileDecoder decoder = null;
+                FileInputStream in = _source.openSource( _position );
+                if( in != null ) {
+                    try {
+                        decoder = open( in );
+                    }
+                    catch( IOException _e ) {
+                        LL.e( ":( Can't open tiles of " + _position + ": " + _e.toString() );
+                    }
+                }
+                final LLTileDecoder opened = decoder;
+                handler.post( new Runnable() {
+                    @Override
+                    public void run() {
+                        _listener.onOpened( opened );
+                    }
+                } );
+            }
+        } );
+    }
+
+    private static void closeSource( FileInputStream _source ) {
+        try {
+            _source.close();
+        }
+        catch( IOException _e ) {
+            LL.w( ":| Can't close the source of tiles: " + _e.toString() );
+        }
+    }
+
+    private static synchronized LLThreadPoolWrapper getWorker() {
+        if( sWorker == null ) {
+            sWorker = LLThreadPoolWrapper.newPausableThreadPool( 1, 1, new ThreadPoolExecutor.DiscardPolicy() );
+        }
+        return sWorker;
+    }
+
+    /**
+     * Gets the largest power of two subsampling that still shows the image at least at the resolution of _scale.
+     *
+     * @param _scale
+     *            the ratio of the drawn size to the size of the image.
+     * @return the sample.
+     */
+    static int sampleFor( float _scale ) {
+        int sample = 1;
+        while( _scale > 0 && sample * 2 * _scale <= 1f ) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * @return the width of the image.
+     */
+    int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return the height of the image.
+     */
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Set the listener that is informed when a tile has been decoded.
+     *
+     * @param _listener
+     */
+    void setOnTileLoadedListener( OnTileLoadedListener _listener ) {
+        mListener = _listener;
+    }
+
+    /**
+     * Set how many tiles are kept, it should be a few more than the tiles that cover the view.
+     *
+     * @param _maxTiles
+     *            the count of tiles.
+     */
+    synchronized void setMaxTiles( int _maxTiles ) {
+        mMaxTiles = Math.max( 1, _maxTiles );
+        trim();
+    }
+
+    /**
+     * Starts a new frame, only the tiles that are requested after it are decoded.
+     */
+    synchronized void beginFrame() {
+        mVisible.clear();
+    }
+
+    /**
+     * Gets a tile. A tile that has not been decoded is queued for decoding.
+     *
+     * @param _sample
+     *            the subsampling, a power of two.
+     * @param _col
+     *            the column of the tile.
+     * @param _row
+     *            the row of the tile.
+     * @return the tile or null if it's not ready.
+     */
+    synchronized Bitmap getTile( final int _sample, int _col, int _row ) {
+        if( mRecycled ) {
+            return null;
+        }
+        final String key = _sample + ":" + _col + ":" + _row;
+        mVisible.add( key );
+        Bitmap tile = mTiles.get( key );
+        if( tile == null && !mPending.contains( key ) ) {
+            int size = TILE_SIZE * _sample;
+            final Rect region = new Rect( _col * size, _row * size, Math.min( mWidth, (_col + 1) * size ), Math.min(
+                    mHeight, (_row + 1) * size ) );
+            if( region.isEmpty() ) {
+                return null;
+            }
+            mPending.add( key );
+            getWorker().execute( new Runnable() {
+                @Override
+                public void run() {
+                    decodeTile( key, region, _sample );
+                }
+            } );
+        }
+        return tile;
+    }
+
+    /**
+     * Decodes a tile on the background thread.
+     */
+    private void decodeTile( String _key, Rect _region, int _sample ) {
+        synchronized( this ) {
+            if( mRecycled || !mVisible.contains( _key ) ) {
+                // It has been scrolled out of the view.
+                mPending.remove( _key );
+                return;
+            }
+        }
+        Bitmap tile = null;
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = _sample;
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            tile = mDecoder.decodeRegion( _region, options );
+        }
+        catch( Exception _e ) {
+            LL.e( ":( Can't decode tile " + _key + ": " + _e.toString() );
+        }
+        synchronized( this ) {
+            mPending.remove( _key );
+            if( tile == null ) {
+                return;
+            }
+            if( mRecycled ) {
+                tile.recycle();
+                return;
+            }
+            mTiles.put( _key, tile );
+            trim();
+        }
+        mHandler.post( new Runnable() {
+            @Override
+            public void run() {
+                if( mListener != null && !mRecycled ) {
+                    mListener.onTileLoaded();
+                }
+            }
+        } );
+    }
+
+    /**
+     * Removes the least recently used tiles until only {@link #mMaxTiles} are kept.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Bitmap>> it = mTiles.entrySet().iterator();
+        while( mTiles.size() > mMaxTiles && it.hasNext() ) {
+            recycleLater( it.next().getValue() );
+            it.remove();
+        }
+    }
+
+    /**
+     * Recycles a tile on the UI thread, so that it's not recycled while it's being drawn.
+     */
+    private void recycleLater( final Bitmap _tile ) {
+        mHandler.post( new Runnable() {
+            @Override
+            public void run() {
+                _tile.recycle();
+            }
+        } );
+    }
+
+    /**
+     * Releases all tiles and the decoder.
+     */
+    void recycle() {
+        synchronized( this ) {
+            mRecycled = true;
+            for( Bitmap tile : mTiles.values() ) {
+                recycleLater( tile );
+            }
+            mTiles.clear();
+            mVisible.clear();
+        }
+        // The decoder is recycled after the running decode has finished.
+        getWorker().execute( new Runnable() {
+            @Override
+            public void run() {
+                mDecoder.recycle();
+                closeSource( mSource );
+            }
+        } );
+    }
+}
@@ -25,6 +25,7 @@ import de.cellular.lib.lightlib.ui.view.gallery.LLGallery.CommentPosition;
 /**
  * Provides generic interface for a LLGallery.
  * 
+ * @version <strong>1.0.3 </strong> <li>Add {@link #setAdapter(ILLGalleryAdapter, int, int)} and {@link #setItemBitmap(int, Bitmap)}</li>
  * @version <strong>1.0.2 </strong> <li>Removed unused functions after changing {@link LLGallery} to 1.0.5</li>
  * @version <strong>1.0.1 </strong> <li>Add {@link #showComment}</li>
  * @version <strong>1.0</strong>
@@ -51,6 +52,30 @@ public interface ILLGallery {
      */
     void setImages( List<Bitmap> _bitmaps );
 
+    /**
+     * Set item source that provides items on demand. Only the items around the current one are kept decoded.
+     * 
+     * @since 1.0.3
+     * @param _adapter
+     *            the data source
+     * @param _itemWidth
+     *            the width of each item.
+     * @param _itemHeight
+     *            the height of each item.
+     */
+    void setAdapter( ILLGalleryAdapter _adapter, int _itemWidth, int _itemHeight );
+
+    /**
+     * Pass an item that has been loaded later by the {@link ILLGalleryAdapter}.
+     * 
+     * @since 1.0.3
+     * @param _position
+     *            the position of the item.
+     * @param _bmp
+     *            the item.
+     */
+    void setItemBitmap( int _position, Bitmap _bmp );
+
     /**
      * Append an item
      * 
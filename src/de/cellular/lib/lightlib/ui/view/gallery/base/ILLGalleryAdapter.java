@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cellular.lib.lightlib.ui.view.gallery.base;
+
+import android.graphics.Bitmap;
+import de.cellular.lib.lightlib.ui.view.gallery.LLGallery;
+
+/**
+ * Data source of a {@link LLGallery} that provides items on demand.
+ * <p>
+ * The gallery only keeps the items around the current one decoded, see {@link LLGallery#setOffscreenLimit(int)}. An item that enters this window is requested with {@link #loadBitmap(int)}, an item
+ * that leaves it is given back with {@link #releaseBitmap(int, Bitmap)}.
+ *
+ * @version <strong>1.0</strong>
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public interface ILLGalleryAdapter {
+
+    /**
+     * @since 1.0
+     * @return the count of all items.
+     */
+    int getCount();
+
+    /**
+     * Loads an item.
+     * <p>
+     * If the item can't be provided immediately, i.e it must be downloaded, return null and pass it later with {@link ILLGallery#setItemBitmap(int, Bitmap)}.
+     *
+     * @since 1.0
+     * @param _position
+     *            the position of the item.
+     * @return the item or null if it will be provided later.
+     */
+    Bitmap loadBitmap( int _position );
+
+    /**
+     * An item isn't needed by the gallery anymore. It could be recycled or kept in a cache. A pending load for the item could be cancelled.
+     * <p>
+     * Every item that the gallery has got from {@link #loadBitmap(int)} or {@link ILLGallery#setItemBitmap(int, Bitmap)} is released once, also an item that has been given twice.
+     *
+     * @since 1.0
+     * @param _position
+     *            the position of the item.
+     * @param _bitmap
+     *            the item, it's null if it has not been loaded.
+     */
+    void releaseBitmap( int _position, Bitmap _bitmap );
+}
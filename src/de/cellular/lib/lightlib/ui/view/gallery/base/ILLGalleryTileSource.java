@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cellular.lib.lightlib.ui.view.gallery.base;
+
+import java.io.FileInputStream;
+
+import de.cellular.lib.lightlib.ui.view.gallery.LLGallery;
+
+/**
+ * An {@link ILLGalleryAdapter} that implements this interface provides the original images of its items as opened files, so that a zoomed item can be drawn in tiles at full resolution, see
+ * {@link LLGallery#setZoomable(boolean)}.
+ *
+ * @version <strong>1.0.1</strong> <li>The file is opened by the source, a path could be replaced or deleted before the gallery reads it.</li>
+ * @version 1.0
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public interface ILLGalleryTileSource {
+
+    /**
+     * Opens the original image file of an item. It's called on a background thread.
+     *
+     * @since 1.0.1
+     * @param _position
+     *            the position of the item.
+     * @return the opened file, JPEG or PNG, it's closed by the gallery when the item isn't zoomed anymore. Null if it's not available i.e it has not been cached.
+     */
+    FileInputStream openSource( int _position );
+}
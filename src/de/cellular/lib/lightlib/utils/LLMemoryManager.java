@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2012 Cellular GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cellular.lib.lightlib.utils;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import de.cellular.lib.lightlib.log.LL;
+
+/**
+ * Passes memory pressure of the system to the parts of the library that hold memory: caches, pools, thread-pools and galleries register themselves as {@link Trimmable}.
+ * <p>
+ * The levels are the ones of <code>android.content.ComponentCallbacks2</code>. The library is built against Gingerbread, so {@link #install(Context)} registers for them by reflection on Ice Cream
+ * Sandwich and later. Before it only {@link #onLowMemory()} comes, an application can forward it or call {@link #onTrimMemory(int)} itself.
+ * <p>
+ * A {@link Trimmable} is called on the main thread, it must give memory back quickly and must never block. The {@link Trimmable}s are held weakly, an object doesn't have to unregister before it's
+ * collected.
+ *
+ * @version <strong>1.0</strong>
+ * @author Chris Xinyue Zhao <hasszhao@gmail.com>
+ *
+ */
+public class LLMemoryManager implements ComponentCallbacks
+{
+    /**
+     * The process is not killable, the system begins to run low on memory.
+     */
+    public static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+    /**
+     * The process is not killable, the system runs much lower on memory.
+     */
+    public static final int TRIM_MEMORY_RUNNING_LOW      = 10;
+    /**
+     * The process is not killable, the system is about to kill background processes.
+     */
+    public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    /**
+     * The UI of the process is not visible anymore.
+     */
+    public static final int TRIM_MEMORY_UI_HIDDEN        = 20;
+    /**
+     * The process is in the LRU list of background processes.
+     */
+    public static final int TRIM_MEMORY_BACKGROUND       = 40;
+    /**
+     * The process is in the middle of the background LRU list.
+     */
+    public static final int TRIM_MEMORY_MODERATE         = 60;
+    /**
+     * The process is one of the first to be killed.
+     */
+    public static final int TRIM_MEMORY_COMPLETE         = 80;
+
+    private static final int ICE_CREAM_SANDWICH          = 14;
+
+    /**
+     * A part of the library that can give memory back.
+     */
+    public interface Trimmable {
+        /**
+         * Gives memory back for a level of pressure. It's called on the main thread and must not block.
+         *
+         * @param _level
+         *            one of the TRIM_MEMORY_* levels.
+         */
+        void onTrimMemory( int _level );
+    }
+
+    private static LLMemoryManager                sInstance;
+
+    private final List<WeakReference<Trimmable>> mTrimmables = new ArrayList<WeakReference<Trimmable>>();
+    private boolean                              mInstalled;
+
+    private LLMemoryManager() {
+    }
+
+    /**
+     * Gets the process-wide {@link LLMemoryManager}.
+     *
+     * @since 1.0
+     * @return the manager
+     */
+    public static synchronized LLMemoryManager getInstance() {
+        if( sInstance == null ) {
+            sInstance = new LLMemoryManager();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Gets the part of a cache that should be kept at a level of pressure.
+     *
+     * @since 1.0
+     * @param _level
+     *            one of the TRIM_MEMORY_* levels.
+     * @return 1 to keep all, 0 to drop all.
+     */
+    public static float getKeepRatio( int _level ) {
+        if( _level >= TRIM_MEMORY_MODERATE ) {
+            return 0f;
+        }
+        if( _level >= TRIM_MEMORY_BACKGROUND ) {
+            return 0.25f;
+        }
+        if( _level >= TRIM_MEMORY_UI_HIDDEN ) {
+            return 0.5f;
+        }
+        if( _level >= TRIM_MEMORY_RUNNING_CRITICAL ) {
+            return 0.25f;
+        }
+        if( _level >= TRIM_MEMORY_RUNNING_LOW ) {
+            return 0.5f;
+        }
+        if( _level >= TRIM_MEMORY_RUNNING_MODERATE ) {
+            return 0.75f;
+        }
+        return 1f;
+    }
+
+    /**
+     * Registers the manager for the memory events of the application. On Ice Cream Sandwich and later the trim levels are received, before only {@link #onLowMemory()}, which must be forwarded
+     * by the application i.e from {@link android.app.Activity#onLowMemory()}.
+     *
+     * @since 1.0
+     * @param _context
+     *            a context of the application.
+     */
+    public synchronized void install( Context _context ) {
+        if( mInstalled || Build.VERSION.SDK_INT < ICE_CREAM_SANDWICH ) {
+            return;
+        }
+        try {
+            Class<?> callbacks2 = Class.forName( "android.content.ComponentCallbacks2" );
+            Object proxy = Proxy.newProxyInstance( callbacks2.getClassLoader(), new Class<?>[] { callbacks2 },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke( Object _proxy, Method _method, Object[] _args ) throws Throwable {
+                            String name = _method.getName();
+                            if( "onTrimMemory".equals( name ) ) {
+                                onTrimMemory( (Integer) _args[0] );
+                            }
+                            else if( "onLowMemory".equals( name ) ) {
+                                onLowMemory();
+                            }
+                            else if( "onConfigurationChanged".equals( name ) ) {
+                                onConfigurationChanged( (Configuration) _args[0] );
+                            }
+                            else if( "hashCode".equals( name ) ) {
+                                return System.identityHashCode( _proxy );
+                            }
+                            else if( "equals".equals( name ) ) {
+                                return _proxy == _args[0];
+                            }
+                            else if( "toString".equals( name ) ) {
+                                return "LLMemoryManager$Callbacks";
+                            }
+                            return null;
+                        }
+                    } );
+            Context.class.getMethod( "registerComponentCallbacks", ComponentCallbacks.class ).invoke(
+                    _context.getApplicationContext(), proxy );
+            mInstalled = true;
+        }
+        catch( Exception _e ) {
+            LL.w( ":| Can't receive trim levels: " + _e.toString() );
+        }
+    }
+
+    /**
+     * Registers a {@link Trimmable}, it's held weakly.
+     *
+     * @since 1.0
+     * @param _trimmable
+     */
+    public synchronized void register( Trimmable _trimmable ) {
+        for( WeakReference<Trimmable> ref : mTrimmables ) {
+            if( ref.get() == _trimmable ) {
+                return;
+            }
+        }
+        mTrimmables.add( new WeakReference<Trimmable>( _trimmable ) );
+    }
+
+    /**
+     * Unregisters a {@link Trimmable}.
+     *
+     * @since 1.0
+     * @param _trimmable
+     */
+    public synchronized void unregister( Trimmable _trimmable ) {
+        Iterator<WeakReference<Trimmable>> it = mTrimmables.iterator();
+        while( it.hasNext() ) {
+            Trimmable t = it.next().get();
+            if( t == null || t == _trimmable ) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Passes a level of pressure to all {@link Trimmable}s.
+     *
+     * @since 1.0
+     * @param _level
+     *            one of the TRIM_MEMORY_* levels.
+     */
+    public void onTrimMemory( int _level ) {
+        List<Trimmable> trimmables = new ArrayList<Trimmable>();
+        synchronized( this ) {
+            Iterator<WeakReference<Trimmable>> it = mTrimmables.iterator();
+            while( it.hasNext() ) {
+                Trimmable t = it.next().get();
+                if( t == null ) {
+                    it.remove();
+                }
+                else {
+                    trimmables.add( t );
+                }
+            }
+        }
+        LL.i( ":| Trim memory, level " + _level + ", " + trimmables.size() + " parts." );
+        for( Trimmable t : trimmables ) {
+            t.onTrimMemory( _level );
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory( TRIM_MEMORY_COMPLETE );
+    }
+
+    @Override
+    public void onConfigurationChanged( Configuration _newConfig ) {
+    }
+}